@@ -18,4 +18,9 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+# PyTorchBackend reads model output in place through Tensor.getRawDataBuffer(),
+# looked up by reflection; without this rule it falls back to copying the output
+-keepclassmembers class org.pytorch.Tensor** {
+    java.nio.Buffer getRawDataBuffer();
+}
@@ -0,0 +1,148 @@
+package com.programminghut.realtime_object;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Offline detection over recorded footage or image files, tuned for
+ * throughput rather than latency. Frames are stacked into batches of
+ * N x 3 x H x W, each model runs one forward per batch (or per chunk, if its
+ * backend takes smaller batches), and the outputs are split back into one
+ * detection list per frame. A preprocessing thread fills the next batch
+ * while the calling thread runs inference on the current one.
+ *
+ * Uses the Detector exclusively while process runs; don't feed it camera
+ * frames at the same time.
+ */
+public class BatchDetector {
+    private static final String TAG = "BatchDetector";
+
+    // One batch being filled while the other is in inference
+    private static final int BATCH_COUNT = 2;
+
+    private final Detector detector;
+    private final int batchSize;
+    private final ArrayBlockingQueue<PreparedBatch> freeBatches = new ArrayBlockingQueue<>(BATCH_COUNT);
+    private final ArrayBlockingQueue<PreparedBatch> readyBatches = new ArrayBlockingQueue<>(BATCH_COUNT + 1);
+    // Marks the end of the input on readyBatches
+    private final PreparedBatch endOfInput = new PreparedBatch(0);
+
+    // Reused for decoding image files on the preprocessing thread
+    private int[] pixels = new int[0];
+    private volatile RuntimeException preprocessError;
+
+    private volatile long lastRunNanos;
+    private volatile int lastRunFrames;
+
+    public BatchDetector(Detector detector, int batchSize) {
+        if (batchSize < 1 || batchSize > Detector.MAX_BATCH) {
+            throw new IllegalArgumentException("batchSize must be between 1 and " + Detector.MAX_BATCH);
+        }
+        this.detector = detector;
+        this.batchSize = batchSize;
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            freeBatches.add(new PreparedBatch(batchSize));
+        }
+    }
+
+    /**
+     * Runs detection over frames and returns one detection list per frame,
+     * in input order. Frames that can't be read get an empty list. Blocks
+     * until every frame is done.
+     */
+    public List<List<Detection>> process(List<BatchFrame> frames) throws InterruptedException {
+        long start = System.nanoTime();
+        List<List<Detection>> results = new ArrayList<>(frames.size());
+        preprocessError = null;
+
+        Thread preprocessor = new Thread(() -> preprocessLoop(frames), "batch-preprocess");
+        preprocessor.start();
+        try {
+            while (true) {
+                PreparedBatch batch = readyBatches.take();
+                if (batch == endOfInput) {
+                    break;
+                }
+                try {
+                    results.addAll(detector.detectBatch(batch));
+                } finally {
+                    detector.recycleBatch(batch);
+                    freeBatches.put(batch);
+                }
+            }
+        } finally {
+            preprocessor.interrupt();
+            preprocessor.join();
+            // Return batches left behind by an early exit so the next run has both
+            PreparedBatch left;
+            while ((left = readyBatches.poll()) != null) {
+                if (left != endOfInput) {
+                    detector.recycleBatch(left);
+                    freeBatches.offer(left);
+                }
+            }
+        }
+        if (preprocessError != null) {
+            throw preprocessError;
+        }
+
+        lastRunNanos = System.nanoTime() - start;
+        lastRunFrames = frames.size();
+        Log.d(TAG, frames.size() + " frames in batches of " + batchSize + " at "
+                + getFramesPerSecond() + " fps");
+        return results;
+    }
+
+    private void preprocessLoop(List<BatchFrame> frames) {
+        try {
+            for (int next = 0; next < frames.size(); ) {
+                PreparedBatch batch = freeBatches.take();
+                int end = Math.min(frames.size(), next + batchSize);
+                detector.beginBatch(batch, end - next);
+                for (; next < end; next++) {
+                    add(batch, frames.get(next));
+                }
+                readyBatches.put(batch);
+            }
+        } catch (InterruptedException e) {
+            // process is unwinding after an inference error
+            return;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error preprocessing batch", e);
+            preprocessError = e;
+        }
+        readyBatches.offer(endOfInput);
+    }
+
+    private void add(PreparedBatch batch, BatchFrame frame) {
+        if (frame.file == null) {
+            detector.addToBatch(batch, frame.yuv, frame.argb, frame.width, frame.height, frame.timestampNs);
+            return;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(frame.file.getPath());
+        if (bitmap == null) {
+            Log.w(TAG, "Could not decode " + frame.file);
+            detector.addToBatch(batch, null, null, 0, 0, frame.timestampNs);
+            return;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        detector.addToBatch(batch, null, pixels, width, height, frame.timestampNs);
+    }
+
+    // Throughput of the last process call
+    public float getFramesPerSecond() {
+        long nanos = lastRunNanos;
+        return nanos > 0 ? lastRunFrames * 1e9f / nanos : 0f;
+    }
+}
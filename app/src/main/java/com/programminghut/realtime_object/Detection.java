@@ -7,11 +7,23 @@ public class Detection {
     public final String label;
     public final float confidence;  // Added this field
     public final int type;         // 0: vehicle, 1: sign
+    public final int trackId;      // -1 when not tracked
+    public final float ageMs;      // How much older than the frame the model result is; 0 if fresh
 
     public Detection(RectF box, String label, float confidence, int type) {
+        this(box, label, confidence, type, -1, 0f);
+    }
+
+    public Detection(RectF box, String label, float confidence, int type, int trackId) {
+        this(box, label, confidence, type, trackId, 0f);
+    }
+
+    public Detection(RectF box, String label, float confidence, int type, int trackId, float ageMs) {
         this.box = box;
         this.label = label;
         this.confidence = confidence;
         this.type = type;
+        this.trackId = trackId;
+        this.ageMs = ageMs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,319 @@
+package com.programminghut.realtime_object;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detection shared by several frame streams, e.g. front and rear cameras or
+ * a camera plus a replayed file. It owns a pool of Detector instances, each
+ * with its own copy of the models and its own worker thread. A stream has
+ * one frame in flight at a time, so at most min(instances, open streams)
+ * workers are busy at once, and the intra-op threads split the cores
+ * between that many: with one stream its frame gets every core, whichever
+ * worker runs it. Workers apply a new split to their own Detector before
+ * their next frame. The PyTorch setting is global: its intra-op pool is
+ * process-wide, so it also applies to any other PyTorch Detector in the
+ * process. Streams submit frames from any thread; a StreamScheduler shares the
+ * workers between them fairly by priority, and each stream's drop policy
+ * decides what happens when it submits faster than it gets served. A Detector
+ * is only ever used by its own worker, so none of them is shared between
+ * threads.
+ */
+public class DetectionService {
+    private static final String TAG = "DetectionService";
+
+    // Every instance holds both models in memory
+    private static final int MAX_INSTANCES = 4;
+
+    public interface Listener {
+        // Called on a worker thread, in submission order for each stream
+        void onDetections(Stream stream, List<Detection> detections, long timestampNs);
+    }
+
+    public interface ReadyCallback {
+        void onReady(DetectionService service);
+
+        void onError(Exception e);
+    }
+
+    // A stream's own copy of one frame, so the caller's image can be closed right away
+    private static class Job {
+        final Stream stream;
+        final YuvFrame frame = new YuvFrame();
+        long arrivalNanos;
+
+        Job(Stream stream) {
+            this.stream = stream;
+        }
+    }
+
+    /** A named source of frames. Submit from one thread per stream. */
+    public class Stream {
+        public final String name;
+        private final Listener listener;
+        private final StreamScheduler.Stream<Job> scheduled;
+        // Enough for a full queue, one frame in inference and one being copied
+        private final ArrayBlockingQueue<Job> freeJobs;
+        private final AtomicLong droppedAtInput = new AtomicLong();
+        private final long openedNanos = System.nanoTime();
+
+        Stream(String name, int priority, int capacity, HandoffQueue.DropPolicy dropPolicy, Listener listener) {
+            this.name = name;
+            this.listener = listener;
+            scheduled = scheduler.addStream(name, priority, capacity, dropPolicy);
+            freeJobs = new ArrayBlockingQueue<>(capacity + 2);
+            for (int i = 0; i < capacity + 2; i++) {
+                freeJobs.add(new Job(this));
+            }
+        }
+
+        /**
+         * Copies frame and queues it for detection. The frame's planes are
+         * only read before this returns. Returns false if the frame was
+         * dropped.
+         */
+        public boolean submit(YuvFrame frame) {
+            long arrivalNanos = System.nanoTime();
+            Job job = freeJobs.poll();
+            if (job == null) {
+                // Every copy is still queued or in inference
+                droppedAtInput.incrementAndGet();
+                return false;
+            }
+            job.frame.copyFrom(frame);
+            job.arrivalNanos = arrivalNanos;
+            Job dropped = scheduler.offer(scheduled, job);
+            if (dropped != null) {
+                freeJobs.offer(dropped);
+            }
+            return dropped != job;
+        }
+
+        // Stops taking frames; one already in inference still reports
+        public void close() {
+            scheduler.removeStream(scheduled);
+            streams.remove(this);
+            updateThreads();
+        }
+
+        public int getPriority() {
+            return scheduled.priority;
+        }
+
+        public long getSubmittedCount() {
+            return scheduled.getSubmittedCount() + droppedAtInput.get();
+        }
+
+        // Frames dropped by the drop policy or because every copy was in use
+        public long getDroppedCount() {
+            return scheduled.getDroppedCount() + droppedAtInput.get();
+        }
+
+        public long getCompletedCount() {
+            return scheduled.getCompletedCount();
+        }
+
+        // Completed frames per second since the stream was opened
+        public float getFramesPerSecond() {
+            long nanos = System.nanoTime() - openedNanos;
+            return nanos > 0 ? getCompletedCount() * 1e9f / nanos : 0f;
+        }
+
+        // Submit-to-result latencies since the last call
+        public LatencyHistogram.Snapshot snapshotLatency() {
+            return scheduled.snapshotLatency();
+        }
+    }
+
+    private final List<Detector> instances;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    // Intra-op threads per busy instance, from the open stream count
+    private volatile int threadsPerInstance;
+    private final List<Thread> workers = new ArrayList<>();
+    private final StreamScheduler<Job> scheduler = new StreamScheduler<>();
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+
+    /**
+     * Takes ownership of instances: each gets a worker thread, and is closed
+     * with the service. The models' intra-op threads follow the open
+     * streams as described above.
+     */
+    public DetectionService(List<Detector> instances) {
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("at least one Detector instance is needed");
+        }
+        this.instances = new ArrayList<>(instances);
+        updateThreads();
+        for (int i = 0; i < instances.size(); i++) {
+            Detector detector = instances.get(i);
+            Thread worker = new Thread(() -> workLoop(detector), "detection-worker-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Instances worth running on this device: one per core, within memory
+    public static int defaultInstanceCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_INSTANCES, cores));
+    }
+
+    /**
+     * Loads instanceCount Detectors off the calling thread, warming up each,
+     * then reports on callbackExecutor.
+     */
+    public static void loadAsync(Context context, int instanceCount, Executor callbackExecutor,
+                                 ReadyCallback callback) {
+        Context appContext = context.getApplicationContext();
+        Thread loader = new Thread(() -> {
+            List<Detector> instances = new ArrayList<>();
+            try {
+                for (int i = 0; i < instanceCount; i++) {
+                    Detector detector = new Detector(appContext);
+                    instances.add(detector);
+                    detector.warmUp();
+                }
+                DetectionService service = new DetectionService(instances);
+                callbackExecutor.execute(() -> callback.onReady(service));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading model instances", e);
+                for (Detector detector : instances) {
+                    detector.close();
+                }
+                callbackExecutor.execute(() -> callback.onError(e));
+            }
+        }, "detection-service-loader");
+        loader.start();
+    }
+
+    /**
+     * Opens a stream. Its queue holds up to capacity frames, discarded by
+     * dropPolicy when full; priority is its weight against other backlogged
+     * streams. Names must be unique.
+     */
+    public Stream openStream(String name, int priority, int capacity, HandoffQueue.DropPolicy dropPolicy,
+                             Listener listener) {
+        Stream stream = new Stream(name, priority, capacity, dropPolicy, listener);
+        streams.add(stream);
+        updateThreads();
+        return stream;
+    }
+
+    public List<Stream> getStreams() {
+        return streams;
+    }
+
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    // Intra-op threads each busy instance runs with, once its worker takes its next frame
+    public int getThreadsPerInstance() {
+        return threadsPerInstance;
+    }
+
+    // Splits the cores between the instances the open streams can keep busy
+    private synchronized void updateThreads() {
+        int busy = Math.max(1, Math.min(instances.size(), streams.size()));
+        int threads = Math.max(1, cores / busy);
+        if (threads != threadsPerInstance) {
+            threadsPerInstance = threads;
+            Log.d(TAG, instances.size() + " model instances, " + streams.size() + " streams: "
+                    + threads + " intra-op threads per busy instance");
+        }
+    }
+
+    // One line per stream: throughput, drops and latency percentiles since the last call
+    public String formatStats() {
+        StringBuilder out = new StringBuilder();
+        for (Stream stream : streams) {
+            LatencyHistogram.Snapshot latency = stream.snapshotLatency();
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            out.append(String.format(Locale.US, "%s (priority %d): %.1f fps, %d done, %d dropped, "
+                            + "latency p50 %.1f ms, p95 %.1f ms, max %.1f ms",
+                    stream.name, stream.getPriority(), stream.getFramesPerSecond(), stream.getCompletedCount(),
+                    stream.getDroppedCount(), latency.percentileMs(0.5f), latency.percentileMs(0.95f),
+                    latency.maxMs()));
+        }
+        return out.toString();
+    }
+
+    // Stops the workers once their current frames finish, then closes every instance
+    public void close() {
+        scheduler.close();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Detector detector : instances) {
+            detector.close();
+        }
+    }
+
+    private void workLoop(Detector detector) {
+        PreparedFrame prepared = new PreparedFrame();
+        int appliedThreads = 0;
+        while (true) {
+            StreamScheduler.Stream<Job> scheduled;
+            try {
+                scheduled = scheduler.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (scheduled == null) {
+                return;
+            }
+
+            // Only this worker uses its Detector, so it applies the split itself
+            int threads = threadsPerInstance;
+            if (threads != appliedThreads) {
+                detector.setModelThreads(Detector.VEHICLE_SPEC.type, threads);
+                detector.setModelThreads(Detector.SIGN_SPEC.type, threads);
+                appliedThreads = threads;
+            }
+
+            Job job = scheduled.current();
+            Stream stream = job.stream;
+            long timestampNs = job.frame.timestampNs;
+            long arrivalNanos = job.arrivalNanos;
+            List<Detection> detections = null;
+            try {
+                try {
+                    detector.prepare(job.frame, prepared);
+                } finally {
+                    // Converted: the stream can reuse its copy while the models run
+                    stream.freeJobs.offer(job);
+                }
+                detections = detector.detect(prepared);
+            } catch (Exception e) {
+                Log.e(TAG, "Error detecting on stream " + stream.name, e);
+            } finally {
+                detector.recycle(prepared);
+            }
+            long latencyNanos = System.nanoTime() - arrivalNanos;
+
+            // Report before completing, so the stream's next frame can't overtake this one
+            try {
+                if (detections != null) {
+                    stream.listener.onDetections(stream, detections, timestampNs);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error delivering detections of stream " + stream.name, e);
+            } finally {
+                scheduler.complete(scheduled, latencyNanos);
+            }
+        }
+    }
+}
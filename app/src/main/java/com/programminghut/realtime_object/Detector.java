@@ -1,118 +1,273 @@
 package com.programminghut.realtime_object;
 import android.util.Log;  // Add this import
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.graphics.RectF;
 import android.util.Log;
 import androidx.camera.core.ImageProxy;
-import org.pytorch.IValue;
-import org.pytorch.Module;
-import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
-import java.io.File;
-import java.io.FileOutputStream;
+import androidx.core.content.pm.PackageInfoCompat;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Collections;  // Add this
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Detector {
     private static final String TAG = "Detector";
-    private final Module vehicleModel;
-    private final Module signModel;
     private static final int INPUT_SIZE = 640;
+    // Current model input size; changed by the resolution governor
+    private volatile int inputSize = INPUT_SIZE;
     private static final float CONFIDENCE_THRESHOLD = 0.35f;  // Lowered threshold for testing
 
     // Normalization parameters
-    private static final float[] MEAN = new float[]{0.485f, 0.456f, 0.406f};
-    private static final float[] STD = new float[]{0.229f, 0.224f, 0.225f};
+    static final float[] MEAN = DetectionModels.MEAN;
+    static final float[] STD = DetectionModels.STD;
+
+    static final ModelSpec VEHICLE_SPEC = DetectionModels.VEHICLE_SPEC;
+    static final ModelSpec SIGN_SPEC = DetectionModels.SIGN_SPEC;
+
+    // COCO ids of the SSD model (0 = person) -> vehicle class index
+    private static final int[] COCO_TO_VEHICLE = {-1, -1, 0, 1, -1, 2, -1, 3};
+    // Bundled SSD MobileNet: fixed 300x300 input, much cheaper on low-end devices
+    static final ModelSpec VEHICLE_SSD_SPEC = new ModelSpec(
+            "Vehicle", "ssd_mobilenet_v1_1_metadata_1.tflite", 0, DetectionModels.VEHICLE_CLASSES, "vehicle", 0.5f,
+            InferenceBackend.Kind.TFLITE, COCO_TO_VEHICLE);
+    private static final float IOU_THRESHOLD = DetectionModels.IOU_THRESHOLD;
+    private static final int PRE_NMS_TOP_K = DetectionModels.PRE_NMS_TOP_K;
+
+    // A loaded model with its own input pool, converter and decode buffers,
+    // so both models can run at once and use different input formats
+    private static class ModelSlot {
+        // Position in slots, PreparedFrame.inputs and the ROI planner
+        final int index;
+        final ModelSpec spec;
+        final InferenceBackend backend;
+        final YuvToTensorConverter converter = new YuvToTensorConverter(MEAN, STD);
+        // Enough buffers for one frame being converted, one queued and one in inference
+        final FrameBufferPool bufferPool = new FrameBufferPool(3);
+        // Batched tile inputs: every tile of each of the three frames in flight
+        final ChunkPools tilePools = new ChunkPools(TileLayout.MAX_TILES, 3 * TileLayout.MAX_TILES);
+        // Batched ROI crop inputs, likewise
+        final ChunkPools roiPools = new ChunkPools(RoiPlanner.MAX_ROIS, 3 * RoiPlanner.MAX_ROIS);
+        final CandidateBuffer candidates = new CandidateBuffer(256);
+        final CandidateBuffer tileCandidates = new CandidateBuffer(64);
+        final CandidateBuffer survivors = new CandidateBuffer(64);
+        volatile NmsEngine nms;
+        // Last forward time, and forward + postprocess, in nanoseconds
+        volatile long forwardNanos;
+        long runNanos;
+        // Camera timestamp of the frame the survivors came from
+        long resultTimestampNs;
+        final StageMetrics.Stage forwardStage;
+        final StageMetrics.Stage postprocessStage;
+
+        ModelSlot(int index, ModelSpec spec, InferenceBackend backend,
+                  StageMetrics.Stage forwardStage, StageMetrics.Stage postprocessStage) {
+            this.index = index;
+            this.spec = spec;
+            this.backend = backend;
+            this.forwardStage = forwardStage;
+            this.postprocessStage = postprocessStage;
+            this.nms = new NmsEngine(NmsEngine.Mode.GREEDY, IOU_THRESHOLD, PRE_NMS_TOP_K, true);
+        }
+
+        // Input size for this model: fixed by the backend, or the detector's current size
+        int inputSizeFor(int flexibleSize) {
+            int fixed = backend.fixedInputSize();
+            return fixed > 0 ? fixed : flexibleSize;
+        }
+    }
+
+    private final ModelSlot vehicleSlot;
+    private final ModelSlot signSlot;
+    private final ModelSlot[] slots;
+    // Offline batches: the same backends run through the core batched path
+    private final BatchedDetector batched;
+
+    // Optional second pass that deduplicates vehicle and sign results together
+    private volatile boolean crossModelMerge = false;
+    private final NmsEngine crossModelNms =
+            new NmsEngine(NmsEngine.Mode.MERGE, IOU_THRESHOLD, 0, false);
+    private final CandidateBuffer crossModelCandidates = new CandidateBuffer(64);
+    private final CandidateBuffer crossModelSurvivors = new CandidateBuffer(64);
+
+    private final YuvFrame frame = new YuvFrame();
+    private final PreparedFrame preparedFrame = new PreparedFrame();
+
+    // Largest offline batch; BatchDetector batches are capped to it
+    static final int MAX_BATCH = 32;
+
+    // Log pool allocation stats every this many frames
+    private static final int ALLOCATION_LOG_INTERVAL = 100;
+
+    // Concurrent mode runs the sign model on this executor while the calling
+    // thread runs the vehicle model, so frame latency is the max of the two
+    private final ExecutorService modelExecutor = Executors.newSingleThreadExecutor();
+    private volatile boolean concurrentModels = false;
+
+    // Wall-clock time of both models for the last frame, in nanoseconds
+    private volatile long modelsWallNanos;
+    private volatile long bytesAllocatedLastFrame;
+    // Optional per-stage latency recording
+    private volatile StageMetrics metrics;
+    // Optional per-model cadence and deadlines; without it both models run on every frame
+    private volatile ModelScheduler scheduler;
+    // Optional tiles the sign model also runs on, for small distant signs
+    private volatile TileLayout signTiling;
+    private final int[] tileRect = new int[4];
+    // Optional crops around the previous detections, re-inferred at full resolution
+    private volatile RoiPlanner roiPlanner;
+    private final int[] roiRect = new int[4];
+
+    public interface ReadyCallback {
+        void onReady(Detector detector);
+
+        void onError(Exception e);
+    }
 
-    // Class names
-    private static final String[] VEHICLE_CLASSES = {"car", "motorcycle", "bus", "truck"};
-    private static final String[] SIGN_CLASSES = {"crossing", "near_crossing", "crossing_ahead"};
+    // Bump when the cached model format or location changes
+    private static final int MODEL_CACHE_VERSION = 1;
 
     public Detector(Context context) throws IOException {
-        Log.d(TAG, "Initializing detector...");
+        this(loadModels(context, VEHICLE_SPEC, SIGN_SPEC), VEHICLE_SPEC, SIGN_SPEC);
+    }
+
+    private Detector(InferenceBackend[] backends, ModelSpec vehicleSpec, ModelSpec signSpec) {
+        vehicleSlot = new ModelSlot(0, vehicleSpec, backends[0],
+                StageMetrics.Stage.VEHICLE_FORWARD, StageMetrics.Stage.VEHICLE_POSTPROCESS);
+        signSlot = new ModelSlot(1, signSpec, backends[1],
+                StageMetrics.Stage.SIGN_FORWARD, StageMetrics.Stage.SIGN_POSTPROCESS);
+        slots = new ModelSlot[]{vehicleSlot, signSlot};
+        batched = new BatchedDetector(new ModelSpec[]{vehicleSpec, signSpec}, backends, inputSize, MAX_BATCH,
+                MEAN, STD);
+    }
+
+    // Wraps already loaded backends; used by host tests with fake backends
+    Detector(InferenceBackend vehicleBackend, InferenceBackend signBackend,
+             ModelSpec vehicleSpec, ModelSpec signSpec) {
+        this(new InferenceBackend[]{vehicleBackend, signBackend}, vehicleSpec, signSpec);
+    }
 
-        String vehiclePath = assetFilePath(context, "vehicle_model.ptl");
-        String signPath = assetFilePath(context, "sign_model.ptl");
+    public static void loadAsync(Context context, Executor callbackExecutor, ReadyCallback callback) {
+        loadAsync(context, VEHICLE_SPEC, SIGN_SPEC, callbackExecutor, callback);
+    }
 
-        Log.d(TAG, "Loading vehicle model from: " + vehiclePath);
-        Log.d(TAG, "Loading sign model from: " + signPath);
+    /**
+     * Loads both models in parallel off the calling thread, runs a warm-up
+     * forward pass, then reports on callbackExecutor. Bind the camera from
+     * onReady so the first real frame doesn't pay the warm-up cost. Each spec
+     * names the backend that runs it, e.g. VEHICLE_SSD_SPEC for TFLite.
+     */
+    public static void loadAsync(Context context, ModelSpec vehicleSpec, ModelSpec signSpec,
+                                 Executor callbackExecutor, ReadyCallback callback) {
+        Context appContext = context.getApplicationContext();
+        Thread loader = new Thread(() -> {
+            try {
+                Detector detector = new Detector(
+                        loadModels(appContext, vehicleSpec, signSpec), vehicleSpec, signSpec);
+                detector.warmUp();
+                callbackExecutor.execute(() -> callback.onReady(detector));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading models", e);
+                callbackExecutor.execute(() -> callback.onError(e));
+            }
+        }, "detector-loader");
+        loader.start();
+    }
 
+    // Copies (if needed) and loads both models concurrently
+    private static InferenceBackend[] loadModels(Context context, ModelSpec vehicleSpec, ModelSpec signSpec)
+            throws IOException {
+        Log.d(TAG, "Initializing detector...");
+        long start = System.nanoTime();
+        ModelAssetCache cache = new ModelAssetCache(context, cacheVersion(context));
+
+        ExecutorService loaders = Executors.newFixedThreadPool(2);
         try {
-            vehicleModel = Module.load(vehiclePath);
-            signModel = Module.load(signPath);
-            Log.d(TAG, "Models loaded successfully");
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading models", e);
-            throw e;
+            Future<InferenceBackend> vehicle = loaders.submit(() -> loadModel(cache, vehicleSpec));
+            Future<InferenceBackend> sign = loaders.submit(() -> loadModel(cache, signSpec));
+            InferenceBackend[] models = {vehicle.get(), sign.get()};
+            Log.d(TAG, "Models loaded successfully in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return models;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error loading models", e.getCause());
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error loading models", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading models", e);
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    private static InferenceBackend loadModel(ModelAssetCache cache, ModelSpec spec) throws IOException {
+        String path = cache.get(spec.assetName);
+        InferenceBackend backend = createBackend(spec);
+        Log.d(TAG, "Loading " + spec.name + " model on " + backend.name() + " from: " + path);
+        backend.load(path, 0);
+        return backend;
+    }
+
+    static InferenceBackend createBackend(ModelSpec spec) {
+        switch (spec.backend) {
+            case TFLITE:
+                return new TfLiteSsdBackend(spec.classMap);
+            case PYTORCH:
+            default:
+                return new PyTorchBackend();
         }
     }
 
-    private String assetFilePath(Context context, String assetName) throws IOException {
-        File file = new File(context.getFilesDir(), assetName);
-        if (file.exists() && file.length() > 0) {
-            return file.getAbsolutePath();
+    private static String cacheVersion(Context context) {
+        return MODEL_CACHE_VERSION + "-" + versionCode(context);
+    }
+
+    // The app's versionCode, 0 if the package info is unavailable
+    static long versionCode(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return PackageInfoCompat.getLongVersionCode(info);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Package info unavailable", e);
+            return 0;
         }
+    }
 
-        try (InputStream is = context.getAssets().open(assetName)) {
-            try (FileOutputStream os = new FileOutputStream(file)) {
-                byte[] buffer = new byte[4 * 1024];
-                int read;
-                while ((read = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, read);
-                }
-                os.flush();
-            }
-            return file.getAbsolutePath();
+    // One forward per model on a blank input so JIT and allocator setup happen before the first frame
+    public void warmUp() {
+        long start = System.nanoTime();
+        PreprocessTransform identity = new PreprocessTransform();
+        for (ModelSlot slot : slots) {
+            int size = slot.inputSizeFor(inputSize);
+            FrameBufferPool.InputBuffer dummy =
+                    slot.bufferPool.acquire(slot.backend.inputFormat(), size, size);
+            identity.set(size, size, 0, size, size, true);
+            runModel(slot, dummy, identity);
+            slot.bufferPool.release(dummy);
         }
+        Log.d(TAG, "Warm-up took " + (System.nanoTime() - start) / 1000000 + " ms");
     }
 
     public List<Detection> processImage(ImageProxy image) {
         List<Detection> detections = new ArrayList<>();
 
         try {
-            // Convert ImageProxy to Bitmap
-            Bitmap bitmap = ImageUtils.imageProxyToBitmap(image);
-            if (bitmap == null) {
-                Log.e(TAG, "Failed to convert ImageProxy to Bitmap");
+            if (!prepare(image, preparedFrame)) {
                 return detections;
             }
-
-            // Resize bitmap to model input size
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(
-                    bitmap,
-                    INPUT_SIZE,
-                    INPUT_SIZE,
-                    true
-            );
-
-            // Convert bitmap to tensor with normalization
-            Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(
-                    resizedBitmap,
-                    MEAN,
-                    STD
-            );
-
-            // Process with both models
-            try {
-                detections.addAll(runModel(vehicleModel, inputTensor, true));
-            } catch (Exception e) {
-                Log.e(TAG, "Error running vehicle model", e);
-            }
-
             try {
-                detections.addAll(runModel(signModel, inputTensor, false));
-            } catch (Exception e) {
-                Log.e(TAG, "Error running sign model", e);
+                detections = detect(preparedFrame);
+            } finally {
+                recycle(preparedFrame);
             }
-
-            // Clean up
-            bitmap.recycle();
-            resizedBitmap.recycle();
-
         } catch (Exception e) {
             Log.e(TAG, "Error processing image", e);
         }
@@ -120,143 +275,615 @@ public class Detector {
         return detections;
     }
 
-    private List<Detection> runModel(Module model, Tensor inputTensor, boolean isVehicle) {
-        List<Detection> detections = new ArrayList<>();
-        String modelType = isVehicle ? "Vehicle" : "Sign";
+    /**
+     * Preprocessing stage: converts the image into pooled input buffers.
+     * Once this returns the image pixels are no longer needed and the
+     * ImageProxy can be closed. Must not be called concurrently with itself.
+     */
+    public boolean prepare(ImageProxy image, PreparedFrame out) {
+        // Read the YUV planes in place
+        if (ImageUtils.toYuvFrame(image, frame) == null) {
+            Log.e(TAG, "Unsupported image format: " + image.getFormat());
+            return false;
+        }
+        prepare(frame, out);
+        return true;
+    }
 
-        try {
-            // Run inference
-            IValue output = model.forward(IValue.from(inputTensor));
-
-            // Handle output
-            Tensor outputTensor;
-            if (output.isTensor()) {
-                outputTensor = output.toTensor();
-            } else if (output.isTuple()) {
-                outputTensor = output.toTuple()[0].toTensor();
+    /**
+     * Same as prepare for a frame already in memory, e.g. a replayed
+     * recording. Its planes are only read before this returns.
+     */
+    public void prepare(YuvFrame frame, PreparedFrame out) {
+        long start = System.nanoTime();
+        // Callers that know the true arrival time overwrite this
+        out.arrivalNanos = start;
+        long allocatedBefore = getTotalBytesAllocated();
+        convertInputs(frame, out);
+        bytesAllocatedLastFrame = getTotalBytesAllocated() - allocatedBefore;
+        StageMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.record(StageMetrics.Stage.PREPROCESS, System.nanoTime() - start);
+        }
+    }
+
+    // Converts a frame into each model's input, sharing one buffer between models with the same input
+    private void convertInputs(YuvFrame frame, PreparedFrame out) {
+        int flexibleSize = inputSize;
+        RoiPlanner planner = roiPlanner;
+        out.fullFrame = planner == null
+                || planner.beginFrame(frame.rotatedWidth(), frame.rotatedHeight(), flexibleSize);
+        for (int i = 0; i < slots.length && !out.fullFrame; i++) {
+            out.inputs[i] = null;
+        }
+        for (int i = 0; i < slots.length && out.fullFrame; i++) {
+            ModelSlot slot = slots[i];
+            InferenceBackend.InputFormat format = slot.backend.inputFormat();
+            int size = slot.inputSizeFor(flexibleSize);
+
+            out.inputs[i] = null;
+            for (int j = 0; j < i; j++) {
+                FrameBufferPool.InputBuffer earlier = out.inputs[j];
+                if (earlier.format == format && earlier.width == size && earlier.height == size) {
+                    out.inputs[i] = earlier;
+                    out.transforms[i].copyFrom(out.transforms[j]);
+                    break;
+                }
+            }
+            if (out.inputs[i] != null) {
+                continue;
+            }
+
+            // Convert straight into a pooled buffer at model input size
+            FrameBufferPool.InputBuffer input =
+                    slot.bufferPool.acquire(format, size, size);
+            if (format == InferenceBackend.InputFormat.FLOAT_CHW) {
+                slot.converter.convert(frame, size, size, input.floats, out.transforms[i]);
             } else {
-                return detections;
+                slot.converter.convertToRgb(frame, size, size, input.bytes, out.transforms[i]);
             }
+            out.inputs[i] = input;
+        }
+        out.timestampNs = frame.timestampNs;
+        prepareTiles(frame, out);
+        prepareRois(planner, frame, out);
+
+        if (vehicleSlot.bufferPool.getFrameCount() % ALLOCATION_LOG_INTERVAL == 0) {
+            int reallocations = 0;
+            for (ModelSlot slot : slots) {
+                reallocations += slot.bufferPool.getReallocationCount() + slot.tilePools.getReallocationCount()
+                        + slot.roiPools.getReallocationCount();
+            }
+            Log.d(TAG, "Input bytes allocated last frame: " + bytesAllocatedLastFrame
+                    + ", total: " + getTotalBytesAllocated() + ", reallocations: " + reallocations);
+        }
+    }
 
-            float[] outputs = outputTensor.getDataAsFloatArray();
-            int dimensions = isVehicle ? 85 : (5 + SIGN_CLASSES.length);
-            int numDetections = outputs.length / dimensions;
-
-            // Collect valid detections
-            List<Detection> validDetections = new ArrayList<>();
-            float CONF_THRESHOLD = 0.45f;  // Increased confidence threshold
-
-            for (int i = 0; i < numDetections; i++) {
-                int offset = i * dimensions;
-
-                if (offset + 4 < outputs.length) {
-                    float confidence = outputs[offset + 4];
-                    confidence = Math.min(confidence, 1.0f); // Cap confidence at 100%
-
-                    if (confidence > CONF_THRESHOLD) {
-                        float x = outputs[offset];
-                        float y = outputs[offset + 1];
-                        float w = outputs[offset + 2];
-                        float h = outputs[offset + 3];
-
-                        // Get class id
-                        int classId = 0;
-                        float maxProb = 0;
-                        for (int j = 5; j < Math.min(dimensions, outputs.length - offset); j++) {
-                            if (outputs[offset + j] > maxProb) {
-                                maxProb = outputs[offset + j];
-                                classId = j - 5;
-                            }
-                        }
-
-                        // Convert to relative coordinates (0-1)
-                        RectF box = new RectF(
-                                (x - w/2) / INPUT_SIZE,
-                                (y - h/2) / INPUT_SIZE,
-                                (x + w/2) / INPUT_SIZE,
-                                (y + h/2) / INPUT_SIZE
-                        );
-
-                        String label = getClassName(classId, isVehicle);
-                        validDetections.add(new Detection(box, label, confidence, isVehicle ? 0 : 1));
-                    }
+    // Converts each tile of the sign tiling into batched chunks of the sign model's input, only
+    // for frames the scheduler will run the sign model on
+    private void prepareTiles(YuvFrame frame, PreparedFrame out) {
+        TileLayout tiling = signTiling;
+        ModelScheduler currentScheduler = scheduler;
+        out.tileCount = 0;
+        if (tiling == null || !out.fullFrame
+                || (currentScheduler != null && !currentScheduler.isDue(signSlot.index))) {
+            return;
+        }
+        ModelSlot slot = signSlot;
+        InferenceBackend.InputFormat format = slot.backend.inputFormat();
+        int frameWidth = frame.rotatedWidth();
+        int frameHeight = frame.rotatedHeight();
+        int size = slot.inputSizeFor(tiling.inputSize(frameWidth, frameHeight));
+        int count = tiling.tileCount();
+        int chunkSize = ChunkPools.chunkSize(count, slot.backend.maxBatchSize());
+
+        out.tileCount = count;
+        out.tileChunkSize = chunkSize;
+        for (int c = 0; c < out.tileChunkCount(); c++) {
+            out.tileChunks[c] = slot.tilePools.acquire(format, size, size, chunkSize);
+        }
+        for (int t = 0; t < count; t++) {
+            tiling.tileRect(t, frameWidth, frameHeight, tileRect);
+            FrameBufferPool.InputBuffer chunk = out.tileChunks[t / chunkSize];
+            int item = t % chunkSize;
+            if (format == InferenceBackend.InputFormat.FLOAT_CHW) {
+                slot.converter.convertRegion(frame, tileRect[0], tileRect[1], tileRect[2], tileRect[3],
+                        size, size, chunk.itemFloats(item), out.tileTransforms[t]);
+            } else {
+                slot.converter.convertRegionToRgb(frame, tileRect[0], tileRect[1], tileRect[2], tileRect[3],
+                        size, size, chunk.itemBytes(item), out.tileTransforms[t]);
+            }
+        }
+    }
+
+    // Converts each model's planned ROI crops into batched chunks of that model's input
+    private void prepareRois(RoiPlanner planner, YuvFrame frame, PreparedFrame out) {
+        for (ModelSlot slot : slots) {
+            int count = planner != null ? planner.roiCount(slot.index) : 0;
+            out.roiCounts[slot.index] = count;
+            if (count == 0) {
+                continue;
+            }
+            InferenceBackend.InputFormat format = slot.backend.inputFormat();
+            int size = slot.inputSizeFor(planner.getRoiInputSize());
+            int chunkSize = ChunkPools.chunkSize(count, slot.backend.maxBatchSize());
+            FrameBufferPool.InputBuffer[] chunks = out.roiChunks[slot.index];
+            out.roiChunkSizes[slot.index] = chunkSize;
+            for (int c = 0; c < out.roiChunkCount(slot.index); c++) {
+                chunks[c] = slot.roiPools.acquire(format, size, size, chunkSize);
+            }
+            for (int r = 0; r < count; r++) {
+                planner.roiRect(slot.index, r, roiRect);
+                FrameBufferPool.InputBuffer chunk = chunks[r / chunkSize];
+                int item = r % chunkSize;
+                PreprocessTransform transform = out.roiTransforms[slot.index][r];
+                if (format == InferenceBackend.InputFormat.FLOAT_CHW) {
+                    slot.converter.convertRegion(frame, roiRect[0], roiRect[1], roiRect[2], roiRect[3],
+                            size, size, chunk.itemFloats(item), transform);
+                } else {
+                    slot.converter.convertRegionToRgb(frame, roiRect[0], roiRect[1], roiRect[2], roiRect[3],
+                            size, size, chunk.itemBytes(item), transform);
                 }
             }
+        }
+    }
 
-            // Apply Non-Maximum Suppression
-            detections = nonMaxSuppression(validDetections, 0.5f); // IOU threshold of 0.5
+    // Inference stage: runs both models on a prepared frame
+    public List<Detection> detect(PreparedFrame prepared) {
+        List<Detection> detections = new ArrayList<>();
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error running " + modelType + " model", e);
+        // Process with both models, or with those the scheduler picks
+        long modelsStart = System.nanoTime();
+        ModelScheduler currentScheduler = prepared.fullFrame ? scheduler : null;
+        if (!prepared.fullFrame) {
+            // Crops only; a model without any has nothing to follow and finds nothing
+            runModel(vehicleSlot, null, null, prepared);
+            runModel(signSlot, null, null, prepared);
+        } else if (currentScheduler != null) {
+            runScheduled(currentScheduler, prepared);
+        } else if (concurrentModels) {
+            runModelsConcurrently(prepared);
+        } else {
+            runModel(vehicleSlot, prepared.inputs[0], prepared.transforms[0], prepared);
+            runModel(signSlot, prepared.inputs[1], prepared.transforms[1], prepared);
+        }
+        modelsWallNanos = System.nanoTime() - modelsStart;
+        RoiPlanner planner = roiPlanner;
+        if (planner != null) {
+            for (ModelSlot slot : slots) {
+                planner.update(slot.index, slot.survivors);
+            }
+        }
+        if (currentScheduler == null) {
+            vehicleSlot.resultTimestampNs = prepared.timestampNs;
+            signSlot.resultTimestampNs = prepared.timestampNs;
+        }
+
+        // Results of a model that was skipped this frame are its last ones, tagged with their age
+        float vehicleAgeMs = (prepared.timestampNs - vehicleSlot.resultTimestampNs) / 1e6f;
+        float signAgeMs = (prepared.timestampNs - signSlot.resultTimestampNs) / 1e6f;
+        if (crossModelMerge) {
+            crossModelCandidates.clear();
+            appendAll(vehicleSlot.survivors, crossModelCandidates);
+            appendAll(signSlot.survivors, crossModelCandidates);
+            crossModelNms.run(crossModelCandidates, crossModelSurvivors);
+            addDetections(crossModelSurvivors, detections, vehicleAgeMs, signAgeMs);
+        } else {
+            addDetections(vehicleSlot.survivors, detections, vehicleAgeMs, signAgeMs);
+            addDetections(signSlot.survivors, detections, vehicleAgeMs, signAgeMs);
         }
 
         return detections;
     }
 
-    private List<Detection> nonMaxSuppression(List<Detection> detections, float iouThreshold) {
-        List<Detection> result = new ArrayList<>();
+    // Scheduler model indices follow slot order, which is also priority order: vehicle, then sign
+    private void runScheduled(ModelScheduler currentScheduler, PreparedFrame prepared) {
+        currentScheduler.beginFrame();
+        boolean runVehicle = currentScheduler.shouldRun(0, prepared.arrivalNanos, System.nanoTime());
+        // With tiling on, the sign model waits for a frame prepared with its tiles; it stays due
+        boolean signReady = signTiling == null || prepared.tileCount > 0;
+
+        if (concurrentModels && runVehicle) {
+            // Both start now, so the sign model's deadline is judged from here
+            if (signReady && currentScheduler.shouldRun(1, prepared.arrivalNanos, System.nanoTime())) {
+                runModelsConcurrently(prepared);
+                onScheduledRun(currentScheduler, 0, vehicleSlot, prepared);
+                onScheduledRun(currentScheduler, 1, signSlot, prepared);
+                return;
+            }
+            runModel(vehicleSlot, prepared.inputs[0], prepared.transforms[0], prepared);
+            onScheduledRun(currentScheduler, 0, vehicleSlot, prepared);
+            return;
+        }
+
+        if (runVehicle) {
+            runModel(vehicleSlot, prepared.inputs[0], prepared.transforms[0], prepared);
+            onScheduledRun(currentScheduler, 0, vehicleSlot, prepared);
+        }
+        if (signReady && currentScheduler.shouldRun(1, prepared.arrivalNanos, System.nanoTime())) {
+            runModel(signSlot, prepared.inputs[1], prepared.transforms[1], prepared);
+            onScheduledRun(currentScheduler, 1, signSlot, prepared);
+        }
+    }
+
+    private static void onScheduledRun(ModelScheduler currentScheduler, int model, ModelSlot slot,
+                                       PreparedFrame prepared) {
+        currentScheduler.onRun(model, slot.runNanos);
+        slot.resultTimestampNs = prepared.timestampNs;
+    }
+
+    // Square input size for frames prepared from now on, for backends without a
+    // fixed size; buffers are reallocated once
+    public void setInputSize(int size) {
+        if (size != inputSize) {
+            Log.d(TAG, "Input size " + inputSize + " -> " + size);
+            inputSize = size;
+            batched.setInputSize(size);
+        }
+    }
 
-        // Sort by confidence
-        Collections.sort(detections, (a, b) -> Float.compare(b.confidence, a.confidence));
+    public int getInputSize() {
+        return inputSize;
+    }
 
-        boolean[] removed = new boolean[detections.size()];
+    // Returns the frame's input buffers to their pools
+    public void recycle(PreparedFrame prepared) {
+        for (int i = 0; i < slots.length; i++) {
+            if (prepared.inputs[i] != null && !prepared.isShared(i)) {
+                slots[i].bufferPool.release(prepared.inputs[i]);
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            prepared.inputs[i] = null;
+        }
+        for (int c = 0; c < prepared.tileChunkCount(); c++) {
+            signSlot.tilePools.release(prepared.tileChunks[c]);
+            prepared.tileChunks[c] = null;
+        }
+        prepared.tileCount = 0;
+        for (ModelSlot slot : slots) {
+            for (int c = 0; c < prepared.roiChunkCount(slot.index); c++) {
+                slot.roiPools.release(prepared.roiChunks[slot.index][c]);
+                prepared.roiChunks[slot.index][c] = null;
+            }
+            prepared.roiCounts[slot.index] = 0;
+        }
+    }
 
-        for (int i = 0; i < detections.size(); i++) {
-            if (removed[i]) continue;
+    /**
+     * Offline batch stage 1: acquires input chunks for imageCount images (at
+     * most batch.capacity and MAX_BATCH) at the current input size.
+     * The batch stages run through BatchedDetector on the same backends, so
+     * don't mix them with live frames on one Detector at the same time. See
+     * BatchDetector.
+     */
+    void beginBatch(PreparedBatch batch, int imageCount) {
+        batched.begin(batch, imageCount);
+    }
 
-            result.add(detections.get(i));
+    // Offline batch stage 2: converts one image into the next position of the batch
+    void addToBatch(PreparedBatch batch, YuvFrame frame, int[] argb, int width, int height, long timestampNs) {
+        batched.add(batch, frame, argb, width, height, timestampNs);
+    }
 
-            for (int j = i + 1; j < detections.size(); j++) {
-                if (removed[j]) continue;
+    /**
+     * Offline batch stage 3: one forward per chunk per model, then per-image
+     * decode and NMS. Returns one detection list per image, in order.
+     */
+    List<List<Detection>> detectBatch(PreparedBatch batch) {
+        long modelsStart = System.nanoTime();
+        try {
+            batched.run(batch);
+        } catch (Exception e) {
+            // The failed chunks come back empty; the rest keep their results
+            Log.e(TAG, "Error running models on batch", e);
+        }
+        modelsWallNanos = System.nanoTime() - modelsStart;
+        for (ModelSlot slot : slots) {
+            slot.forwardNanos = batched.getForwardNanos(slot.index);
+        }
 
-                float iou = calculateIoU(detections.get(i).box, detections.get(j).box);
-                if (iou > iouThreshold) {
-                    removed[j] = true;
-                }
+        List<List<Detection>> results = new ArrayList<>(batch.count);
+        for (int i = 0; i < batch.count; i++) {
+            List<Detection> detections = new ArrayList<>();
+            if (crossModelMerge) {
+                crossModelCandidates.clear();
+                appendAll(batch.survivors[0][i], crossModelCandidates);
+                appendAll(batch.survivors[1][i], crossModelCandidates);
+                crossModelNms.run(crossModelCandidates, crossModelSurvivors);
+                addDetections(crossModelSurvivors, detections, 0f, 0f);
+            } else {
+                addDetections(batch.survivors[0][i], detections, 0f, 0f);
+                addDetections(batch.survivors[1][i], detections, 0f, 0f);
             }
+            results.add(detections);
         }
+        return results;
+    }
 
-        return result;
+    // Returns a batch's input chunks to their pools
+    void recycleBatch(PreparedBatch batch) {
+        batched.recycle(batch);
     }
 
-    private float calculateIoU(RectF box1, RectF box2) {
-        float intersectionLeft = Math.max(box1.left, box2.left);
-        float intersectionTop = Math.max(box1.top, box2.top);
-        float intersectionRight = Math.min(box1.right, box2.right);
-        float intersectionBottom = Math.min(box1.bottom, box2.bottom);
+    private void runModelsConcurrently(PreparedFrame prepared) {
+        // Inputs are only read by forward, so both models can share one
+        Future<?> signResult = modelExecutor.submit(
+                () -> runModel(signSlot, prepared.inputs[1], prepared.transforms[1], prepared));
 
-        if (intersectionRight < intersectionLeft || intersectionBottom < intersectionTop) {
-            return 0;
+        runModel(vehicleSlot, prepared.inputs[0], prepared.transforms[0], prepared);
+
+        try {
+            signResult.get();
+        } catch (Exception e) {
+            Log.e(TAG, "Error running sign model", e);
+            signSlot.survivors.clear();
         }
+    }
 
-        float intersectionArea = (intersectionRight - intersectionLeft) *
-                (intersectionBottom - intersectionTop);
+    private static void appendAll(CandidateBuffer from, CandidateBuffer to) {
+        for (int i = 0; i < from.count; i++) {
+            to.add(from, i);
+        }
+    }
 
-        float box1Area = (box1.right - box1.left) * (box1.bottom - box1.top);
-        float box2Area = (box2.right - box2.left) * (box2.bottom - box2.top);
+    // Detection objects are created for the final survivors only
+    private void addDetections(CandidateBuffer survivors, List<Detection> detections,
+                               float vehicleAgeMs, float signAgeMs) {
+        for (int i = 0; i < survivors.count; i++) {
+            boolean isVehicle = survivors.sources[i] == vehicleSlot.spec.type;
+            ModelSpec spec = isVehicle ? vehicleSlot.spec : signSlot.spec;
+            detections.add(new Detection(
+                    new RectF(survivors.left[i], survivors.top[i], survivors.right[i], survivors.bottom[i]),
+                    spec.labelFor(survivors.classIds[i]),
+                    survivors.scores[i],
+                    spec.type,
+                    -1,
+                    isVehicle ? vehicleAgeMs : signAgeMs
+            ));
+        }
+    }
 
-        float unionArea = box1Area + box2Area - intersectionArea;
+    /**
+     * Selects how each model's candidates are suppressed: GREEDY (default),
+     * SOFT or MERGE. Suppression is always class-aware within a model.
+     */
+    public void setNmsMode(NmsEngine.Mode mode) {
+        for (ModelSlot slot : slots) {
+            slot.nms = new NmsEngine(mode, IOU_THRESHOLD, PRE_NMS_TOP_K, true);
+        }
+        batched.setNmsMode(mode);
+    }
+
+    /**
+     * Also runs the sign model on the tiles of layout, at about native
+     * resolution, and merges what it finds with the whole-frame pass through
+     * NMS. Only live frames are tiled. Null turns tiling off.
+     */
+    public void setSignTiling(TileLayout layout) {
+        signTiling = layout;
+    }
 
-        return intersectionArea / unionArea;
+    /**
+     * ROI mode: each model also runs on crops of the full-resolution frame
+     * around its previous detections, and its whole-frame pass only runs as
+     * often as planner says. Crop results are mapped back to the frame and
+     * merged with the whole-frame ones through NMS. Pair with a smaller
+     * setInputSize, since whole-frame passes no longer need to resolve
+     * distant objects. Only live frames use it. Null turns it off.
+     */
+    public void setRoiMode(RoiPlanner planner) {
+        roiPlanner = planner;
     }
 
-    private int getClassId(float[] outputs, int offset, int dimensions) {
-        int classId = 0;
-        float maxScore = 0;
+    // Fuses overlapping vehicle and sign results after per-model NMS
+    public void setCrossModelMerge(boolean merge) {
+        crossModelMerge = merge;
+    }
 
-        // Start after box coordinates and confidence score
-        for (int j = 5; j < dimensions; j++) {
-            if (outputs[offset + j] > maxScore) {
-                maxScore = outputs[offset + j];
-                classId = j - 5;
+    /**
+     * Runs the two models in parallel instead of one after the other. A
+     * backend with its own threads (TFLite) gets half the cores, so two
+     * concurrent forwards don't oversubscribe them; sequential mode gives
+     * them all back. PyTorch's intra-op pool is process-wide: one PyTorch
+     * model next to a TFLite one gets half the cores too, but two PyTorch
+     * models share the one pool and nothing can be split, so it keeps every
+     * core. Call from the inference thread, or before frames start arriving.
+     */
+    public void setConcurrentModels(boolean concurrent) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int pytorchModels = 0;
+        for (ModelSlot slot : slots) {
+            if (isProcessWide(slot)) {
+                pytorchModels++;
             }
         }
+        StringBuilder threads = new StringBuilder();
+        for (ModelSlot slot : slots) {
+            boolean split = concurrent && !(isProcessWide(slot) && pytorchModels > 1);
+            int numThreads = split ? Math.max(1, cores / 2) : cores;
+            slot.backend.setNumThreads(numThreads);
+            threads.append(", ").append(slot.spec.name).append(" (").append(slot.backend.name()).append(") ")
+                    .append(numThreads);
+        }
+        concurrentModels = concurrent;
+        Log.d(TAG, "Concurrent models: " + concurrent + ", intra-op threads" + threads);
+    }
+
+    // True if the slot's backend threads are shared by the whole process
+    private static boolean isProcessWide(ModelSlot slot) {
+        return "pytorch".equals(slot.backend.name());
+    }
+
+    /**
+     * Sets the thread count of one model's backend (modelType as in
+     * Detection.type). PyTorch threads are process-wide, so this also
+     * changes any other PyTorch model. Same threading rule as above.
+     */
+    public void setModelThreads(int modelType, int numThreads) {
+        ModelSlot slot = modelType == vehicleSlot.spec.type ? vehicleSlot : signSlot;
+        slot.backend.setNumThreads(numThreads);
+        Log.d(TAG, slot.spec.name + " model (" + slot.backend.name() + ") threads: " + numThreads);
+    }
+
+    // Backend name of a model, e.g. "pytorch" or "tflite"
+    public String getBackendName(int modelType) {
+        ModelSlot slot = modelType == vehicleSlot.spec.type ? vehicleSlot : signSlot;
+        return slot.backend.name();
+    }
+
+    public boolean isConcurrentModels() {
+        return concurrentModels;
+    }
 
-        return classId;
+    /**
+     * Runs each model at its own cadence and deadline (model 0 is the vehicle
+     * model, 1 the sign model); null runs both on every frame. Set it before
+     * frames arrive or from the inference thread.
+     */
+    public void setScheduler(ModelScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 
-    private String getClassName(int id, boolean isVehicle) {
-        String[] classes = isVehicle ? VEHICLE_CLASSES : SIGN_CLASSES;
-        return id < classes.length ? classes[id] : (isVehicle ? "vehicle" : "sign");
+    // Records preprocess, forward and postprocess latencies into metrics; null turns it off
+    public void setMetrics(StageMetrics metrics) {
+        this.metrics = metrics;
+        batched.setMetrics(metrics, vehicleSlot.forwardStage, signSlot.forwardStage);
+    }
+
+    // Last vehicle model forward time in milliseconds
+    public float getVehicleForwardMs() {
+        return vehicleSlot.forwardNanos / 1e6f;
+    }
+
+    // Last sign model forward time in milliseconds
+    public float getSignForwardMs() {
+        return signSlot.forwardNanos / 1e6f;
+    }
+
+    // Wall-clock time spent in both models for the last frame, in milliseconds
+    public float getModelsWallMs() {
+        return modelsWallNanos / 1e6f;
+    }
+
+    public void close() {
+        modelExecutor.shutdownNow();
+        for (ModelSlot slot : slots) {
+            slot.backend.close();
+        }
+    }
+
+    // Bytes the last prepare allocated for inputs, tiles and ROI crops; 0 in steady state
+    public long getBytesAllocatedLastFrame() {
+        return bytesAllocatedLastFrame;
+    }
+
+    // Input bytes allocated so far by every live-frame pool
+    private long getTotalBytesAllocated() {
+        long bytes = 0;
+        for (ModelSlot slot : slots) {
+            bytes += slot.bufferPool.getTotalBytesAllocated() + slot.tilePools.getTotalBytesAllocated()
+                    + slot.roiPools.getTotalBytesAllocated();
+        }
+        return bytes;
+    }
+
+    private void runModel(ModelSlot slot, FrameBufferPool.InputBuffer input, PreprocessTransform transform) {
+        runModel(slot, input, transform, null);
+    }
+
+    // Runs one model and leaves its suppressed candidates in the slot's survivors buffer.
+    // Tiles and ROI crops of extra, if any, run after the whole frame (null input for
+    // crops only) and share its NMS.
+    private void runModel(ModelSlot slot, FrameBufferPool.InputBuffer input, PreprocessTransform transform,
+                          PreparedFrame extra) {
+        slot.survivors.clear();
+
+        try {
+            // Run inference
+            long forwardStart = System.nanoTime();
+            long forwardNanos = 0;
+            if (input != null) {
+                slot.backend.run(input);
+                forwardNanos = System.nanoTime() - forwardStart;
+
+                // Collect valid candidates straight from the backend's output
+                slot.backend.decode(0, transform, slot.spec.confidenceThreshold, slot.spec.type, slot.candidates);
+            } else {
+                slot.candidates.clear();
+            }
+            if (extra != null && slot == signSlot && extra.tileCount > 0) {
+                forwardNanos += runTiles(slot, extra);
+            }
+            if (extra != null && extra.roiCounts[slot.index] > 0) {
+                forwardNanos += runRois(slot, extra);
+            }
+
+            // Apply Non-Maximum Suppression
+            slot.nms.run(slot.candidates, slot.survivors);
+
+            long end = System.nanoTime();
+            slot.forwardNanos = forwardNanos;
+            slot.runNanos = end - forwardStart;
+            StageMetrics currentMetrics = metrics;
+            if (currentMetrics != null) {
+                currentMetrics.record(slot.forwardStage, forwardNanos);
+                currentMetrics.record(slot.postprocessStage, slot.runNanos - forwardNanos);
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error running " + slot.spec.name + " model", e);
+            slot.survivors.clear();
+        }
+    }
+
+    // Adds the slot's candidates from every tile, minus fragments cut by a tile edge; returns the forward time
+    private long runTiles(ModelSlot slot, PreparedFrame tiled) throws Exception {
+        long forwardNanos = 0;
+        CandidateBuffer found = slot.tileCandidates;
+        for (int c = 0; c < tiled.tileChunkCount(); c++) {
+            long forwardStart = System.nanoTime();
+            slot.backend.run(tiled.tileChunks[c]);
+            forwardNanos += System.nanoTime() - forwardStart;
+
+            int first = c * tiled.tileChunkSize;
+            int n = Math.min(tiled.tileChunkSize, tiled.tileCount - first);
+            for (int j = 0; j < n; j++) {
+                PreprocessTransform tile = tiled.tileTransforms[first + j];
+                slot.backend.decode(j, tile, slot.spec.confidenceThreshold, slot.spec.type, found);
+                for (int k = 0; k < found.count; k++) {
+                    if (!tile.isCutByCropEdge(found.left[k], found.top[k], found.right[k], found.bottom[k])) {
+                        slot.candidates.add(found, k);
+                    }
+                }
+            }
+        }
+        return forwardNanos;
+    }
+
+    // Adds the slot's candidates from every ROI crop, minus fragments cut by a crop edge; returns the forward time
+    private long runRois(ModelSlot slot, PreparedFrame prepared) throws Exception {
+        long forwardNanos = 0;
+        CandidateBuffer found = slot.tileCandidates;
+        int count = prepared.roiCounts[slot.index];
+        int chunkSize = prepared.roiChunkSizes[slot.index];
+        for (int c = 0; c < prepared.roiChunkCount(slot.index); c++) {
+            long forwardStart = System.nanoTime();
+            slot.backend.run(prepared.roiChunks[slot.index][c]);
+            forwardNanos += System.nanoTime() - forwardStart;
+
+            int first = c * chunkSize;
+            int n = Math.min(chunkSize, count - first);
+            for (int j = 0; j < n; j++) {
+                PreprocessTransform crop = prepared.roiTransforms[slot.index][first + j];
+                slot.backend.decode(j, crop, slot.spec.confidenceThreshold, slot.spec.type, found);
+                for (int k = 0; k < found.count; k++) {
+                    if (!crop.isCutByCropEdge(found.left[k], found.top[k], found.right[k], found.bottom[k])) {
+                        slot.candidates.add(found, k);
+                    }
+                }
+            }
+        }
+        return forwardNanos;
     }
 }
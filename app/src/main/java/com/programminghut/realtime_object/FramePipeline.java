@@ -0,0 +1,401 @@
+package com.programminghut.realtime_object;
+
+import android.util.Log;
+import androidx.camera.core.ImageProxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Three-stage frame pipeline: preprocess (on the camera analyzer thread),
+ * inference and post-process/render (each on its own thread). Stages are
+ * joined by single-slot latest-wins hand-offs, so a slow stage drops stale
+ * frames instead of queueing them, and throughput approaches that of the
+ * slowest stage rather than the sum of all three. Tracker predictions skip
+ * inference and can reach the render stage before the keyframe that
+ * preceded them. The render stage drops a prediction older than the last
+ * result it drew, so boxes never step back in time; a late keyframe is still
+ * drawn, as its corrected tracks extrapolated to the last drawn frame. A
+ * keyframe that never reaches the models is re-requested on the next frame.
+ */
+public class FramePipeline {
+    private static final String TAG = "FramePipeline";
+
+    // Frames in flight: one being converted, one queued and one in inference
+    private static final int FRAME_COUNT = 3;
+    // Detections per frame the event log keeps
+    private static final int EVENT_FRAME_CAPACITY = 64;
+    // Longest stop() waits for a stage to finish its current frame
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    public interface Listener {
+        // Called on the render thread with the newest detections and the model
+        // input size they came from (0 for tracker predictions and ROI-only frames)
+        void onDetections(List<Detection> detections, long timestampNs, int inputSize);
+    }
+
+    private static class Result {
+        final List<Detection> detections;
+        final long timestampNs;
+        final long arrivalNanos;
+        final int inputSize;
+        // Model output, as opposed to a tracker prediction or motion-gate repeat
+        final boolean keyframe;
+
+        Result(List<Detection> detections, long timestampNs, long arrivalNanos, int inputSize, boolean keyframe) {
+            this.detections = detections;
+            this.timestampNs = timestampNs;
+            this.arrivalNanos = arrivalNanos;
+            this.inputSize = inputSize;
+            this.keyframe = keyframe;
+        }
+    }
+
+    private final Detector detector;
+    private final Listener listener;
+
+    private final ArrayBlockingQueue<PreparedFrame> freeFrames = new ArrayBlockingQueue<>(FRAME_COUNT);
+    private final HandoffQueue<PreparedFrame> toInference =
+            new HandoffQueue<>(1, HandoffQueue.DropPolicy.LATEST_WINS);
+    private final HandoffQueue<Result> toRender =
+            new HandoffQueue<>(1, HandoffQueue.DropPolicy.LATEST_WINS);
+
+    // Optional: runs the models only on keyframes and predicts in between
+    private volatile ObjectTracker tracker;
+    // Optional: skips the models when the scene hasn't changed
+    private volatile MotionGate motionGate;
+    // Optional: records every camera frame for replay
+    private volatile FrameRecorder recorder;
+    // Optional: logs the detections of every model frame; filled on the inference thread
+    private volatile DetectionEventLog eventLog;
+    private final DetectionFrame eventFrame = new DetectionFrame(EVENT_FRAME_CAPACITY);
+    private final YuvFrame cameraFrame = new YuvFrame();
+    // Last model output, reused when the motion gate skips a frame
+    private volatile List<Detection> lastDetections = Collections.emptyList();
+
+    // Optional: adapts the model input size to hold a target frame rate
+    private volatile ResolutionGovernor governor;
+    // Optional: per-stage latency histograms
+    private volatile StageMetrics metrics;
+
+    private final Thread inferenceThread;
+    private final Thread renderThread;
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong droppedAtInput = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong predicted = new AtomicLong();
+    private final AtomicLong staleAtRender = new AtomicLong();
+    // Render thread only
+    private long lastRenderedTimestampNs = Long.MIN_VALUE;
+
+    public FramePipeline(Detector detector, Listener listener) {
+        this.detector = detector;
+        this.listener = listener;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            freeFrames.add(new PreparedFrame());
+        }
+        inferenceThread = new Thread(this::inferenceLoop, "pipeline-inference");
+        renderThread = new Thread(this::renderLoop, "pipeline-render");
+    }
+
+    public void start() {
+        running = true;
+        inferenceThread.start();
+        renderThread.start();
+    }
+
+    /**
+     * Stops both stages and waits for them to finish the frame in hand.
+     * Returns false if a stage is still running after the timeout, in which
+     * case the detector may still be in use and must not be closed. Stop the
+     * camera analyzer first, so nothing calls submit meanwhile.
+     */
+    public boolean stop() {
+        running = false;
+        toInference.close();
+        toRender.close();
+        inferenceThread.interrupt();
+        renderThread.interrupt();
+        try {
+            inferenceThread.join(STOP_TIMEOUT_MS);
+            renderThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean stopped = !inferenceThread.isAlive() && !renderThread.isAlive();
+        if (!stopped) {
+            Log.w(TAG, "Pipeline threads did not stop within " + STOP_TIMEOUT_MS + " ms");
+        }
+        return stopped;
+    }
+
+    public void setTracker(ObjectTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    public void setMotionGate(MotionGate motionGate) {
+        this.motionGate = motionGate;
+    }
+
+    // Frames are recorded before any of them is skipped, exactly as the camera delivered them
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Logs model frames only; tracker predictions and motion-gate repeats add nothing new
+    public void setEventLog(DetectionEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    public void setGovernor(ResolutionGovernor governor) {
+        this.governor = governor;
+        if (governor != null) {
+            detector.setInputSize(governor.getInputSize());
+        }
+    }
+
+    // Records tracking, render and end-to-end latencies, plus the detector's own stages
+    public void setMetrics(StageMetrics metrics) {
+        this.metrics = metrics;
+        detector.setMetrics(metrics);
+    }
+
+    /**
+     * Preprocessing stage, called from the camera analyzer. Always closes the
+     * image, right after its pixels have been converted.
+     */
+    public void submit(ImageProxy image) {
+        try {
+            // Read the YUV planes in place
+            if (ImageUtils.toYuvFrame(image, cameraFrame) == null) {
+                Log.e(TAG, "Unsupported image format: " + image.getFormat());
+                return;
+            }
+            submit(cameraFrame);
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Preprocessing stage for a frame already in memory, e.g. a replayed
+     * recording. Call from one thread only; the planes are only read before
+     * this returns.
+     */
+    public void submit(YuvFrame frame) {
+        submitted.incrementAndGet();
+        long arrivalNanos = System.nanoTime();
+
+        FrameRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            currentRecorder.record(frame);
+        }
+
+        ObjectTracker currentTracker = tracker;
+        if (currentTracker != null && !currentTracker.beginFrame()) {
+            // Not a keyframe: skip the models and render predicted tracks
+            predicted.incrementAndGet();
+            toRender.offer(new Result(currentTracker.predict(frame.timestampNs), frame.timestampNs, arrivalNanos, 0,
+                    false));
+            return;
+        }
+
+        // Take a buffer before asking the gate, which commits its reference whenever it says run
+        PreparedFrame prepared = freeFrames.poll();
+        if (prepared == null || !running) {
+            // Every buffer is still in flight downstream
+            droppedAtInput.incrementAndGet();
+            keyframeDropped(currentTracker);
+            if (prepared != null) {
+                freeFrames.offer(prepared);
+            }
+            return;
+        }
+
+        MotionGate gate = motionGate;
+        if (gate != null && !gate.shouldRun(frame)) {
+            // Scene unchanged since the last model run: reuse its detections
+            freeFrames.offer(prepared);
+            keyframeDropped(currentTracker);
+            toRender.offer(new Result(lastDetections, frame.timestampNs, arrivalNanos, 0, false));
+            return;
+        }
+
+        try {
+            detector.prepare(frame, prepared);
+            prepared.arrivalNanos = arrivalNanos;
+        } catch (Exception e) {
+            Log.e(TAG, "Error preparing frame", e);
+            keyframeDropped(currentTracker);
+            if (gate != null) {
+                // Its reference is this frame, which never reaches the models
+                gate.reset();
+            }
+            release(prepared);
+            return;
+        }
+
+        // A replaced frame needs no new keyframe: the one replacing it is one
+        PreparedFrame stale = toInference.offer(prepared);
+        if (stale != null) {
+            release(stale);
+        }
+    }
+
+    private static void keyframeDropped(ObjectTracker tracker) {
+        if (tracker != null) {
+            tracker.keyframeDropped();
+        }
+    }
+
+    private void inferenceLoop() {
+        while (running) {
+            PreparedFrame frame;
+            try {
+                frame = toInference.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                break;
+            }
+
+            List<Detection> detections;
+            long timestampNs = frame.timestampNs;
+            long arrivalNanos = frame.arrivalNanos;
+            // The governor only sizes whole-frame passes
+            int inputSize = frame.fullFrame ? frame.transforms[0].inputWidth : 0;
+            ObjectTracker currentTracker = tracker;
+            try {
+                detections = detector.detect(frame);
+                if (currentTracker != null) {
+                    long trackStart = System.nanoTime();
+                    detections = currentTracker.update(detections, timestampNs);
+                    record(StageMetrics.Stage.TRACK, System.nanoTime() - trackStart);
+                }
+                lastDetections = detections;
+                logEvents(detections, timestampNs);
+            } catch (Exception e) {
+                Log.e(TAG, "Error running inference", e);
+                keyframeDropped(currentTracker);
+                continue;
+            } finally {
+                release(frame);
+            }
+            toRender.offer(new Result(detections, timestampNs, arrivalNanos, inputSize, true));
+        }
+    }
+
+    private void renderLoop() {
+        while (running) {
+            Result result;
+            try {
+                result = toRender.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (result == null) {
+                break;
+            }
+            List<Detection> detections = result.detections;
+            long timestampNs = result.timestampNs;
+            if (timestampNs < lastRenderedTimestampNs) {
+                if (!result.keyframe) {
+                    // A prediction overtaken by one for a later frame
+                    staleAtRender.incrementAndGet();
+                    continue;
+                }
+                // A keyframe overtaken by predictions made before it corrected the tracks: draw
+                // the corrected tracks at the last drawn frame rather than step back in time
+                ObjectTracker currentTracker = tracker;
+                if (currentTracker != null) {
+                    detections = currentTracker.extrapolate(lastRenderedTimestampNs);
+                }
+                timestampNs = lastRenderedTimestampNs;
+            }
+            lastRenderedTimestampNs = timestampNs;
+            try {
+                long renderStart = System.nanoTime();
+                listener.onDetections(detections, timestampNs, result.inputSize);
+                long renderEnd = System.nanoTime();
+                record(StageMetrics.Stage.RENDER, renderEnd - renderStart);
+                record(StageMetrics.Stage.END_TO_END, renderEnd - result.arrivalNanos);
+                rendered.incrementAndGet();
+                onFrameLatency(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Error rendering detections", e);
+            }
+        }
+    }
+
+    // Only whole-frame model passes are governed; predicted frames skip the models
+    private void onFrameLatency(Result result) {
+        ResolutionGovernor currentGovernor = governor;
+        if (currentGovernor == null || result.inputSize == 0) {
+            return;
+        }
+        if (currentGovernor.onFrameLatency(System.nanoTime() - result.arrivalNanos)) {
+            detector.setInputSize(currentGovernor.getInputSize());
+        }
+    }
+
+    private void logEvents(List<Detection> detections, long timestampNs) {
+        DetectionEventLog currentLog = eventLog;
+        if (currentLog == null) {
+            return;
+        }
+        eventFrame.clear();
+        for (int i = 0; i < detections.size(); i++) {
+            Detection detection = detections.get(i);
+            eventFrame.add(detection.box.left, detection.box.top, detection.box.right, detection.box.bottom,
+                    detection.label, detection.confidence, detection.type, detection.trackId, detection.ageMs);
+        }
+        eventFrame.timestampNs = timestampNs;
+        currentLog.append(eventFrame);
+    }
+
+    private void record(StageMetrics.Stage stage, long nanos) {
+        StageMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.record(stage, nanos);
+        }
+    }
+
+    private void release(PreparedFrame frame) {
+        detector.recycle(frame);
+        freeFrames.offer(frame);
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    // Frames dropped because no buffer was free, a newer frame replaced them or a prediction was overtaken
+    public long getDroppedCount() {
+        return droppedAtInput.get() + toInference.getDroppedCount() + toRender.getDroppedCount()
+                + staleAtRender.get();
+    }
+
+    public long getRenderedCount() {
+        return rendered.get();
+    }
+
+    // Frames served from tracker prediction without running the models
+    public long getPredictedCount() {
+        return predicted.get();
+    }
+
+    // Frames the motion gate let through to the models / skipped as unchanged
+    public long getGateRunCount() {
+        MotionGate gate = motionGate;
+        return gate != null ? gate.getRunCount() : 0;
+    }
+
+    public long getGateSkipCount() {
+        MotionGate gate = motionGate;
+        return gate != null ? gate.getSkipCount() : 0;
+    }
+}
@@ -0,0 +1,354 @@
+package com.programminghut.realtime_object;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Picks how the models run on this device: intra-op threads per model,
+ * sequential or concurrent models, and input size. A short calibration
+ * feeds frames through the detector, paced at the target frame rate so the
+ * clocks settle as they would in use, and measures each configuration's p95
+ * frame latency. The largest input size whose p95 fits the frame budget
+ * wins, the lowest p95 breaking ties; if none fits, the lowest p95 does.
+ * Calibration never runs past its time budget, checked on every frame.
+ * Configurations are tried most threads first, so the likely winners are
+ * measured before it runs out, and one is dropped after SLOW_FRAMES frames
+ * over the frame budget, since its p95 can no longer fit. The result is stored per device model and app version, so it runs
+ * on the first launch and again after an update. An override, stored the
+ * same way, wins over the tuned result until cleared. Call from the thread
+ * that owns the detector, before frames arrive.
+ */
+public class InferenceTuner {
+    private static final String TAG = "InferenceTuner";
+    private static final String TUNED_FILE = "inference_tuning.properties";
+    private static final String OVERRIDE_FILE = "inference_override.properties";
+    private static final int CALIBRATION_WIDTH = 640;
+    private static final int CALIBRATION_HEIGHT = 480;
+    // Untimed frames after each switch, so thread pools and buffers settle
+    private static final int WARMUP_FRAMES = 2;
+    // Timed frames per configuration, at most; the time budget may allow fewer
+    private static final int MAX_FRAMES = 40;
+    // Over 5% of MAX_FRAMES: this many frames over budget put the p95 over it
+    private static final int SLOW_FRAMES = 3;
+
+    /** One way of running the models. */
+    public static class Config {
+        public final int threads;
+        public final boolean concurrent;
+        public final int inputSize;
+        // Calibrated p95 frame latency; 0 for an override
+        public final float p95Ms;
+
+        public Config(int threads, boolean concurrent, int inputSize) {
+            this(threads, concurrent, inputSize, 0f);
+        }
+
+        Config(int threads, boolean concurrent, int inputSize, float p95Ms) {
+            if (threads < 1 || inputSize < 1) {
+                throw new IllegalArgumentException("threads and inputSize must be positive");
+            }
+            this.threads = threads;
+            this.concurrent = concurrent;
+            this.inputSize = inputSize;
+            this.p95Ms = p95Ms;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d threads, %s, input %d, p95 %.1f ms", threads,
+                    concurrent ? "concurrent" : "sequential", inputSize, p95Ms);
+        }
+    }
+
+    private final File tunedFile;
+    private final File overrideFile;
+    private final String key;
+    private final float targetFps;
+    private final long budgetNanos;
+    private final int[] sizes;
+    private final int cores;
+    private final YuvFrame frame = blankFrame(CALIBRATION_WIDTH, CALIBRATION_HEIGHT);
+    private final PreparedFrame prepared = new PreparedFrame();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Results are stored in directory under key, which should change with
+     * the device model and app version. Calibration tries sizes (ascending)
+     * and takes at most about budgetMs.
+     */
+    InferenceTuner(File directory, String key, int[] sizes, float targetFps, long budgetMs, int cores) {
+        if (sizes.length == 0 || targetFps <= 0) {
+            throw new IllegalArgumentException("need at least one size and a positive target FPS");
+        }
+        this.tunedFile = new File(directory, TUNED_FILE);
+        this.overrideFile = new File(directory, OVERRIDE_FILE);
+        this.key = key;
+        this.sizes = sizes.clone();
+        this.targetFps = targetFps;
+        this.budgetNanos = budgetMs * 1_000_000L;
+        this.cores = cores;
+    }
+
+    // Tuner for this device and app version over the governor's input sizes
+    public static InferenceTuner forDevice(Context context, float targetFps, long budgetMs) {
+        String key = Build.MANUFACTURER + " " + Build.MODEL + " " + Detector.versionCode(context);
+        return new InferenceTuner(context.getFilesDir(), key, ResolutionGovernor.DEFAULT_SIZES,
+                targetFps, budgetMs, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Applies the override or the stored result for this device and
+     * version, calibrating first if there is neither. Returns what was
+     * applied.
+     */
+    public Config loadOrTune(Detector detector) {
+        Config stored = getStored();
+        if (stored != null) {
+            Log.d(TAG, "Using stored configuration: " + stored);
+            apply(detector, stored);
+            return stored;
+        }
+        return retune(detector);
+    }
+
+    // Calibrates again, then stores and applies the result; an override still wins at the next loadOrTune
+    public Config retune(Detector detector) {
+        long start = System.nanoTime();
+        Config best = calibrate(detector);
+        Log.d(TAG, "Tuned in " + (System.nanoTime() - start) / 1000000 + " ms: " + best);
+        apply(detector, best);
+        store(tunedFile, best);
+        return best;
+    }
+
+    // Used in place of the tuned result from the next loadOrTune; apply it too to switch now
+    public void setOverride(Config config) {
+        store(overrideFile, config);
+    }
+
+    public void clearOverride() {
+        if (overrideFile.exists() && !overrideFile.delete()) {
+            Log.w(TAG, "Cannot delete " + overrideFile);
+        }
+    }
+
+    // The override, else the tuned result for this device and version, else null
+    public Config getStored() {
+        Config override = read(overrideFile);
+        return override != null ? override : read(tunedFile);
+    }
+
+    public boolean isOverridden() {
+        return read(overrideFile) != null;
+    }
+
+    public static void apply(Detector detector, Config config) {
+        detector.setConcurrentModels(config.concurrent);
+        detector.setModelThreads(Detector.VEHICLE_SPEC.type, config.threads);
+        detector.setModelThreads(Detector.SIGN_SPEC.type, config.threads);
+        detector.setInputSize(config.inputSize);
+    }
+
+    // The ascending sizes up to maxSize (at least the smallest), for a governor that starts at maxSize
+    public static int[] sizesUpTo(int[] sizes, int maxSize) {
+        int count = 0;
+        while (count < sizes.length && sizes[count] <= maxSize) {
+            count++;
+        }
+        int[] kept = new int[Math.max(1, count)];
+        System.arraycopy(sizes, 0, kept, 0, kept.length);
+        return kept;
+    }
+
+    private Config calibrate(Detector detector) {
+        List<Config> candidates = candidates();
+        long frameNanos = (long) (1e9f / targetFps);
+        // An even share of the budget per configuration, warm-up included
+        long share = budgetNanos / Math.max(1, candidates.size()) / frameNanos - WARMUP_FRAMES;
+        int frames = (int) Math.max(1, Math.min(MAX_FRAMES, share));
+        long deadline = System.nanoTime() + budgetNanos;
+
+        Config best = null;
+        float budgetMs = 1000f / targetFps;
+        // Thread and mode pair whose last size missed the budget; larger sizes only get slower
+        Config missed = null;
+        for (Config candidate : candidates) {
+            if (System.nanoTime() > deadline) {
+                Log.d(TAG, "Calibration budget spent before " + candidate);
+                break;
+            }
+            if (missed != null && missed.threads == candidate.threads && missed.concurrent == candidate.concurrent) {
+                continue;
+            }
+            Config measured = measure(detector, candidate, frames, frameNanos, deadline);
+            if (measured == null) {
+                Log.d(TAG, "Calibration budget spent measuring " + candidate);
+                break;
+            }
+            Log.d(TAG, "Measured " + measured);
+            if (measured.p95Ms > budgetMs) {
+                missed = measured;
+            }
+            if (best == null || isBetter(measured, best, budgetMs)) {
+                best = measured;
+            }
+        }
+        return best != null ? best : candidates.get(0);
+    }
+
+    // Fitting the frame budget first, then the larger input, then the lower p95
+    private static boolean isBetter(Config a, Config b, float budgetMs) {
+        boolean aFits = a.p95Ms <= budgetMs;
+        boolean bFits = b.p95Ms <= budgetMs;
+        if (aFits != bFits) {
+            return aFits;
+        }
+        if (aFits && a.inputSize != b.inputSize) {
+            return a.inputSize > b.inputSize;
+        }
+        return a.p95Ms < b.p95Ms;
+    }
+
+    /**
+     * Per thread count and mode, sizes ascending. Thread counts go from the
+     * most down, sequential and concurrent taking turns, since more threads
+     * usually win; concurrent models split the cores between them.
+     */
+    private List<Config> candidates() {
+        List<Integer> sequential = threadCounts(cores);
+        List<Integer> concurrent = threadCounts(Math.max(1, cores / 2));
+        List<Config> candidates = new ArrayList<>();
+        for (int i = 0; i < Math.max(sequential.size(), concurrent.size()); i++) {
+            for (boolean isConcurrent : new boolean[]{false, true}) {
+                List<Integer> counts = isConcurrent ? concurrent : sequential;
+                if (i >= counts.size()) {
+                    continue;
+                }
+                for (int size : sizes) {
+                    candidates.add(new Config(counts.get(i), isConcurrent, size));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    // Distinct thread counts up to maxThreads, most first
+    private List<Integer> threadCounts(int maxThreads) {
+        List<Integer> counts = new ArrayList<>();
+        int previous = Integer.MAX_VALUE;
+        for (int count : new int[]{cores, 4, 2, 1}) {
+            int threads = Math.min(count, maxThreads);
+            if (threads < previous) {
+                counts.add(threads);
+                previous = threads;
+            }
+        }
+        return counts;
+    }
+
+    // Null if the deadline passed before any frame was timed
+    private Config measure(Detector detector, Config candidate, int frames, long frameNanos, long deadline) {
+        apply(detector, candidate);
+        latency.snapshotAndReset();
+        int slowFrames = 0;
+        try {
+            for (int i = 0; i < WARMUP_FRAMES + frames && System.nanoTime() < deadline; i++) {
+                long start = System.nanoTime();
+                detector.prepare(frame.set(CALIBRATION_WIDTH, CALIBRATION_HEIGHT, 0, start), prepared);
+                try {
+                    detector.detect(prepared);
+                } finally {
+                    detector.recycle(prepared);
+                }
+                long elapsed = System.nanoTime() - start;
+                if (i >= WARMUP_FRAMES) {
+                    latency.recordNanos(elapsed);
+                    if (elapsed > frameNanos && ++slowFrames >= SLOW_FRAMES) {
+                        break;
+                    }
+                }
+                // Hold the target rate rather than running back to back
+                if (elapsed < frameNanos) {
+                    Thread.sleep((frameNanos - elapsed) / 1000000);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LatencyHistogram.Snapshot snapshot = latency.snapshotAndReset();
+        if (snapshot.getCount() == 0) {
+            return null;
+        }
+        return new Config(candidate.threads, candidate.concurrent, candidate.inputSize,
+                snapshot.percentileMs(0.95f));
+    }
+
+    private Config read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!key.equals(properties.getProperty("key"))) {
+            Log.d(TAG, file.getName() + " was stored for " + properties.getProperty("key"));
+            return null;
+        }
+        try {
+            return new Config(Integer.parseInt(properties.getProperty("threads")),
+                    Boolean.parseBoolean(properties.getProperty("concurrent")),
+                    Integer.parseInt(properties.getProperty("inputSize")),
+                    Float.parseFloat(properties.getProperty("p95Ms", "0")));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Ignoring malformed " + file, e);
+            return null;
+        }
+    }
+
+    private void store(File file, Config config) {
+        Properties properties = new Properties();
+        properties.setProperty("key", key);
+        properties.setProperty("threads", String.valueOf(config.threads));
+        properties.setProperty("concurrent", String.valueOf(config.concurrent));
+        properties.setProperty("inputSize", String.valueOf(config.inputSize));
+        properties.setProperty("p95Ms", String.valueOf(config.p95Ms));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot store " + file, e);
+        }
+    }
+
+    // A mid-grey frame; content barely changes the forward cost
+    private static YuvFrame blankFrame(int width, int height) {
+        ByteBuffer y = grey(width * height);
+        ByteBuffer u = grey(width / 2 * height / 2);
+        ByteBuffer v = grey(width / 2 * height / 2);
+        return new YuvFrame().set(width, height, 0, 0)
+                .setY(y, width, 1)
+                .setU(u, width / 2, 1)
+                .setV(v, width / 2, 1);
+    }
+
+    private static ByteBuffer grey(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) 128);
+        }
+        return buffer;
+    }
+}
@@ -3,14 +3,11 @@ import java.io.IOException;  // Add this import
 import android.util.Log;  // Add this import
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
 import android.graphics.SurfaceTexture;
 import android.os.Bundle;
 import android.view.TextureView;
+import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -20,23 +17,77 @@ import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity implements TextureView.SurfaceTextureListener {
     private PreviewView viewFinder;
     private TextureView overlayView;
+    private TextView metricsHud;
+    private MetricsReporter metricsReporter;
+    private FrameRecorder frameRecorder;
+    private DetectionEventLog eventLog;
     private Detector detector;
+    private boolean destroyed;
+    private volatile FramePipeline pipeline;
     private ExecutorService cameraExecutor;
     private static final int REQUEST_CODE_PERMISSIONS = 10;
+    // Longest onDestroy waits for the camera analyzer to finish its frame
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
     private static final String[] REQUIRED_PERMISSIONS = new String[]{Manifest.permission.CAMERA};
-    private Paint boxPaint;
-    private Paint textPaint;
+    // Run the models every third frame and track in between
+    private static final int KEYFRAME_INTERVAL = 3;
+    private static final float MIN_TRACK_CONFIDENCE = 0.4f;
+    // Frame rate the resolution governor tries to hold
+    private static final float TARGET_FPS = 20f;
+    // Time the first launch on a device (or app version) may spend calibrating threads and input size
+    private static final long TUNING_BUDGET_MS = 8000;
+    // Mean luma change (0-255) below which the last detections are reused,
+    // and how many frames in a row they may be reused
+    private static final float MOTION_THRESHOLD = 3f;
+    private static final int MAX_STALE_FRAMES = 15;
+    // Signs change slowly, so the sign model runs on every second model frame and
+    // gives way when a frame is already late; cached sign boxes fill the gaps
+    private static final int SIGN_CADENCE = 2;
+    private static final float SIGN_DEADLINE_MS = 1000f / TARGET_FPS;
+    private static final int SIGN_MAX_DEFER_FRAMES = 4;
+    // Tiled sign mode for small, distant signs: the upper part of the frame in
+    // overlapping tiles on top of the whole-frame pass. Off by default, as it
+    // roughly triples the sign model's cost
+    private static final boolean TILED_SIGNS = false;
+    private static final TileLayout SIGN_TILES = new TileLayout(2, 1, 0.2f, 0f, 0.6f);
+    // ROI mode: 256px crops around the last detections, whole frame every 4th frame.
+    // Off by default; it pays off when few objects are in view
+    private static final boolean ROI_MODE = false;
+    private static final int ROI_FULL_FRAME_INTERVAL = 4;
+    private static final float ROI_MARGIN = 0.5f;
+    private static final int ROI_INPUT_SIZE = 256;
+    // Crops may cost at most half a whole-frame pass, or the whole frame runs instead
+    private static final float ROI_MAX_COST = 0.5f;
+    // Under the app's external files dir, e.g. adb pull /sdcard/Android/data/<package>/files/metrics
+    private static final String METRICS_DIRECTORY = "metrics";
+    // Records raw camera frames for host replay; pull them like the metrics. Off by default,
+    // as 640x480 YUV is about 14 MB/s at 30 fps
+    private static final boolean RECORD_FRAMES = false;
+    private static final String RECORDINGS_DIRECTORY = "recordings";
+    // Frames that may wait for the disk before recording drops them
+    private static final int RECORDER_SLOTS = 8;
+    // Detection history: 4 MB segments, at most 64 MB kept; export on a host with
+    // ./gradlew :core:exportDetectionLog after pulling the directory
+    private static final String EVENTS_DIRECTORY = "events";
+    private static final int EVENT_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int EVENT_MAX_SEGMENTS = 16;
+    private static final int EVENT_BUFFER_BYTES = 256 * 1024;
+    private OverlayRenderer overlayRenderer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupMetrics.markStart();
         setContentView(R.layout.activity_main);
         Log.d("ModelDebug", "Starting application...");
 
@@ -53,36 +104,140 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
         viewFinder = findViewById(R.id.viewFinder);
         overlayView = findViewById(R.id.overlayView);
         overlayView.setSurfaceTextureListener(this);
+        overlayRenderer = new OverlayRenderer(overlayView);
+        metricsHud = findViewById(R.id.metricsHud);
+        overlayView.setOnClickListener(v -> toggleMetricsHud());
 
-        setupPaints();
+        cameraExecutor = Executors.newSingleThreadExecutor();
+
+        // Models load and warm up in the background while permissions are sorted out;
+        // the camera is bound once both are done
+        Detector.loadAsync(this, ContextCompat.getMainExecutor(this), new Detector.ReadyCallback() {
+            @Override
+            public void onReady(Detector loaded) {
+                if (destroyed) {
+                    loaded.close();
+                    return;
+                }
+                StartupMetrics.markModelsReady();
+                tuneDetector(loaded);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Toast.makeText(MainActivity.this, "Error loading models: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                e.printStackTrace();
+            }
+        });
+
+        if (!allPermissionsGranted()) {
+            ActivityCompat.requestPermissions(this, REQUIRED_PERMISSIONS, REQUEST_CODE_PERMISSIONS);
+        }
+    }
+
+    // Applies the stored or freshly calibrated configuration off the main thread, then starts the pipeline
+    private void tuneDetector(Detector loaded) {
+        InferenceTuner tuner = InferenceTuner.forDevice(this, TARGET_FPS, TUNING_BUDGET_MS);
+        Executor mainExecutor = ContextCompat.getMainExecutor(this);
+        new Thread(() -> {
+            InferenceTuner.Config config = tuner.loadOrTune(loaded);
+            mainExecutor.execute(() -> {
+                if (destroyed) {
+                    loaded.close();
+                    return;
+                }
+                onDetectorReady(loaded, config);
+            });
+        }, "inference-tuner").start();
+    }
+
+    private void onDetectorReady(Detector loaded, InferenceTuner.Config config) {
+        detector = loaded;
+        ModelScheduler scheduler = new ModelScheduler(2);
+        scheduler.configure(1, SIGN_CADENCE, SIGN_DEADLINE_MS, SIGN_MAX_DEFER_FRAMES);
+        detector.setScheduler(scheduler);
+        if (TILED_SIGNS) {
+            detector.setSignTiling(SIGN_TILES);
+        }
+        if (ROI_MODE) {
+            detector.setRoiMode(new RoiPlanner(2, ROI_FULL_FRAME_INTERVAL, ROI_MARGIN, ROI_INPUT_SIZE, ROI_MAX_COST));
+        }
+        pipeline = new FramePipeline(detector, (detections, timestampNs, inputSize) -> {
+            overlayRenderer.submit(detections);
+            StartupMetrics.markFirstDetection();
+        });
+        pipeline.setTracker(new ObjectTracker(KEYFRAME_INTERVAL, MIN_TRACK_CONFIDENCE));
+        pipeline.setMotionGate(new MotionGate(32, 24, MOTION_THRESHOLD, MAX_STALE_FRAMES));
+        // Starts at the tuned size and only steps down from it, e.g. when the device heats up
+        pipeline.setGovernor(new ResolutionGovernor(
+                InferenceTuner.sizesUpTo(ResolutionGovernor.DEFAULT_SIZES, config.inputSize), TARGET_FPS));
+
+        StageMetrics metrics = new StageMetrics();
+        pipeline.setMetrics(metrics);
+        overlayRenderer.setMetrics(metrics);
+        // Null until the view is attached; the renderer then assumes 60 Hz
+        if (overlayView.getDisplay() != null) {
+            overlayRenderer.setRefreshRate(overlayView.getDisplay().getRefreshRate());
+        }
+        overlayRenderer.start();
+        File metricsDirectory = getExternalFilesDir(METRICS_DIRECTORY);
+        metricsReporter = new MetricsReporter(metrics, pipeline,
+                metricsDirectory != null ? new File(metricsDirectory, "metrics.log") : null);
+        metricsReporter.start();
+        if (RECORD_FRAMES) {
+            startRecording();
+        }
+        startEventLog();
+        pipeline.start();
 
         if (allPermissionsGranted()) {
             startCamera();
-        } else {
-            ActivityCompat.requestPermissions(this, REQUIRED_PERMISSIONS, REQUEST_CODE_PERMISSIONS);
         }
+    }
 
-        cameraExecutor = Executors.newSingleThreadExecutor();
+    private void startEventLog() {
+        File directory = getExternalFilesDir(EVENTS_DIRECTORY);
+        if (directory == null) {
+            return;
+        }
+        eventLog = new DetectionEventLog(directory, EVENT_SEGMENT_BYTES, EVENT_MAX_SEGMENTS, EVENT_BUFFER_BYTES);
+        try {
+            eventLog.start();
+            pipeline.setEventLog(eventLog);
+        } catch (IOException e) {
+            Log.e("DetectionEventLog", "Error starting event log", e);
+            eventLog = null;
+        }
+    }
 
+    private void startRecording() {
+        File directory = getExternalFilesDir(RECORDINGS_DIRECTORY);
+        if (directory == null) {
+            return;
+        }
+        File file = new File(directory, "capture-" + System.currentTimeMillis() + ".rfr");
+        frameRecorder = new FrameRecorder(file, RECORDER_SLOTS);
         try {
-            detector = new Detector(this);
-        } catch (Exception e) {
-            Toast.makeText(this, "Error loading models: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            e.printStackTrace();
+            frameRecorder.start();
+            pipeline.setRecorder(frameRecorder);
+            Log.d("FrameRecorder", "Recording frames to " + file);
+        } catch (IOException e) {
+            Log.e("FrameRecorder", "Error starting recording", e);
+            frameRecorder = null;
         }
     }
 
-    private void setupPaints() {
-        boxPaint = new Paint();
-        boxPaint.setStyle(Paint.Style.STROKE);
-        boxPaint.setStrokeWidth(4);
-        boxPaint.setColor(Color.RED);
-
-        textPaint = new Paint();
-        textPaint.setColor(Color.WHITE);
-        textPaint.setTextSize(36);
-        textPaint.setStyle(Paint.Style.FILL);
-        textPaint.setShadowLayer(1f, 0f, 0f, Color.BLACK);
+    private void toggleMetricsHud() {
+        if (metricsReporter == null) {
+            return;
+        }
+        if (metricsHud.getVisibility() == View.VISIBLE) {
+            metricsReporter.setHudListener(null);
+            metricsHud.setVisibility(View.GONE);
+        } else {
+            metricsHud.setVisibility(View.VISIBLE);
+            metricsReporter.setHudListener(text -> metricsHud.post(() -> metricsHud.setText(text)));
+        }
     }
 
     private void startCamera() {
@@ -100,15 +255,12 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
                         .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                         .build();
 
+                // The pipeline converts on this thread and closes the image right
+                // after; inference and drawing run on the pipeline's own threads
                 imageAnalysis.setAnalyzer(cameraExecutor, image -> {
-                    try {
-                        if (detector != null) {
-                            List<Detection> detections = detector.processImage(image);
-                            drawDetections(detections);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    } finally {
+                    if (pipeline != null) {
+                        pipeline.submit(image);
+                    } else {
                         image.close();
                     }
                 });
@@ -117,6 +269,7 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
 
                 cameraProvider.unbindAll();
                 cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
+                StartupMetrics.markCameraBound();
 
             } catch (Exception e) {
                 Toast.makeText(this, "Error starting camera: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -125,77 +278,6 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
         }, ContextCompat.getMainExecutor(this));
     }
 
-    private void drawDetections(List<Detection> detections) {
-        if (overlayView.isAvailable()) {
-            Canvas canvas = overlayView.lockCanvas();
-            if (canvas != null) {
-                try {
-                    // Clear previous drawings
-                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-
-                    for (Detection detection : detections) {
-                        // Only draw high confidence detections
-                        if (detection.confidence < 0.45f) continue;
-
-                        // Set colors based on type
-                        int boxColor;
-                        if (detection.type == 0) { // Vehicle
-                            boxColor = Color.GREEN;
-                        } else { // Sign
-                            boxColor = Color.BLUE;
-                        }
-
-                        // Prepare box paint
-                        boxPaint.setColor(boxColor);
-                        boxPaint.setStyle(Paint.Style.STROKE);
-                        boxPaint.setStrokeWidth(4);
-
-                        // Convert normalized coordinates to screen coordinates
-                        float left = detection.box.left * canvas.getWidth();
-                        float top = detection.box.top * canvas.getHeight();
-                        float right = detection.box.right * canvas.getWidth();
-                        float bottom = detection.box.bottom * canvas.getHeight();
-
-                        // Draw box
-                        canvas.drawRect(left, top, right, bottom, boxPaint);
-
-                        // Prepare label
-                        String label = String.format("%s %.0f%%",
-                                detection.label,
-                                detection.confidence * 100);
-
-                        // Draw label background
-                        textPaint.setTextSize(36);
-                        float textWidth = textPaint.measureText(label);
-                        float textHeight = 50;
-
-                        Paint bgPaint = new Paint();
-                        bgPaint.setColor(boxColor);
-                        bgPaint.setAlpha(160);
-                        canvas.drawRect(
-                                left,
-                                top - textHeight,
-                                left + textWidth + 20,
-                                top,
-                                bgPaint
-                        );
-
-                        // Draw label text
-                        textPaint.setColor(Color.WHITE);
-                        canvas.drawText(
-                                label,
-                                left + 10,
-                                top - 10,
-                                textPaint
-                        );
-                    }
-                } finally {
-                    overlayView.unlockCanvasAndPost(canvas);
-                }
-            }
-        }
-    }
-
     private boolean allPermissionsGranted() {
         for (String permission : REQUIRED_PERMISSIONS) {
             if (ContextCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED) {
@@ -210,7 +292,10 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == REQUEST_CODE_PERMISSIONS) {
             if (allPermissionsGranted()) {
-                startCamera();
+                // Otherwise the camera starts once the models are ready
+                if (detector != null) {
+                    startCamera();
+                }
             } else {
                 Toast.makeText(this, "Permissions not granted by the user.", Toast.LENGTH_SHORT).show();
                 finish();
@@ -219,10 +304,14 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
     }
 
     @Override
-    public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {}
+    public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
+        overlayRenderer.invalidate();
+    }
 
     @Override
-    public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {}
+    public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {
+        overlayRenderer.invalidate();
+    }
 
     @Override
     public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
@@ -235,8 +324,51 @@ public class MainActivity extends AppCompatActivity implements TextureView.Surfa
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        destroyed = true;
+        // Nothing below may be closed while the analyzer or a pipeline stage still uses it
+        boolean stopped = true;
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
+            try {
+                stopped = cameraExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = false;
+            }
+        }
+        if (metricsReporter != null) {
+            metricsReporter.stop();
+        }
+        if (pipeline != null) {
+            stopped &= pipeline.stop();
+        }
+        if (!stopped) {
+            // Leaking the models and files beats a native forward on a closed module
+            Log.w("MainActivity", "Frame threads still running, leaving the detector open");
+            overlayRenderer.stop();
+            return;
+        }
+        if (frameRecorder != null) {
+            try {
+                frameRecorder.close();
+                Log.d("FrameRecorder", "Recorded " + frameRecorder.getRecordedCount() + " frames, dropped "
+                        + frameRecorder.getDroppedCount());
+            } catch (IOException e) {
+                Log.e("FrameRecorder", "Error finishing recording", e);
+            }
+        }
+        if (eventLog != null) {
+            try {
+                eventLog.close();
+                Log.d("DetectionEventLog", "Logged " + eventLog.getAppendedCount() + " frames, dropped "
+                        + eventLog.getDroppedCount());
+            } catch (IOException e) {
+                Log.e("DetectionEventLog", "Error closing event log", e);
+            }
+        }
+        overlayRenderer.stop();
+        if (detector != null) {
+            detector.close();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.programminghut.realtime_object;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically snapshots the stage histograms and pipeline counters. Every
+ * second it hands a text summary of the last second to the HUD listener;
+ * every DUMP_INTERVAL_SECONDS it appends a summary of that period to a log
+ * file that can be pulled from the device. All formatting and I/O happens on
+ * the reporter's own thread, never on a pipeline thread.
+ */
+public class MetricsReporter {
+    private static final String TAG = "MetricsReporter";
+
+    private static final long TICK_SECONDS = 1;
+    private static final int DUMP_INTERVAL_SECONDS = 10;
+    // The dump file is rotated to <name>.1 once it grows past this
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+
+    public interface HudListener {
+        // Called on the reporter thread
+        void onMetricsText(String text);
+    }
+
+    private final StageMetrics metrics;
+    private final FramePipeline pipeline;
+    private final File dumpFile;
+    private volatile HudListener hudListener;
+    private final ScheduledExecutorService executor;
+
+    private final LatencyHistogram.Snapshot[] dumpPeriod = new LatencyHistogram.Snapshot[StageMetrics.Stage.values().length];
+    private int ticksSinceDump;
+    private long lastSubmitted;
+    private long lastRendered;
+    private long lastDropped;
+    private long lastSkipped;
+    private long lastPredicted;
+    private long dumpSubmitted;
+    private long dumpRendered;
+    private long dumpDropped;
+    private long dumpSkipped;
+    private long dumpPredicted;
+
+    // dumpFile may be null to keep the numbers on screen only
+    public MetricsReporter(StageMetrics metrics, FramePipeline pipeline, File dumpFile) {
+        this.metrics = metrics;
+        this.pipeline = pipeline;
+        this.dumpFile = dumpFile;
+        for (int i = 0; i < dumpPeriod.length; i++) {
+            dumpPeriod[i] = new LatencyHistogram.Snapshot();
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "metrics-reporter"));
+    }
+
+    // null hides the HUD; recording and file dumps continue
+    public void setHudListener(HudListener listener) {
+        hudListener = listener;
+    }
+
+    public void start() {
+        executor.scheduleAtFixedRate(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        executor.shutdown();
+    }
+
+    private void tick() {
+        try {
+            LatencyHistogram.Snapshot[] interval = metrics.snapshotAndReset();
+            long submitted = pipeline.getSubmittedCount();
+            long rendered = pipeline.getRenderedCount();
+            long dropped = pipeline.getDroppedCount();
+            long skipped = pipeline.getGateSkipCount();
+            long predicted = pipeline.getPredictedCount();
+
+            HudListener listener = hudListener;
+            if (listener != null) {
+                listener.onMetricsText(summary(interval, TICK_SECONDS,
+                        submitted - lastSubmitted, rendered - lastRendered, dropped - lastDropped,
+                        skipped - lastSkipped, predicted - lastPredicted));
+            }
+            lastSubmitted = submitted;
+            lastRendered = rendered;
+            lastDropped = dropped;
+            lastSkipped = skipped;
+            lastPredicted = predicted;
+
+            for (int i = 0; i < interval.length; i++) {
+                dumpPeriod[i].add(interval[i]);
+            }
+            if (++ticksSinceDump >= DUMP_INTERVAL_SECONDS) {
+                dump(summary(dumpPeriod, ticksSinceDump * TICK_SECONDS,
+                        submitted - dumpSubmitted, rendered - dumpRendered, dropped - dumpDropped,
+                        skipped - dumpSkipped, predicted - dumpPredicted));
+                ticksSinceDump = 0;
+                for (int i = 0; i < dumpPeriod.length; i++) {
+                    dumpPeriod[i] = new LatencyHistogram.Snapshot();
+                }
+                dumpSubmitted = submitted;
+                dumpRendered = rendered;
+                dumpDropped = dropped;
+                dumpSkipped = skipped;
+                dumpPredicted = predicted;
+            }
+        } catch (Exception e) {
+            // A failing report must not cancel the schedule
+            Log.e(TAG, "Error reporting metrics", e);
+        }
+    }
+
+    private static String summary(LatencyHistogram.Snapshot[] snapshots, long seconds, long submitted,
+                                  long rendered, long dropped, long skipped, long predicted) {
+        return String.format(Locale.US, "%.1f fps  in %d  dropped %d  skipped %d  predicted %d%n",
+                rendered / (float) seconds, submitted, dropped, skipped, predicted)
+                + StageMetrics.format(snapshots);
+    }
+
+    private void dump(String text) {
+        if (dumpFile == null) {
+            return;
+        }
+        if (dumpFile.length() > MAX_FILE_BYTES) {
+            File previous = new File(dumpFile.getPath() + ".1");
+            previous.delete();
+            if (!dumpFile.renameTo(previous)) {
+                Log.w(TAG, "Could not rotate " + dumpFile);
+            }
+        }
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date());
+        try (Writer writer = new FileWriter(dumpFile, true)) {
+            writer.write("# " + time + "\n");
+            writer.write(text);
+            writer.write("\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + dumpFile, e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.programminghut.realtime_object;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Copies model assets to app storage so they can be loaded by path, and
+ * keeps them there across launches. Each cached file has a sidecar .meta
+ * recording the cache version, size, modification time and SHA-256 of the
+ * copy. A launch only compares version, size and modification time, so a
+ * cache hit costs two stats; the hash is checked only when the file was
+ * touched since it was copied. A stale, truncated or modified file is
+ * detected and replaced. Copies go through FileChannel.transferTo when the
+ * asset is stored uncompressed.
+ */
+public class ModelAssetCache {
+    private static final String TAG = "ModelAssetCache";
+    private static final String DIRECTORY = "models";
+
+    private final Context context;
+    private final String version;
+
+    // version should change whenever the bundled models may have changed, e.g. the app versionCode
+    public ModelAssetCache(Context context, String version) {
+        this.context = context;
+        this.version = version;
+    }
+
+    // Returns the path of a validated copy of assetName, copying it if needed
+    public String get(String assetName) throws IOException {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, assetName);
+        File metaFile = new File(directory, assetName + ".meta");
+
+        long start = System.nanoTime();
+        if (isValid(file, metaFile)) {
+            Log.d(TAG, assetName + " cache hit, validated in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return file.getAbsolutePath();
+        }
+
+        Log.d(TAG, "Copying " + assetName + " from assets");
+        File temp = new File(directory, assetName + ".tmp");
+        copyAsset(assetName, temp);
+        String hash = sha256(temp);
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot move " + temp + " to " + file);
+        }
+        writeMeta(metaFile, file, hash);
+        Log.d(TAG, assetName + " copied (" + file.length() + " bytes) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return file.getAbsolutePath();
+    }
+
+    private boolean isValid(File file, File metaFile) {
+        if (!file.isFile() || !metaFile.isFile()) {
+            return false;
+        }
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (!version.equals(meta.getProperty("version"))) {
+            Log.d(TAG, file.getName() + " was cached by another version");
+            return false;
+        }
+        if (!String.valueOf(file.length()).equals(meta.getProperty("size"))) {
+            Log.w(TAG, file.getName() + " has the wrong size, replacing it");
+            return false;
+        }
+        if (String.valueOf(file.lastModified()).equals(meta.getProperty("modified"))) {
+            return true;
+        }
+
+        // Touched since it was copied: only the hash can tell whether the contents changed
+        try {
+            if (!sha256(file).equals(meta.getProperty("sha256"))) {
+                Log.w(TAG, file.getName() + " failed its hash check, replacing it");
+                return false;
+            }
+            writeMeta(metaFile, file, meta.getProperty("sha256"));
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void copyAsset(String assetName, File target) throws IOException {
+        try (FileChannel out = new FileOutputStream(target).getChannel()) {
+            AssetFileDescriptor descriptor = null;
+            try {
+                descriptor = context.getAssets().openFd(assetName);
+            } catch (IOException e) {
+                // Compressed assets have no file descriptor; fall back to a stream
+            }
+
+            if (descriptor != null) {
+                try (AssetFileDescriptor fd = descriptor;
+                     FileChannel in = fd.createInputStream().getChannel()) {
+                    long offset = fd.getStartOffset();
+                    long length = fd.getLength();
+                    long copied = 0;
+                    while (copied < length) {
+                        long transferred = in.transferTo(offset + copied, length - copied, out);
+                        if (transferred <= 0) {
+                            throw new IOException(assetName + " ended after " + copied + " of " + length + " bytes");
+                        }
+                        copied += transferred;
+                    }
+                }
+            } else {
+                try (ReadableByteChannel in = Channels.newChannel(context.getAssets().open(assetName))) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+                    while (in.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+            }
+            out.force(false);
+        }
+    }
+
+    private void writeMeta(File metaFile, File file, String hash) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("version", version);
+        meta.setProperty("size", String.valueOf(file.length()));
+        meta.setProperty("modified", String.valueOf(file.lastModified()));
+        meta.setProperty("sha256", hash);
+        try (FileOutputStream out = new FileOutputStream(metaFile)) {
+            meta.store(out, null);
+        }
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            long position = 0;
+            // Map in chunks so large models don't need one huge mapping
+            while (position < size) {
+                long chunk = Math.min(64L << 20, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, chunk));
+                position += chunk;
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
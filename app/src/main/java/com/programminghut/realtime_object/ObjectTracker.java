@@ -0,0 +1,281 @@
+package com.programminghut.realtime_object;
+
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gives detections persistent track ids and fills in the frames between model
+ * runs. On keyframes, detections are matched to predicted tracks by IoU
+ * (greedy, same type and label). On other frames, tracks are extrapolated
+ * from their last keyframe with a constant-velocity model, estimated from
+ * one measurement to the next, and their track confidence decays. A keyframe is due
+ * every keyframeInterval frames, or sooner when a track's confidence has
+ * decayed below minTrackConfidence.
+ *
+ * Thread-safe: the analyzer thread predicts while the inference thread updates.
+ */
+public class ObjectTracker {
+    private static final float MATCH_IOU = 0.3f;
+    // Frames a track survives without a matching detection
+    private static final int MAX_MISSES = 2;
+    // Keyframe matches needed before a track counts as a real object
+    private static final int CONFIRM_HITS = 2;
+    // Confidence multiplier for every predicted (non-keyframe) frame
+    private static final float PREDICTION_DECAY = 0.9f;
+    // Weight of the new measurement when smoothing position and velocity
+    private static final float POSITION_GAIN = 0.7f;
+    private static final float VELOCITY_GAIN = 0.5f;
+
+    private static class Track {
+        int id;
+        int type;
+        String label;
+        float confidence;       // Last measured by the model
+        float trackConfidence;  // Decays on every predicted frame
+        // Center and size in normalized frame coordinates at timestampNs, the last
+        // keyframe that matched; velocities per second
+        float cx, cy, w, h;
+        float vx, vy, vw, vh;
+        long timestampNs;
+        // Last matched detection, for measurement-to-measurement velocity
+        float measuredCx, measuredCy, measuredW, measuredH;
+        int hits;
+        int misses;
+        boolean matched;
+    }
+
+    private final int keyframeInterval;
+    private final float minTrackConfidence;
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId = 1;
+    private int framesSinceKeyframe;
+    private boolean keyframePending;
+    private final int[] confirmedCount = new int[2];
+
+    public ObjectTracker(int keyframeInterval, float minTrackConfidence) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be at least 1");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.minTrackConfidence = minTrackConfidence;
+    }
+
+    /**
+     * Called once per incoming frame. Returns true if the models should run on
+     * it; the caller must then pass the result to update(). Otherwise the
+     * caller should use predict() for this frame.
+     */
+    public synchronized boolean beginFrame() {
+        // A keyframe still in inference holds off the next one, unless it looks
+        // dropped (no update within a full interval)
+        boolean waiting = keyframeInterval > 1 && keyframePending && framesSinceKeyframe < keyframeInterval;
+        boolean due = !waiting
+                && (framesSinceKeyframe + 1 >= keyframeInterval || hasWeakTrack());
+        if (due) {
+            keyframePending = true;
+            framesSinceKeyframe = 0;
+        } else {
+            framesSinceKeyframe++;
+        }
+        return due;
+    }
+
+    /**
+     * The keyframe from the last beginFrame() will never reach update(), e.g.
+     * it was dropped for want of a buffer or failed to prepare: the next frame
+     * is due at once instead of after a full interval.
+     */
+    public synchronized void keyframeDropped() {
+        keyframePending = false;
+        framesSinceKeyframe = keyframeInterval;
+    }
+
+    // Keyframe: associates fresh detections with tracks and returns them with track ids
+    public synchronized List<Detection> update(List<Detection> detections, long timestampNs) {
+        keyframePending = false;
+        for (Track track : tracks) {
+            track.matched = false;
+        }
+
+        List<Detection> result = new ArrayList<>(detections.size());
+        for (Detection detection : detections) {
+            Track best = null;
+            float bestIou = MATCH_IOU;
+            for (Track track : tracks) {
+                if (track.matched || track.type != detection.type || !track.label.equals(detection.label)) {
+                    continue;
+                }
+                float iou = iou(track, timestampNs, detection.box);
+                if (iou > bestIou) {
+                    bestIou = iou;
+                    best = track;
+                }
+            }
+
+            if (best == null) {
+                best = newTrack(detection, timestampNs);
+            } else {
+                correct(best, detection, timestampNs);
+            }
+            best.matched = true;
+            result.add(toDetection(best, timestampNs, detection.confidence, detection.ageMs));
+        }
+
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            Track track = tracks.get(i);
+            if (!track.matched && ++track.misses > MAX_MISSES) {
+                tracks.remove(i);
+            }
+        }
+        return result;
+    }
+
+    // Non-keyframe: extrapolates every live track from its last keyframe to timestampNs
+    public synchronized List<Detection> predict(long timestampNs) {
+        List<Detection> result = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            track.trackConfidence *= PREDICTION_DECAY;
+            if (track.misses == 0) {
+                result.add(toDetection(track, timestampNs, track.confidence, 0f));
+            }
+        }
+        return result;
+    }
+
+    // Like predict(), but not a frame of its own: track confidences don't decay
+    public synchronized List<Detection> extrapolate(long timestampNs) {
+        List<Detection> result = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            if (track.misses == 0) {
+                result.add(toDetection(track, timestampNs, track.confidence, 0f));
+            }
+        }
+        return result;
+    }
+
+    // Distinct objects of a type (0: vehicle, 1: sign) seen on at least two keyframes
+    public synchronized int getConfirmedCount(int type) {
+        return type >= 0 && type < confirmedCount.length ? confirmedCount[type] : 0;
+    }
+
+    public synchronized int getActiveTrackCount() {
+        return tracks.size();
+    }
+
+    public synchronized void reset() {
+        tracks.clear();
+        framesSinceKeyframe = 0;
+        keyframePending = false;
+    }
+
+    private boolean hasWeakTrack() {
+        for (Track track : tracks) {
+            if (track.misses == 0 && track.trackConfidence < minTrackConfidence) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Track newTrack(Detection detection, long timestampNs) {
+        Track track = new Track();
+        track.id = nextId++;
+        track.type = detection.type;
+        track.label = detection.label;
+        track.confidence = detection.confidence;
+        track.trackConfidence = detection.confidence;
+        track.cx = detection.box.centerX();
+        track.cy = detection.box.centerY();
+        track.w = detection.box.width();
+        track.h = detection.box.height();
+        track.timestampNs = timestampNs;
+        track.measuredCx = track.cx;
+        track.measuredCy = track.cy;
+        track.measuredW = track.w;
+        track.measuredH = track.h;
+        track.hits = 1;
+        tracks.add(track);
+        return track;
+    }
+
+    // Blends a matched detection into the track's prediction and re-estimates its velocity
+    private void correct(Track track, Detection detection, long timestampNs) {
+        float dt = elapsedSeconds(track, timestampNs);
+        float cx = detection.box.centerX();
+        float cy = detection.box.centerY();
+        float w = detection.box.width();
+        float h = detection.box.height();
+
+        float predictedCx = track.cx + track.vx * dt;
+        float predictedCy = track.cy + track.vy * dt;
+        float predictedW = track.w + track.vw * dt;
+        float predictedH = track.h + track.vh * dt;
+        track.cx = predictedCx + POSITION_GAIN * (cx - predictedCx);
+        track.cy = predictedCy + POSITION_GAIN * (cy - predictedCy);
+        track.w = predictedW + POSITION_GAIN * (w - predictedW);
+        track.h = predictedH + POSITION_GAIN * (h - predictedH);
+        if (dt > 0) {
+            track.vx += VELOCITY_GAIN * ((cx - track.measuredCx) / dt - track.vx);
+            track.vy += VELOCITY_GAIN * ((cy - track.measuredCy) / dt - track.vy);
+            track.vw += VELOCITY_GAIN * ((w - track.measuredW) / dt - track.vw);
+            track.vh += VELOCITY_GAIN * ((h - track.measuredH) / dt - track.vh);
+            track.timestampNs = timestampNs;
+        }
+        track.measuredCx = cx;
+        track.measuredCy = cy;
+        track.measuredW = w;
+        track.measuredH = h;
+
+        track.confidence = detection.confidence;
+        track.trackConfidence = detection.confidence;
+        track.misses = 0;
+        if (++track.hits == CONFIRM_HITS && track.type >= 0 && track.type < confirmedCount.length) {
+            confirmedCount[track.type]++;
+        }
+    }
+
+    // Seconds from the track's last keyframe to timestampNs; never negative
+    private static float elapsedSeconds(Track track, long timestampNs) {
+        return Math.max(0, timestampNs - track.timestampNs) / 1e9f;
+    }
+
+    private static Detection toDetection(Track track, long timestampNs, float confidence, float ageMs) {
+        float dt = elapsedSeconds(track, timestampNs);
+        float cx = track.cx + track.vx * dt;
+        float cy = track.cy + track.vy * dt;
+        float w = Math.max(0f, track.w + track.vw * dt);
+        float h = Math.max(0f, track.h + track.vh * dt);
+        RectF box = new RectF(clamp01(cx - w / 2), clamp01(cy - h / 2), clamp01(cx + w / 2), clamp01(cy + h / 2));
+        return new Detection(box, track.label, confidence, track.type, track.id, ageMs);
+    }
+
+    // Against the track extrapolated to timestampNs
+    private static float iou(Track track, long timestampNs, RectF box) {
+        float dt = elapsedSeconds(track, timestampNs);
+        float cx = track.cx + track.vx * dt;
+        float cy = track.cy + track.vy * dt;
+        float w = Math.max(0f, track.w + track.vw * dt);
+        float h = Math.max(0f, track.h + track.vh * dt);
+        float left = cx - w / 2;
+        float top = cy - h / 2;
+        float right = cx + w / 2;
+        float bottom = cy + h / 2;
+
+        float intersectionLeft = Math.max(left, box.left);
+        float intersectionTop = Math.max(top, box.top);
+        float intersectionRight = Math.min(right, box.right);
+        float intersectionBottom = Math.min(bottom, box.bottom);
+        if (intersectionRight < intersectionLeft || intersectionBottom < intersectionTop) {
+            return 0;
+        }
+
+        float intersectionArea = (intersectionRight - intersectionLeft) * (intersectionBottom - intersectionTop);
+        float unionArea = w * h + box.width() * box.height() - intersectionArea;
+        return unionArea > 0 ? intersectionArea / unionArea : 0;
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
@@ -0,0 +1,275 @@
+package com.programminghut.realtime_object;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.util.Log;
+import android.view.TextureView;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws detections onto the overlay TextureView from its own thread.
+ * submit copies the visible detections into a preallocated frame and
+ * publishes it through a lock-free triple buffer, so neither the submitting
+ * thread nor the render thread ever blocks on the other. The overlay is
+ * redrawn only when the visible detections change, at most once per display
+ * refresh. Paints and label strings are built once and reused, so
+ * steady-state submitting and drawing don't allocate.
+ */
+public class OverlayRenderer {
+    private static final String TAG = "OverlayRenderer";
+
+    // Only high confidence detections are drawn
+    private static final float MIN_CONFIDENCE = 0.45f;
+    // Box movement (normalized) below which a detection counts as unchanged, about a pixel
+    private static final float CHANGE_EPSILON = 0.001f;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+    private static final float BOX_STROKE_WIDTH = 4f;
+    private static final float TEXT_SIZE = 36f;
+    private static final float LABEL_HEIGHT = 50f;
+    private static final float LABEL_PADDING = 10f;
+    private static final int LABEL_ALPHA = 160;
+    // Detections past this many in one frame are not drawn
+    private static final int MAX_DETECTIONS = 64;
+
+    private final TextureView view;
+    private final TripleBuffer<DetectionFrame> results = new TripleBuffer<>(
+            new DetectionFrame(MAX_DETECTIONS), new DetectionFrame(MAX_DETECTIONS), new DetectionFrame(MAX_DETECTIONS));
+    private long submitSequence;  // Submitting thread only
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    // Indexed by Detection.type: vehicle green, sign blue
+    private final Paint[] boxPaints = new Paint[2];
+    private final Paint[] labelPaints = new Paint[2];
+    private final Paint textPaint = new Paint();
+    // Label -> text and measured width per whole confidence percent
+    private final HashMap<String, LabelText[]> labelCache = new HashMap<>();
+
+    // What is on screen, to detect changes; render thread only
+    private final DetectionFrame drawn = new DetectionFrame(MAX_DETECTIONS);
+    private boolean hasDrawn;
+    private volatile boolean forceRedraw;
+
+    private volatile long minFrameIntervalNanos = (long) (1e9f / DEFAULT_REFRESH_RATE);
+    private long lastDrawNanos;
+    private volatile StageMetrics metrics;
+
+    private final AtomicLong drawCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+
+    private static class LabelText {
+        final String text;
+        final float width;
+
+        LabelText(String text, float width) {
+            this.text = text;
+            this.width = width;
+        }
+    }
+
+    public OverlayRenderer(TextureView view) {
+        this.view = view;
+        int[] colors = {Color.GREEN, Color.BLUE};
+        for (int type = 0; type < colors.length; type++) {
+            Paint box = new Paint();
+            box.setStyle(Paint.Style.STROKE);
+            box.setStrokeWidth(BOX_STROKE_WIDTH);
+            box.setColor(colors[type]);
+            boxPaints[type] = box;
+
+            Paint label = new Paint();
+            label.setColor(colors[type]);
+            label.setAlpha(LABEL_ALPHA);
+            labelPaints[type] = label;
+        }
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE);
+        textPaint.setStyle(Paint.Style.FILL);
+        textPaint.setShadowLayer(1f, 0f, 0f, Color.BLACK);
+    }
+
+    public void start() {
+        running = true;
+        Thread renderThread = new Thread(this::renderLoop, "overlay-render");
+        thread = renderThread;
+        renderThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread renderThread = thread;
+        if (renderThread != null) {
+            LockSupport.unpark(renderThread);
+        }
+    }
+
+    // Redraws at most this often; pass the display's refresh rate
+    public void setRefreshRate(float hz) {
+        minFrameIntervalNanos = (long) (1e9f / (hz > 0 ? hz : DEFAULT_REFRESH_RATE));
+    }
+
+    // Records the time to lock, draw and post each overlay frame
+    public void setMetrics(StageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Forces the next submission to redraw, e.g. after the surface was recreated
+    public void invalidate() {
+        forceRedraw = true;
+    }
+
+    /**
+     * Hands over the newest detections; never blocks or allocates. A frame
+     * that hasn't been drawn yet is replaced by a newer one. Call from one
+     * thread only.
+     */
+    public void submit(List<Detection> detections) {
+        DetectionFrame frame = results.getWriteBuffer();
+        frame.clear();
+        for (int i = 0; i < detections.size(); i++) {
+            Detection detection = detections.get(i);
+            if (detection.confidence < MIN_CONFIDENCE) {
+                continue;
+            }
+            frame.add(detection.box.left, detection.box.top, detection.box.right, detection.box.bottom,
+                    detection.label, detection.confidence, detection.type, detection.trackId, detection.ageMs);
+        }
+        frame.sequence = ++submitSequence;
+        results.publish();
+
+        Thread renderThread = thread;
+        if (renderThread != null) {
+            LockSupport.unpark(renderThread);
+        }
+    }
+
+    private void renderLoop() {
+        while (running) {
+            if (!results.hasNew()) {
+                // submit unparks us; a permit left by an earlier submit just loops once more
+                LockSupport.park(this);
+                continue;
+            }
+            DetectionFrame frame = results.acquire();
+            if (!hasChanged(frame)) {
+                unchangedCount.incrementAndGet();
+                continue;
+            }
+
+            // Cap to the display refresh, then draw whatever is newest by then
+            long drawAt = lastDrawNanos + minFrameIntervalNanos;
+            long waitNanos;
+            while (running && (waitNanos = drawAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            if (!running) {
+                return;
+            }
+            draw(results.acquire());
+        }
+    }
+
+    private boolean hasChanged(DetectionFrame frame) {
+        if (forceRedraw || !hasDrawn || frame.count != drawn.count) {
+            return true;
+        }
+        for (int i = 0; i < frame.count; i++) {
+            // Labels are shared instances from the model specs, so identity is enough
+            if (drawn.labels[i] != frame.labels[i]
+                    || percentOf(drawn.confidences[i]) != percentOf(frame.confidences[i])
+                    || Math.abs(drawn.left[i] - frame.left[i]) > CHANGE_EPSILON
+                    || Math.abs(drawn.top[i] - frame.top[i]) > CHANGE_EPSILON
+                    || Math.abs(drawn.right[i] - frame.right[i]) > CHANGE_EPSILON
+                    || Math.abs(drawn.bottom[i] - frame.bottom[i]) > CHANGE_EPSILON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void draw(DetectionFrame frame) {
+        if (!view.isAvailable()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Canvas canvas = view.lockCanvas();
+        if (canvas == null) {
+            return;
+        }
+        try {
+            // Clear previous drawings
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            int width = canvas.getWidth();
+            int height = canvas.getHeight();
+
+            for (int i = 0; i < frame.count; i++) {
+                int type = frame.types[i] == 0 ? 0 : 1;
+
+                // Convert normalized coordinates to screen coordinates
+                float left = frame.left[i] * width;
+                float top = frame.top[i] * height;
+                float right = frame.right[i] * width;
+                float bottom = frame.bottom[i] * height;
+                canvas.drawRect(left, top, right, bottom, boxPaints[type]);
+
+                LabelText label = labelFor(frame.labels[i], percentOf(frame.confidences[i]));
+                canvas.drawRect(left, top - LABEL_HEIGHT, left + label.width + 2 * LABEL_PADDING, top,
+                        labelPaints[type]);
+                canvas.drawText(label.text, left + LABEL_PADDING, top - LABEL_PADDING, textPaint);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error drawing detections", e);
+        } finally {
+            view.unlockCanvasAndPost(canvas);
+        }
+        drawn.copyFrom(frame);
+        hasDrawn = true;
+        forceRedraw = false;
+        lastDrawNanos = System.nanoTime();
+        drawCount.incrementAndGet();
+
+        StageMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.record(StageMetrics.Stage.DRAW, lastDrawNanos - start);
+        }
+    }
+
+    // Labels come from the model specs, so each distinct label is one cached entry
+    private LabelText labelFor(String label, int percent) {
+        LabelText[] texts = labelCache.get(label);
+        if (texts == null) {
+            texts = new LabelText[101];
+            labelCache.put(label, texts);
+        }
+        LabelText text = texts[percent];
+        if (text == null) {
+            String value = label + " " + percent + "%";
+            text = new LabelText(value, textPaint.measureText(value));
+            texts[percent] = text;
+        }
+        return text;
+    }
+
+    private static int percentOf(float confidence) {
+        return Math.max(0, Math.min(100, Math.round(confidence * 100)));
+    }
+
+    public long getDrawCount() {
+        return drawCount.get();
+    }
+
+    // Submitted frames replaced by newer ones before the render thread got to them
+    public long getOverwrittenCount() {
+        return results.getOverwriteCount();
+    }
+
+    // Submissions skipped because nothing visible changed
+    public long getUnchangedCount() {
+        return unchangedCount.get();
+    }
+}
@@ -0,0 +1,154 @@
+package com.programminghut.realtime_object;
+
+import android.util.Log;
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.PyTorchAndroid;
+import org.pytorch.Tensor;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.FloatBuffer;
+
+/**
+ * PyTorch Lite backend for YOLO-style models taking a normalized CHW float
+ * input of any square size and batch, producing [batch, rows, 5 + classes].
+ */
+public class PyTorchBackend implements InferenceBackend {
+    private static final String TAG = "PyTorchBackend";
+
+    // Bounds a batch so one forward stays within a reasonable working set
+    private static final int MAX_BATCH_SIZE = 16;
+
+    // Package-private accessor for a tensor's backing buffer, looked up once by whichever
+    // backend needs it first; the class loader makes that safe across threads. It only
+    // survives minification because of the keep rule in proguard-rules.pro.
+    private static class RawDataBuffer {
+        static final Method METHOD = lookUp();
+
+        private static Method lookUp() {
+            try {
+                Method method = Tensor.class.getDeclaredMethod("getRawDataBuffer");
+                method.setAccessible(true);
+                return method;
+            } catch (Exception e) {
+                Log.w(TAG, "Tensor buffer not accessible, output will be copied", e);
+                return null;
+            }
+        }
+    }
+
+    // Set once reading through RawDataBuffer fails, so every backend copies from then on
+    private static volatile boolean rawDataBufferFailed;
+
+    private Module module;
+    private Tensor outputTensor;
+    // Output of the last run, read once and shared by the decodes of its batch
+    private FloatBuffer outputData;
+
+    @Override
+    public String name() {
+        return "pytorch";
+    }
+
+    @Override
+    public void load(String path, int numThreads) throws IOException {
+        try {
+            module = Module.load(path);
+        } catch (RuntimeException e) {
+            throw new IOException("Could not load " + path, e);
+        }
+        setNumThreads(numThreads);
+    }
+
+    // PyTorch's intra-op pool is process-wide, so this affects every PyTorch model
+    @Override
+    public void setNumThreads(int numThreads) {
+        if (numThreads > 0) {
+            PyTorchAndroid.setNumThreads(numThreads);
+        }
+    }
+
+    @Override
+    public InputFormat inputFormat() {
+        return InputFormat.FLOAT_CHW;
+    }
+
+    @Override
+    public int fixedInputSize() {
+        return 0;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public void run(FrameBufferPool.InputBuffer input) {
+        // The Tensor only wraps the pooled buffer, so it is created once per buffer
+        Tensor inputTensor = (Tensor) input.backendTensor;
+        if (inputTensor == null) {
+            inputTensor = Tensor.fromBlob(input.floats,
+                    new long[]{input.batchSize, 3, input.height, input.width});
+            input.backendTensor = inputTensor;
+        }
+
+        outputTensor = null;
+        outputData = null;
+        IValue output = module.forward(IValue.from(inputTensor));
+        if (output.isTensor()) {
+            outputTensor = output.toTensor();
+        } else if (output.isTuple()) {
+            outputTensor = output.toTuple()[0].toTensor();
+        }
+    }
+
+    @Override
+    public int decode(int batchIndex, PreprocessTransform transform, float threshold, int source,
+                      CandidateBuffer out) {
+        if (outputTensor == null) {
+            out.clear();
+            return 0;
+        }
+        // Row layout comes from the output shape: [batch, rows, 5 + classes]
+        long[] shape = outputTensor.shape();
+        int rowSize = (int) shape[shape.length - 1];
+        if (outputData == null) {
+            outputData = outputData(outputTensor);
+        }
+        FloatBuffer data = outputData.duplicate();
+        int imageSize = data.remaining() / (int) Math.max(1, shape[0]);
+        data.position(batchIndex * imageSize).limit((batchIndex + 1) * imageSize);
+        return OutputDecoder.decode(data, rowSize, threshold, transform, source, out);
+    }
+
+    @Override
+    public void close() {
+        if (module != null) {
+            module.destroy();
+            module = null;
+        }
+        outputTensor = null;
+        outputData = null;
+    }
+
+    // Reads the output tensor's buffer in place when the runtime allows it,
+    // falling back to a copy through getDataAsFloatArray
+    private static FloatBuffer outputData(Tensor tensor) {
+        Method method = RawDataBuffer.METHOD;
+        if (method != null && !rawDataBufferFailed) {
+            try {
+                Object buffer = method.invoke(tensor);
+                if (buffer instanceof FloatBuffer) {
+                    FloatBuffer data = ((FloatBuffer) buffer).duplicate();
+                    data.rewind();
+                    return data;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Reading tensor buffer failed, output will be copied", e);
+                rawDataBufferFailed = true;
+            }
+        }
+        return FloatBuffer.wrap(tensor.getDataAsFloatArray());
+    }
+}
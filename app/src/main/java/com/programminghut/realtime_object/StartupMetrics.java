@@ -0,0 +1,57 @@
+package com.programminghut.realtime_object;
+
+import android.util.Log;
+
+/**
+ * Startup milestones, measured from the activity's onCreate. Logged once
+ * each so field logs show where cold-start time goes.
+ */
+public final class StartupMetrics {
+    private static final String TAG = "StartupMetrics";
+
+    private static volatile long startNanos;
+    private static volatile long modelsReadyNanos;
+    private static volatile long cameraBoundNanos;
+    private static volatile long firstDetectionNanos;
+
+    private StartupMetrics() {}
+
+    public static void markStart() {
+        startNanos = System.nanoTime();
+        modelsReadyNanos = 0;
+        cameraBoundNanos = 0;
+        firstDetectionNanos = 0;
+    }
+
+    public static void markModelsReady() {
+        modelsReadyNanos = System.nanoTime();
+        Log.i(TAG, "Models loaded and warmed up in " + getStartupMs() + " ms");
+    }
+
+    public static void markCameraBound() {
+        cameraBoundNanos = System.nanoTime();
+        Log.i(TAG, "Camera bound after " + elapsedMs(cameraBoundNanos) + " ms");
+    }
+
+    public static void markFirstDetection() {
+        if (firstDetectionNanos != 0 || startNanos == 0) {
+            return;
+        }
+        firstDetectionNanos = System.nanoTime();
+        Log.i(TAG, "Time to first detection: " + getTimeToFirstDetectionMs() + " ms");
+    }
+
+    // onCreate -> models loaded and warmed up
+    public static long getStartupMs() {
+        return elapsedMs(modelsReadyNanos);
+    }
+
+    // onCreate -> first frame's detections rendered
+    public static long getTimeToFirstDetectionMs() {
+        return elapsedMs(firstDetectionNanos);
+    }
+
+    private static long elapsedMs(long nanos) {
+        return nanos == 0 || startNanos == 0 ? -1 : (nanos - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,172 @@
+package com.programminghut.realtime_object;
+
+import android.util.Log;
+import org.tensorflow.lite.Interpreter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TFLite backend for SSD MobileNet style detectors with a fixed uint8 HWC
+ * input and the standard postprocessed outputs: boxes [1, N, 4] as
+ * normalized ymin/xmin/ymax/xmax, classes [1, N], scores [1, N] and a count.
+ * Output arrays are allocated once at load. The postprocess op only handles
+ * one image per run, so batches are limited to 1.
+ */
+public class TfLiteSsdBackend implements InferenceBackend {
+    private static final String TAG = "TfLiteSsdBackend";
+
+    // Index of each output tensor in the SSD postprocess op
+    private static final int OUTPUT_BOXES = 0;
+    private static final int OUTPUT_CLASSES = 1;
+    private static final int OUTPUT_SCORES = 2;
+    private static final int OUTPUT_COUNT = 3;
+
+    // Model class id -> reported class id, -1 to drop; null keeps every class
+    private final int[] classMap;
+
+    private MappedByteBuffer model;
+    private Interpreter interpreter;
+    private int numThreads;
+    private int inputSize;
+
+    private float[][][] boxes;
+    private float[][] classes;
+    private float[][] scores;
+    private final float[] count = new float[1];
+    private final Object[] inputs = new Object[1];
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private boolean hasOutput;
+
+    public TfLiteSsdBackend(int[] classMap) {
+        this.classMap = classMap;
+    }
+
+    @Override
+    public String name() {
+        return "tflite";
+    }
+
+    @Override
+    public void load(String path, int numThreads) throws IOException {
+        // Memory-map the model so the interpreter reads it without a heap copy
+        try (FileInputStream stream = new FileInputStream(new File(path));
+             FileChannel channel = stream.getChannel()) {
+            model = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.numThreads = numThreads;
+        try {
+            createInterpreter();
+        } catch (RuntimeException e) {
+            throw new IOException("Could not load " + path, e);
+        }
+    }
+
+    // Interpreter threads are fixed at creation, so a change rebuilds it from the mapped model
+    @Override
+    public void setNumThreads(int numThreads) {
+        if (numThreads == this.numThreads || model == null) {
+            return;
+        }
+        this.numThreads = numThreads;
+        interpreter.close();
+        createInterpreter();
+        Log.d(TAG, "Interpreter threads: " + numThreads);
+    }
+
+    private void createInterpreter() {
+        Interpreter.Options options = new Interpreter.Options();
+        if (numThreads > 0) {
+            options.setNumThreads(numThreads);
+        }
+        interpreter = new Interpreter(model, options);
+
+        // Input shape is [1, height, width, 3]
+        inputSize = interpreter.getInputTensor(0).shape()[1];
+        int maxDetections = interpreter.getOutputTensor(OUTPUT_SCORES).shape()[1];
+        boxes = new float[1][maxDetections][4];
+        classes = new float[1][maxDetections];
+        scores = new float[1][maxDetections];
+        outputs.clear();
+        outputs.put(OUTPUT_BOXES, boxes);
+        outputs.put(OUTPUT_CLASSES, classes);
+        outputs.put(OUTPUT_SCORES, scores);
+        outputs.put(OUTPUT_COUNT, count);
+        hasOutput = false;
+    }
+
+    @Override
+    public InputFormat inputFormat() {
+        return InputFormat.UINT8_HWC;
+    }
+
+    @Override
+    public int fixedInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return 1;
+    }
+
+    @Override
+    public void run(FrameBufferPool.InputBuffer input) {
+        input.bytes.rewind();
+        inputs[0] = input.bytes;
+        hasOutput = false;
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        hasOutput = true;
+    }
+
+    @Override
+    public int decode(int batchIndex, PreprocessTransform transform, float threshold, int source,
+                      CandidateBuffer out) {
+        out.clear();
+        if (!hasOutput) {
+            return 0;
+        }
+
+        int n = Math.min((int) count[0], scores[0].length);
+        for (int i = 0; i < n; i++) {
+            float score = scores[0][i];
+            if (score <= threshold) {
+                continue;
+            }
+            int classId = (int) classes[0][i];
+            if (classMap != null) {
+                classId = classId >= 0 && classId < classMap.length ? classMap[classId] : -1;
+                if (classId < 0) {
+                    continue;
+                }
+            }
+
+            // Boxes are normalized to the input; scale to input pixels for the transform
+            float[] box = boxes[0][i];
+            out.add(
+                    transform.toFrameX(box[1] * transform.inputWidth),
+                    transform.toFrameY(box[0] * transform.inputHeight),
+                    transform.toFrameX(box[3] * transform.inputWidth),
+                    transform.toFrameY(box[2] * transform.inputHeight),
+                    score,
+                    classId,
+                    source
+            );
+        }
+        return out.count;
+    }
+
+    @Override
+    public void close() {
+        if (interpreter != null) {
+            interpreter.close();
+            interpreter = null;
+        }
+        model = null;
+        hasOutput = false;
+    }
+}
@@ -0,0 +1,55 @@
+package android.graphics;
+
+/**
+ * Plain-Java RectF for host tests. The mockable android.jar turns its
+ * constructors and methods into no-ops (returnDefaultValues), which would
+ * leave every Detection box at zero; test classes come first on the test
+ * classpath, so this one is used instead.
+ */
+public class RectF {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public RectF() {
+    }
+
+    public RectF(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public RectF(RectF r) {
+        this(r.left, r.top, r.right, r.bottom);
+    }
+
+    public final float width() {
+        return right - left;
+    }
+
+    public final float height() {
+        return bottom - top;
+    }
+
+    public final float centerX() {
+        return (left + right) * 0.5f;
+    }
+
+    public final float centerY() {
+        return (top + bottom) * 0.5f;
+    }
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(RectF src) {
+        set(src.left, src.top, src.right, src.bottom);
+    }
+}
@@ -0,0 +1,69 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class BatchDetectorTest {
+    @Test
+    public void process_batchesPerBackendAndKeepsFrameOrder() throws Exception {
+        // Batched float model next to a single-image uint8 model, as with PyTorch + TFLite
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 16,
+                new float[][]{{4, 4, 20, 20, 0.9f, 0}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 32, 1,
+                new float[][]{{2, 2, 8, 8, 0.8f, 2}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(32);
+
+        List<BatchFrame> frames = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            YuvFrame frame = SyntheticData.yuvFrame(64, 48, 0, 2, 0, i);
+            frame.timestampNs = i;
+            frames.add(BatchFrame.of(frame));
+        }
+        frames.add(BatchFrame.of(new int[16 * 8], 16, 8, 4));
+
+        List<List<Detection>> results = new BatchDetector(detector, 3).process(frames);
+
+        assertEquals(5, results.size());
+        for (List<Detection> detections : results) {
+            assertEquals(2, detections.size());
+            assertEquals("car", detections.get(0).label);
+            assertEquals("crossing_ahead", detections.get(1).label);
+        }
+        // Two batches (3 + 2): the batched model runs once per batch, sized to its frames rounded up
+        assertEquals(2, vehicle.runCount);
+        assertEquals(Arrays.asList(4, 2), vehicle.batchSizes);
+        // The single-image model runs once per frame
+        assertEquals(5, sign.runCount);
+        detector.close();
+    }
+
+    @Test
+    public void process_reusesBatchBuffersAcrossRuns() throws Exception {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 16,
+                new float[0][]);
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 16,
+                new float[0][]);
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(32);
+        BatchDetector batchDetector = new BatchDetector(detector, 2);
+
+        List<BatchFrame> frames = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            frames.add(BatchFrame.of(SyntheticData.yuvFrame(64, 48, 90, 2, 0, i)));
+        }
+        assertEquals(6, batchDetector.process(frames).size());
+        assertEquals(6, batchDetector.process(frames).size());
+
+        // Both models share one batched input; 3 batches per run
+        assertEquals(6, vehicle.runCount);
+        assertEquals(6, sign.runCount);
+        assertSame(vehicle.lastInput, sign.lastInput);
+        detector.close();
+    }
+}
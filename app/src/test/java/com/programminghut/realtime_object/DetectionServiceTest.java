@@ -0,0 +1,115 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+
+/** Two synthetic streams through a two-instance service, no camera. */
+public class DetectionServiceTest {
+    private static final int FRAMES = 200;
+    private static final long DRAIN_TIMEOUT_NANOS = 30_000_000_000L;
+
+    @Test
+    public void streams_shareInstancesAndReportInOrder() throws Exception {
+        DetectionService service = new DetectionService(Arrays.asList(detector(), detector()));
+        Map<String, List<Long>> timestamps = new ConcurrentHashMap<>();
+        Map<String, Boolean> detected = new ConcurrentHashMap<>();
+        DetectionService.Listener listener = (stream, detections, timestampNs) -> {
+            timestamps.computeIfAbsent(stream.name, name -> new ArrayList<>()).add(timestampNs);
+            detected.merge(stream.name, !detections.isEmpty(), Boolean::logicalAnd);
+        };
+        DetectionService.Stream front =
+                service.openStream("front", 2, 2, HandoffQueue.DropPolicy.LATEST_WINS, listener);
+        DetectionService.Stream rear =
+                service.openStream("rear", 1, 2, HandoffQueue.DropPolicy.DROP_NEWEST, listener);
+
+        try {
+            Thread rearCamera = new Thread(() -> feed(rear, 7));
+            rearCamera.start();
+            feed(front, 5);
+            rearCamera.join();
+
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < DRAIN_TIMEOUT_NANOS
+                    && (!drained(front) || !drained(rear))) {
+                Thread.sleep(1);
+            }
+            assertTrue(drained(front));
+            assertTrue(drained(rear));
+        } finally {
+            service.close();
+        }
+
+        for (DetectionService.Stream stream : Arrays.asList(front, rear)) {
+            assertEquals(FRAMES, stream.getSubmittedCount());
+            assertTrue(stream.getCompletedCount() > 0);
+            List<Long> seen = timestamps.get(stream.name);
+            assertEquals(stream.getCompletedCount(), seen.size());
+            for (int i = 1; i < seen.size(); i++) {
+                assertTrue(stream.name + " out of order", seen.get(i) > seen.get(i - 1));
+            }
+            assertTrue(detected.get(stream.name));
+        }
+        assertFalse(service.getStreams().isEmpty());
+    }
+
+    @Test
+    public void threads_splitCoresBetweenTheInstancesStreamsKeepBusy() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        DetectionService service = new DetectionService(Arrays.asList(detector(), detector()));
+        DetectionService.Listener listener = (stream, detections, timestampNs) -> { };
+        try {
+            // One frame in flight per stream: one stream can only use one instance at a time
+            DetectionService.Stream front =
+                    service.openStream("front", 1, 2, HandoffQueue.DropPolicy.LATEST_WINS, listener);
+            assertEquals(cores, service.getThreadsPerInstance());
+            DetectionService.Stream rear =
+                    service.openStream("rear", 1, 2, HandoffQueue.DropPolicy.LATEST_WINS, listener);
+            assertEquals(Math.max(1, cores / 2), service.getThreadsPerInstance());
+            rear.close();
+            assertEquals(cores, service.getThreadsPerInstance());
+            front.close();
+        } finally {
+            service.close();
+        }
+    }
+
+    private static boolean drained(DetectionService.Stream stream) {
+        return stream.getCompletedCount() + stream.getDroppedCount() == FRAMES;
+    }
+
+    // Frames reuse one set of planes, as camera buffers do; the service must copy them
+    private static void feed(DetectionService.Stream stream, long seed) {
+        try {
+            feedFrames(stream, seed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void feedFrames(DetectionService.Stream stream, long seed) throws InterruptedException {
+        YuvFrame frame = SyntheticData.yuvFrame(64, 48, 90, 2, 16, seed);
+        for (int i = 0; i < FRAMES; i++) {
+            frame.timestampNs = (i + 1) * 33_000_000L;
+            stream.submit(frame);
+            Thread.sleep(1);
+        }
+    }
+
+    private static Detector detector() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300,
+                new float[][]{{30, 30, 90, 90, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+        return detector;
+    }
+}
@@ -0,0 +1,275 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class DetectorBackendTest {
+    private static final float[][] NO_BOXES = new float[0][];
+
+    @Test
+    public void prepare_givesEachBackendItsOwnFormatAndSize() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.UINT8_HWC, 300, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(320);
+
+        PreparedFrame prepared = new PreparedFrame();
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 90, 2, 0, 5), prepared);
+
+        assertNotSame(prepared.inputs[0], prepared.inputs[1]);
+        assertEquals(InferenceBackend.InputFormat.UINT8_HWC, prepared.inputs[0].format);
+        assertEquals(300, prepared.inputs[0].width);
+        assertNull(prepared.inputs[0].floats);
+        assertEquals(3 * 300 * 300, prepared.inputs[0].bytes.capacity());
+        assertEquals(300, prepared.transforms[0].inputWidth);
+        assertEquals(InferenceBackend.InputFormat.FLOAT_CHW, prepared.inputs[1].format);
+        assertEquals(320, prepared.inputs[1].width);
+        assertEquals(320, prepared.transforms[1].inputWidth);
+        detector.close();
+    }
+
+    @Test
+    public void warmUp_buffersServeTheFirstFrame() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.UINT8_HWC, 300, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(320);
+        detector.warmUp();
+
+        PreparedFrame prepared = new PreparedFrame();
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 90, 2, 0, 5), prepared);
+        detector.recycle(prepared);
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 90, 2, 0, 5), prepared);
+        // The first camera frame took the buffers the warm-up allocated
+        assertEquals(0, detector.getBytesAllocatedLastFrame());
+        detector.close();
+    }
+
+    @Test
+    public void prepare_sharesInputBetweenMatchingBackends() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(
+                InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+
+        PreparedFrame prepared = new PreparedFrame();
+        YuvFrame frame = SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5);
+        detector.prepare(frame, prepared);
+        assertSame(prepared.inputs[0], prepared.inputs[1]);
+        assertTrue(prepared.isShared(1));
+
+        detector.detect(prepared);
+        assertSame(prepared.inputs[0], vehicle.lastInput);
+        assertSame(prepared.inputs[0], sign.lastInput);
+
+        // The shared buffer goes back to the pool once and is reused without allocating
+        detector.recycle(prepared);
+        detector.prepare(frame, prepared);
+        assertEquals(0, detector.getBytesAllocatedLastFrame());
+        detector.close();
+        assertTrue(vehicle.closed);
+        assertTrue(sign.closed);
+    }
+
+    @Test
+    public void concurrentModels_splitThreadsOnlyBetweenSeparatePools() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, NO_BOXES);
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setConcurrentModels(true);
+        assertEquals(Math.max(1, cores / 2), vehicle.numThreads);
+        assertEquals(Math.max(1, cores / 2), sign.numThreads);
+        detector.setConcurrentModels(false);
+        assertEquals(cores, vehicle.numThreads);
+        detector.close();
+
+        // Two PyTorch models share one process-wide pool: nothing to split
+        vehicle.name = "pytorch";
+        sign.name = "pytorch";
+        detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setConcurrentModels(true);
+        assertEquals(cores, vehicle.numThreads);
+        assertEquals(cores, sign.numThreads);
+        detector.close();
+    }
+
+    @Test
+    public void detect_labelsCandidatesPerModel() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300,
+                new float[][]{{30, 30, 90, 90, 0.9f, 3}, {150, 150, 200, 200, 0.2f, 0}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+
+        PreparedFrame prepared = new PreparedFrame();
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5), prepared);
+        List<Detection> detections = detector.detect(prepared);
+        detector.recycle(prepared);
+
+        // The low-score vehicle box falls under the spec threshold
+        assertEquals(2, detections.size());
+        assertEquals("truck", detections.get(0).label);
+        assertEquals(0, detections.get(0).type);
+        assertEquals("near_crossing", detections.get(1).label);
+        assertEquals(1, detections.get(1).type);
+        assertEquals(1, vehicle.runCount);
+        assertEquals(1, sign.runCount);
+        detector.close();
+    }
+
+    @Test
+    public void detect_reusesAgedResultsOfSkippedModels() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300,
+                new float[][]{{30, 30, 90, 90, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+        ModelScheduler scheduler = new ModelScheduler(2);
+        scheduler.configure(1, 3, 0f, 0);
+        detector.setScheduler(scheduler);
+
+        PreparedFrame prepared = new PreparedFrame();
+        YuvFrame frame = SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5);
+        for (int i = 0; i < 3; i++) {
+            frame.timestampNs = i * 33_000_000L;
+            detector.prepare(frame, prepared);
+            prepared.arrivalNanos = System.nanoTime();
+            List<Detection> detections = detector.detect(prepared);
+            detector.recycle(prepared);
+
+            assertEquals(2, detections.size());
+            assertEquals(0f, detections.get(0).ageMs, 0f);
+            assertEquals("near_crossing", detections.get(1).label);
+            assertEquals(i * 33f, detections.get(1).ageMs, 0.01f);
+        }
+        assertEquals(3, vehicle.runCount);
+        assertEquals(1, sign.runCount);
+        assertEquals(2, scheduler.getCadenceSkipCount());
+        detector.close();
+    }
+
+    @Test
+    public void detect_mergesSignTilesWithWholeFrame() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 16,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+        detector.setSignTiling(new TileLayout(2, 1, 0.2f, 0f, 0.5f));
+
+        PreparedFrame prepared = new PreparedFrame();
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5), prepared);
+        assertEquals(2, prepared.tileCount);
+        assertEquals(1, prepared.tileChunkCount());
+        assertEquals(64, prepared.tileChunks[0].width);
+        // Both whole-frame inputs and the tile chunk count as this frame's allocations
+        assertEquals(3 * 300 * 300 + 3 * 64 * 64 * 4 + 2 * 3 * 64 * 64 * 4, detector.getBytesAllocatedLastFrame());
+        List<Detection> detections = detector.detect(prepared);
+        detector.recycle(prepared);
+
+        // The whole frame plus both tiles in one batched forward, each box mapped to its own place
+        assertEquals(2, sign.runCount);
+        assertEquals(3, sign.imagesRun);
+        assertEquals(3, detections.size());
+        assertTrue(detections.get(0).box.left != detections.get(1).box.left);
+        assertTrue(detections.get(1).box.left != detections.get(2).box.left);
+        assertTrue(detections.get(0).box.left != detections.get(2).box.left);
+        assertEquals(0, prepared.tileCount);
+
+        detector.prepare(SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5), prepared);
+        assertEquals(0, detector.getBytesAllocatedLastFrame());
+        detector.recycle(prepared);
+        detector.close();
+    }
+
+    @Test
+    public void prepare_convertsTilesOnlyForFramesTheSignModelRunsOn() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300, NO_BOXES);
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 16,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+        detector.setSignTiling(new TileLayout(2, 1, 0.2f, 0f, 0.5f));
+        ModelScheduler scheduler = new ModelScheduler(2);
+        scheduler.configure(1, 2, 0f, 0);
+        detector.setScheduler(scheduler);
+
+        PreparedFrame prepared = new PreparedFrame();
+        YuvFrame frame = SyntheticData.yuvFrame(64, 48, 0, 2, 0, 5);
+        int[] tileCounts = new int[4];
+        for (int i = 0; i < 4; i++) {
+            detector.prepare(frame, prepared);
+            tileCounts[i] = prepared.tileCount;
+            detector.detect(prepared);
+            detector.recycle(prepared);
+        }
+
+        // Sign cadence 2: tiles for frames 0 and 2 only, each run whole frame plus tiles
+        assertArrayEquals(new int[]{2, 0, 2, 0}, tileCounts);
+        assertEquals(4, sign.runCount);
+        assertEquals(6, sign.imagesRun);
+        detector.close();
+    }
+
+    @Test
+    public void detect_roiModeRunsCropsBetweenFullFrames() {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{20, 20, 30, 30, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+        detector.setInputSize(64);
+        RoiPlanner planner = new RoiPlanner(2, 3, 0.5f, 32, 1f);
+        detector.setRoiMode(planner);
+
+        PreparedFrame prepared = new PreparedFrame();
+        YuvFrame frame = SyntheticData.yuvFrame(160, 120, 0, 2, 0, 5);
+        boolean[] fullFrames = new boolean[4];
+        for (int i = 0; i < 4; i++) {
+            detector.prepare(frame, prepared);
+            fullFrames[i] = prepared.fullFrame;
+            List<Detection> detections = detector.detect(prepared);
+            if (i == 1) {
+                // Crops only: one 32px crop per model around its last box, no whole-frame input
+                assertNull(prepared.inputs[0]);
+                assertEquals(1, prepared.roiCounts[0]);
+                assertEquals(1, prepared.roiCounts[1]);
+                assertEquals(32, prepared.roiChunks[0][0].width);
+                assertEquals(2, vehicle.runCount);
+                assertEquals(2, detections.size());
+                // The vehicle crop is the 50px square at (38, 18); its box maps back into it
+                assertEquals("truck", detections.get(0).label);
+                assertEquals((38 + 20 * 50 / 32f) / 160f, detections.get(0).box.left, 1e-3f);
+                assertEquals((18 + 30 * 50 / 32f) / 120f, detections.get(0).box.bottom, 1e-3f);
+                assertEquals("near_crossing", detections.get(1).label);
+            }
+            detector.recycle(prepared);
+            assertEquals(0, prepared.roiCounts[0]);
+        }
+
+        assertTrue(fullFrames[0]);
+        assertFalse(fullFrames[1]);
+        assertFalse(fullFrames[2]);
+        assertTrue(fullFrames[3]);
+        assertEquals(2, planner.getFullFrameCount());
+        assertEquals(2, planner.getRoiOnlyFrameCount());
+        detector.close();
+    }
+}
@@ -0,0 +1,109 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InferenceTunerTest {
+    private static final int[] SIZES = {64, 96};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeInferenceBackend vehicle;
+    private FakeInferenceBackend sign;
+
+    private Detector detector() {
+        vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{20, 20, 30, 30, 0.9f, 3}});
+        sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        return new Detector(vehicle, sign, Detector.VEHICLE_SPEC, Detector.SIGN_SPEC);
+    }
+
+    @Test
+    public void loadOrTune_calibratesOncePerKeyAndAppliesTheResult() {
+        File directory = folder.getRoot();
+        Detector detector = detector();
+        InferenceTuner tuner = new InferenceTuner(directory, "phone 1", SIZES, 200f, 2000, 2);
+        assertNull(tuner.getStored());
+
+        // Every configuration fits the 5 ms budget, so the largest input wins
+        InferenceTuner.Config tuned = tuner.loadOrTune(detector);
+        assertEquals(96, tuned.inputSize);
+        assertEquals(96, detector.getInputSize());
+        assertEquals(tuned.threads, vehicle.numThreads);
+        assertEquals(tuned.threads, sign.numThreads);
+        assertEquals(tuned.concurrent, detector.isConcurrentModels());
+        assertTrue(tuned.p95Ms > 0);
+        detector.close();
+
+        // Same device and version: no calibration
+        detector = detector();
+        InferenceTuner.Config stored = new InferenceTuner(directory, "phone 1", SIZES, 200f, 2000, 2)
+                .loadOrTune(detector);
+        assertEquals(0, vehicle.runCount);
+        assertEquals(tuned.threads, stored.threads);
+        assertEquals(tuned.concurrent, stored.concurrent);
+        assertEquals(96, detector.getInputSize());
+        detector.close();
+
+        // A new app version tunes again
+        detector = detector();
+        new InferenceTuner(directory, "phone 2", SIZES, 200f, 2000, 2).loadOrTune(detector);
+        assertTrue(vehicle.runCount > 0);
+        detector.close();
+    }
+
+    @Test
+    public void calibrate_dropsConfigurationsThatMissTheFrameBudget() {
+        Detector detector = detector();
+        // 20 ms forwards against a 5 ms frame budget: nothing fits
+        vehicle.runMillis = 20;
+        InferenceTuner tuner = new InferenceTuner(folder.getRoot(), "phone 1", SIZES, 200f, 2000, 2);
+        long start = System.nanoTime();
+        InferenceTuner.Config tuned = tuner.retune(detector);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        // Each thread and mode pair stops after two warm-up and three slow frames, at its smallest size
+        assertEquals(3 * 5, vehicle.runCount);
+        assertTrue(elapsedMs < 2000);
+        assertEquals(64, tuned.inputSize);
+        assertTrue(tuned.p95Ms > 5f);
+        detector.close();
+    }
+
+    @Test
+    public void override_winsOverTunedResultUntilCleared() {
+        File directory = folder.getRoot();
+        Detector detector = detector();
+        InferenceTuner tuner = new InferenceTuner(directory, "phone 1", SIZES, 200f, 1000, 2);
+        InferenceTuner.Config tuned = tuner.retune(detector);
+
+        tuner.setOverride(new InferenceTuner.Config(1, true, 64));
+        assertTrue(tuner.isOverridden());
+        int runs = vehicle.runCount;
+        InferenceTuner.Config applied = tuner.loadOrTune(detector);
+        assertEquals(runs, vehicle.runCount);
+        assertEquals(64, applied.inputSize);
+        assertEquals(64, detector.getInputSize());
+        assertEquals(1, vehicle.numThreads);
+        assertTrue(detector.isConcurrentModels());
+
+        tuner.clearOverride();
+        assertFalse(tuner.isOverridden());
+        assertEquals(tuned.inputSize, tuner.loadOrTune(detector).inputSize);
+        assertEquals(runs, vehicle.runCount);
+        detector.close();
+
+        assertArrayEquals(new int[]{320, 416}, InferenceTuner.sizesUpTo(ResolutionGovernor.DEFAULT_SIZES, 416));
+        assertArrayEquals(new int[]{320}, InferenceTuner.sizesUpTo(ResolutionGovernor.DEFAULT_SIZES, 256));
+    }
+}
@@ -0,0 +1,75 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.RectF;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ObjectTrackerTest {
+    private static final long FRAME_NS = 50_000_000L;
+    // Normalized units per second
+    private static final float SPEED = 0.2f;
+
+    private static List<Detection> car(long timestampNs) {
+        float x = 0.1f + SPEED * timestampNs / 1e9f;
+        return Collections.singletonList(new Detection(new RectF(x, 0.4f, x + 0.1f, 0.5f), "car", 0.9f, 0));
+    }
+
+    @Test
+    public void predict_extrapolatesConstantVelocityBetweenKeyframes() {
+        ObjectTracker tracker = new ObjectTracker(3, 0f);
+        long t = 0;
+        int trackId = -1;
+        // Keyframes every third frame while the car moves at a constant speed
+        for (int frame = 0; frame < 30; frame++, t += FRAME_NS) {
+            if (tracker.beginFrame()) {
+                List<Detection> tracked = tracker.update(car(t), t);
+                assertEquals(1, tracked.size());
+                trackId = trackId < 0 ? tracked.get(0).trackId : trackId;
+                assertEquals(trackId, tracked.get(0).trackId);
+            } else {
+                tracker.predict(t);
+            }
+        }
+
+        // Two frames past the last keyframe the box has moved on, not stayed where it was measured
+        assertFalse(tracker.beginFrame());
+        List<Detection> predicted = tracker.predict(t);
+        assertEquals(1, predicted.size());
+        float expectedLeft = 0.1f + SPEED * t / 1e9f;
+        assertEquals(expectedLeft, predicted.get(0).box.left, 0.01f);
+        assertEquals(0.1f, predicted.get(0).box.width(), 0.005f);
+        assertEquals(0.4f, predicted.get(0).box.top, 0.005f);
+    }
+
+    @Test
+    public void predict_doesNotMoveTheStateUpdateMatchesAgainst() {
+        ObjectTracker tracker = new ObjectTracker(2, 0f);
+        tracker.update(car(0), 0);
+        // Predictions for later frames arrive before the next keyframe's result
+        tracker.predict(5 * FRAME_NS);
+        tracker.predict(6 * FRAME_NS);
+        List<Detection> tracked = tracker.update(car(FRAME_NS), FRAME_NS);
+        assertEquals(1, tracked.size());
+        assertEquals(0.1f + SPEED * FRAME_NS / 1e9f, tracked.get(0).box.left, 0.01f);
+        assertEquals(1, tracker.getActiveTrackCount());
+    }
+
+    @Test
+    public void keyframeDropped_requestsTheNextFrame() {
+        ObjectTracker tracker = new ObjectTracker(5, 0f);
+        while (!tracker.beginFrame()) {
+            tracker.predict(0);
+        }
+        // Pending: the next frames are predicted while the keyframe is in inference
+        assertFalse(tracker.beginFrame());
+        tracker.keyframeDropped();
+        assertTrue(tracker.beginFrame());
+        tracker.update(car(0), 0);
+        assertFalse(tracker.beginFrame());
+    }
+}
@@ -0,0 +1,94 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Replays a recording through FramePipeline with fake inference backends,
+ * so it runs on a Linux host and measures only the app's own code. Without
+ * -PreplayFile it replays a synthetic recording. To compare builds, run
+ *   ./gradlew :app:testDebugUnitTest --tests '*ReplayBenchmarkTest' \
+ *       -PreplayFile=capture.rfr -PreplayResults=replay.csv
+ * on each; every run appends one line to the results file.
+ */
+public class ReplayBenchmarkTest {
+    private static final long DRAIN_TIMEOUT_NANOS = 30_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_throughPipeline() throws Exception {
+        File recording = recording();
+        FrameReplay.Pacing pacing = "recorded".equals(System.getProperty("replay.pacing"))
+                ? FrameReplay.Pacing.RECORDED : FrameReplay.Pacing.MAX;
+
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300,
+                new float[][]{{30, 30, 90, 90, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        Detector detector = new Detector(vehicle, sign, Detector.VEHICLE_SSD_SPEC, Detector.SIGN_SPEC);
+        FramePipeline pipeline = new FramePipeline(detector, (detections, timestampNs, inputSize) -> { });
+        StageMetrics metrics = new StageMetrics();
+        pipeline.setMetrics(metrics);
+
+        int frames;
+        long elapsedNanos;
+        pipeline.start();
+        try (FrameReplay replay = new FrameReplay(recording)) {
+            frames = replay.getFrameCount();
+            long start = System.nanoTime();
+            replay.replay(pipeline::submit, pacing);
+            // Every frame ends up rendered or dropped
+            while (pipeline.getRenderedCount() + pipeline.getDroppedCount() < frames
+                    && System.nanoTime() - start < DRAIN_TIMEOUT_NANOS) {
+                Thread.sleep(1);
+            }
+            elapsedNanos = System.nanoTime() - start;
+        } finally {
+            pipeline.stop();
+            detector.close();
+        }
+
+        assertEquals(frames, pipeline.getSubmittedCount());
+        assertEquals(frames, pipeline.getRenderedCount() + pipeline.getDroppedCount());
+        assertTrue(pipeline.getRenderedCount() > 0);
+
+        double fps = pipeline.getRenderedCount() * 1e9 / elapsedNanos;
+        LatencyHistogram.Snapshot endToEnd = metrics.snapshotAndReset()[StageMetrics.Stage.END_TO_END.ordinal()];
+        String line = String.format(Locale.US, "%s,%s,%d,%d,%d,%.1f,%.1f,%.1f", recording.getName(), pacing,
+                frames, pipeline.getRenderedCount(), pipeline.getDroppedCount(), fps,
+                endToEnd.percentileMs(0.5f), endToEnd.percentileMs(0.95f));
+        appendResult(line);
+    }
+
+    private File recording() throws IOException {
+        String path = System.getProperty("replay.file", "");
+        if (!path.isEmpty()) {
+            return new File(path);
+        }
+        File file = folder.newFile("synthetic.rfr");
+        SyntheticData.recording(file, 60, 640, 480, 90, 1);
+        return file;
+    }
+
+    // file,pacing,frames,rendered,dropped,fps,p50 ms,p95 ms (end to end)
+    private static void appendResult(String line) throws IOException {
+        String path = System.getProperty("replay.results", "");
+        if (path.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new FileWriter(path, true)) {
+            writer.write(line + "\n");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.programminghut.realtime_object;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// YOLO output rows -> candidates, for a 640 input (25200 rows)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+    private static final int INPUT_SIZE = 640;
+    private static final int ROWS = 25200;
+
+    // Share of rows above the threshold: a quiet road vs a crowded junction
+    @Param({"0.001", "0.02", "0.2"})
+    public float passFraction;
+
+    @Param({"4", "80"})
+    public int classes;
+
+    private FloatBuffer output;
+    private final PreprocessTransform transform = new PreprocessTransform();
+    private final CandidateBuffer candidates = new CandidateBuffer(256);
+
+    @Setup
+    public void setUp() {
+        output = SyntheticData.yoloOutput(ROWS, classes, INPUT_SIZE, passFraction, 7);
+        transform.set(640, 480, 0, INPUT_SIZE, INPUT_SIZE, true);
+    }
+
+    @Benchmark
+    public int decode() {
+        return OutputDecoder.decode(output, OutputDecoder.HEADER_SIZE + classes, 0.45f,
+                transform, 0, candidates);
+    }
+}
@@ -0,0 +1,57 @@
+package com.programminghut.realtime_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Cost of logging one frame on the inference thread, with the writer draining to a temp directory
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventLogBenchmark {
+    private static final String[] LABELS = {"car", "bus", "truck", "crossing"};
+
+    @Param({"1", "8", "32"})
+    public int detections;
+
+    private File directory;
+    private DetectionEventLog log;
+    private final DetectionFrame frame = new DetectionFrame(64);
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("event-log").toFile();
+        log = new DetectionEventLog(directory, 4 * 1024 * 1024, 4, 1024 * 1024);
+        log.start();
+        CandidateBuffer scene = SyntheticData.crowdedScene(detections, LABELS.length, 5);
+        for (int i = 0; i < detections; i++) {
+            frame.add(scene.left[i], scene.top[i], scene.right[i], scene.bottom[i], LABELS[scene.classIds[i]],
+                    scene.scores[i], i % 2, -1, 0f);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        for (File file : DetectionLogReader.segments(directory)) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public boolean append() {
+        frame.timestampNs += 33_000_000L;
+        return log.append(frame);
+    }
+}
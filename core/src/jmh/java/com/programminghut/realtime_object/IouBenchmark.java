@@ -0,0 +1,36 @@
+package com.programminghut.realtime_object;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The pairwise overlap test NMS spends most of its time in, over all pairs of 300 boxes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IouBenchmark {
+    private static final int BOXES = 300;
+
+    private CandidateBuffer boxes;
+
+    @Setup
+    public void setUp() {
+        boxes = SyntheticData.crowdedScene(BOXES, 4, 5);
+    }
+
+    @Benchmark
+    public float allPairs() {
+        float sum = 0;
+        for (int a = 0; a < BOXES; a++) {
+            for (int b = a + 1; b < BOXES; b++) {
+                sum += NmsEngine.iou(boxes, a, b);
+            }
+        }
+        return sum;
+    }
+}
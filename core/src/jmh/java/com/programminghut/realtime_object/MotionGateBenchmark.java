@@ -0,0 +1,40 @@
+package com.programminghut.realtime_object;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Per-frame cost of the motion check that decides whether the models run
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MotionGateBenchmark {
+    @Param({"32", "64"})
+    public int thumbWidth;
+
+    private YuvFrame[] frames;
+    private MotionGate gate;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Two different 640x480 camera-like frames, so every check compares and swaps references
+        frames = new YuvFrame[]{
+                SyntheticData.yuvFrame(640, 480, 0, 2, 64, 1),
+                SyntheticData.yuvFrame(640, 480, 0, 2, 64, 2)
+        };
+        gate = new MotionGate(thumbWidth, thumbWidth * 3 / 4, 3f, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean shouldRun() {
+        next ^= 1;
+        return gate.shouldRun(frames[next]);
+    }
+}
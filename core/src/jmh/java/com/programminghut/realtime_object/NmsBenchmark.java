@@ -0,0 +1,42 @@
+package com.programminghut.realtime_object;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Suppression over crowded scenes, from a typical frame up to thousands of candidates
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NmsBenchmark {
+    @Param({"100", "1000", "5000"})
+    public int candidates;
+
+    @Param({"GREEDY", "SOFT", "MERGE"})
+    public NmsEngine.Mode mode;
+
+    // 0 disables the pre-NMS cap
+    @Param({"0", "300"})
+    public int topK;
+
+    private CandidateBuffer in;
+    private NmsEngine nms;
+    private final CandidateBuffer out = new CandidateBuffer(256);
+
+    @Setup
+    public void setUp() {
+        in = SyntheticData.crowdedScene(candidates, 4, 3);
+        nms = new NmsEngine(mode, 0.5f, topK, true);
+    }
+
+    @Benchmark
+    public int nms() {
+        return nms.run(in, out);
+    }
+}
@@ -0,0 +1,54 @@
+package com.programminghut.realtime_object;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// YUV_420_888 camera frame -> model input, as done once per frame per model
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreprocessBenchmark {
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"320", "640"})
+    public int inputSize;
+
+    private YuvFrame frame;
+    private final YuvToTensorConverter converter = new YuvToTensorConverter(
+            new float[]{0.485f, 0.456f, 0.406f}, new float[]{0.229f, 0.224f, 0.225f});
+    private final PreprocessTransform transform = new PreprocessTransform();
+    private FloatBuffer floats;
+    private ByteBuffer bytes;
+
+    @Setup
+    public void setUp() {
+        // 640x480 semi-planar with padded rows, like CameraX analysis frames
+        frame = SyntheticData.yuvFrame(640, 480, rotation, 2, 64, 42);
+        floats = ByteBuffer.allocateDirect(3 * inputSize * inputSize * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        bytes = ByteBuffer.allocateDirect(3 * inputSize * inputSize);
+    }
+
+    @Benchmark
+    public FloatBuffer toFloatChw() {
+        converter.convert(frame, inputSize, inputSize, floats, transform);
+        return floats;
+    }
+
+    @Benchmark
+    public ByteBuffer toUint8Hwc() {
+        converter.convertToRgb(frame, inputSize, inputSize, bytes, transform);
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+package com.programminghut.realtime_object;
+
+import java.io.File;
+
+/**
+ * One input of an offline batch: a decoded YUV frame (e.g. from a video
+ * decoder), an already decoded ARGB image, or an image file that is decoded
+ * on the preprocessing thread. YUV and ARGB data must stay valid until the
+ * batch run returns.
+ */
+public class BatchFrame {
+    final YuvFrame yuv;
+    final int[] argb;
+    final int width;
+    final int height;
+    final File file;
+    public final long timestampNs;
+
+    private BatchFrame(YuvFrame yuv, int[] argb, int width, int height, File file, long timestampNs) {
+        this.yuv = yuv;
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        this.timestampNs = timestampNs;
+    }
+
+    public static BatchFrame of(YuvFrame frame) {
+        return new BatchFrame(frame, null, frame.width, frame.height, null, frame.timestampNs);
+    }
+
+    public static BatchFrame of(int[] argb, int width, int height, long timestampNs) {
+        return new BatchFrame(null, argb, width, height, null, timestampNs);
+    }
+
+    public static BatchFrame of(File imageFile, long timestampNs) {
+        return new BatchFrame(null, null, 0, 0, imageFile, timestampNs);
+    }
+}
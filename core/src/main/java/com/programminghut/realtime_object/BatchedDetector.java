@@ -0,0 +1,291 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Android-free detection over a batch of frames, for running the models off
+ * the device: per model, frames are converted into batched input chunks and
+ * each chunk takes one forward, then every frame is decoded and suppressed
+ * on its own. Chunks are sized for the frames actually in the batch,
+ * rounded up to a power of two (or the backend's largest batch), so a lone
+ * frame at low load takes a batch-of-one forward and padding stays under
+ * half a chunk. ChunkPools keeps alternating sizes from reallocating. Models with the same input format, size and
+ * chunking share chunks.
+ *
+ * detect runs a whole batch on the calling thread. The app's offline path
+ * splits it into stages instead, so one thread can fill a PreparedBatch
+ * (begin, add) while another runs the previous one (run, recycle). Each
+ * stage is single-threaded; don't call detect while the stages are in use.
+ */
+public class BatchedDetector {
+    private final ModelSpec[] specs;
+    private final InferenceBackend[] backends;
+    private volatile int inputSize;
+    private final int maxBatch;
+    private final YuvToTensorConverter[] converters;
+    private final ChunkPools[] pools;
+    private final NmsEngine[] nms;
+    private final CandidateBuffer candidates = new CandidateBuffer(256);
+    // Used by detect
+    private final PreparedBatch batch;
+
+    // Last forward time per model, in nanoseconds
+    private final long[] forwardNanos;
+    // Optional forward latency recording, with each model's stage
+    private volatile StageMetrics metrics;
+    private volatile StageMetrics.Stage[] forwardStages;
+
+    /**
+     * backends[i] runs specs[i] and is closed with this detector. inputSize
+     * is used for backends without a fixed size; batches hold up to maxBatch
+     * frames.
+     */
+    public BatchedDetector(ModelSpec[] specs, InferenceBackend[] backends, int inputSize, int maxBatch,
+                           float[] mean, float[] std) {
+        if (specs.length != backends.length || specs.length > PreparedFrame.MAX_MODELS) {
+            throw new IllegalArgumentException("one backend per model spec, and at most "
+                    + PreparedFrame.MAX_MODELS + " models, are needed");
+        }
+        this.specs = specs;
+        this.backends = backends;
+        this.inputSize = inputSize;
+        this.maxBatch = maxBatch;
+        converters = new YuvToTensorConverter[specs.length];
+        pools = new ChunkPools[specs.length];
+        nms = new NmsEngine[specs.length];
+        forwardNanos = new long[specs.length];
+        for (int m = 0; m < specs.length; m++) {
+            converters[m] = new YuvToTensorConverter(mean, std);
+            // Two batches of chunks, one filling and one in inference
+            pools[m] = new ChunkPools(maxBatch, 2 * maxBatch);
+            nms[m] = new NmsEngine(NmsEngine.Mode.GREEDY, DetectionModels.IOU_THRESHOLD,
+                    DetectionModels.PRE_NMS_TOP_K, true);
+        }
+        batch = new PreparedBatch(maxBatch);
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    // Input size for backends without a fixed one, from the next begin
+    public void setInputSize(int size) {
+        inputSize = size;
+    }
+
+    // Selects how each model's candidates are suppressed; see NmsEngine.Mode
+    public void setNmsMode(NmsEngine.Mode mode) {
+        for (int m = 0; m < specs.length; m++) {
+            nms[m] = new NmsEngine(mode, DetectionModels.IOU_THRESHOLD, DetectionModels.PRE_NMS_TOP_K, true);
+        }
+    }
+
+    // Records each forward into metrics under forwardStages[model]; null metrics turns it off
+    public void setMetrics(StageMetrics metrics, StageMetrics.Stage... forwardStages) {
+        this.forwardStages = forwardStages;
+        this.metrics = metrics;
+    }
+
+    // Last forward time of a model, in nanoseconds
+    public long getForwardNanos(int model) {
+        return forwardNanos[model];
+    }
+
+    // Spec of the model whose results carry type in CandidateBuffer.sources
+    public ModelSpec specFor(int type) {
+        for (ModelSpec spec : specs) {
+            if (spec.type == type) {
+                return spec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs every model on frames[0..count) and leaves each frame's
+     * suppressed detections from all models in out[i], boxes in normalized
+     * frame coordinates and the model type in sources.
+     */
+    public void detect(YuvFrame[] frames, int count, CandidateBuffer[] out) throws Exception {
+        if (count > maxBatch) {
+            throw new IllegalArgumentException("batch of " + count + " exceeds " + maxBatch);
+        }
+        for (int i = 0; i < count; i++) {
+            out[i].clear();
+        }
+        begin(batch, count);
+        try {
+            for (int i = 0; i < count; i++) {
+                add(batch, frames[i], null, 0, 0, frames[i].timestampNs);
+            }
+            run(batch);
+            for (int i = 0; i < count; i++) {
+                for (int m = 0; m < specs.length; m++) {
+                    CandidateBuffer survivors = batch.survivors[m][i];
+                    for (int k = 0; k < survivors.count; k++) {
+                        out[i].add(survivors, k);
+                    }
+                }
+            }
+        } finally {
+            recycle(batch);
+        }
+    }
+
+    /**
+     * Stage 1: acquires input chunks for frameCount frames (at most
+     * batch.capacity and maxBatch) at the current input size.
+     */
+    public void begin(PreparedBatch batch, int frameCount) {
+        if (frameCount < 1 || frameCount > batch.capacity || frameCount > maxBatch) {
+            throw new IllegalArgumentException("batch of " + frameCount + " frames does not fit in "
+                    + Math.min(batch.capacity, maxBatch));
+        }
+        int flexibleSize = inputSize;
+        batch.count = 0;
+        batch.expected = frameCount;
+        for (int m = 0; m < specs.length; m++) {
+            InferenceBackend backend = backends[m];
+            InferenceBackend.InputFormat format = backend.inputFormat();
+            int size = backend.fixedInputSize() > 0 ? backend.fixedInputSize() : flexibleSize;
+            int chunkSize = ChunkPools.chunkSize(frameCount, backend.maxBatchSize());
+
+            batch.sharedWith[m] = -1;
+            for (int j = 0; j < m; j++) {
+                FrameBufferPool.InputBuffer earlier = batch.chunks[j][0];
+                if (earlier.format == format && earlier.width == size && batch.chunkSizes[j] == chunkSize) {
+                    batch.sharedWith[m] = j;
+                    break;
+                }
+            }
+            batch.chunkSizes[m] = chunkSize;
+            if (batch.sharedWith[m] >= 0) {
+                batch.chunks[m] = batch.chunks[batch.sharedWith[m]];
+                continue;
+            }
+
+            int chunkCount = (frameCount + chunkSize - 1) / chunkSize;
+            batch.chunks[m] = new FrameBufferPool.InputBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                batch.chunks[m][c] = pools[m].acquire(format, size, size, chunkSize);
+            }
+        }
+    }
+
+    /**
+     * Stage 2: converts one frame, given as YUV or else as ARGB pixels, into
+     * the next position of the batch. With neither, the frame gets an empty
+     * result.
+     */
+    public void add(PreparedBatch batch, YuvFrame frame, int[] argb, int width, int height, long timestampNs) {
+        if (batch.count >= batch.expected) {
+            throw new IllegalStateException("batch was begun for " + batch.expected + " frames");
+        }
+        int index = batch.count++;
+        batch.timestamps[index] = timestampNs;
+        batch.valid[index] = frame != null || argb != null;
+        if (!batch.valid[index]) {
+            return;
+        }
+
+        for (int m = 0; m < specs.length; m++) {
+            int shared = batch.sharedWith[m];
+            if (shared >= 0) {
+                batch.transforms[m][index].copyFrom(batch.transforms[shared][index]);
+                continue;
+            }
+
+            int chunkSize = batch.chunkSizes[m];
+            FrameBufferPool.InputBuffer chunk = batch.chunks[m][index / chunkSize];
+            int item = index % chunkSize;
+            PreprocessTransform transform = batch.transforms[m][index];
+            if (chunk.format == InferenceBackend.InputFormat.FLOAT_CHW) {
+                if (frame != null) {
+                    converters[m].convert(frame, chunk.width, chunk.height, chunk.itemFloats(item), transform);
+                } else {
+                    converters[m].convert(argb, width, height, chunk.width, chunk.height, chunk.itemFloats(item),
+                            transform);
+                }
+            } else {
+                if (frame != null) {
+                    converters[m].convertToRgb(frame, chunk.width, chunk.height, chunk.itemBytes(item), transform);
+                } else {
+                    converters[m].convertToRgb(argb, width, height, chunk.width, chunk.height,
+                            chunk.itemBytes(item), transform);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stage 3: one forward per chunk per model, then per-frame decode and
+     * NMS into batch.survivors[model][frame]. A chunk whose forward fails
+     * leaves its frames empty for that model and the rest still run; the
+     * first failure is rethrown at the end.
+     */
+    public void run(PreparedBatch batch) throws Exception {
+        Exception failure = null;
+        for (int m = 0; m < specs.length; m++) {
+            int chunkSize = batch.chunkSizes[m];
+            // A partial last chunk runs at its rounded-up size; its unused frames are ignored
+            for (int start = 0; start < batch.count; start += chunkSize) {
+                try {
+                    runChunk(m, batch, start, Math.min(chunkSize, batch.count - start));
+                } catch (Exception e) {
+                    for (int i = start; i < Math.min(start + chunkSize, batch.count); i++) {
+                        batch.survivors[m][i].clear();
+                    }
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Returns a batch's input chunks to their pools
+    public void recycle(PreparedBatch batch) {
+        for (int m = 0; m < specs.length; m++) {
+            if (batch.chunks[m] != null && batch.sharedWith[m] < 0) {
+                for (FrameBufferPool.InputBuffer chunk : batch.chunks[m]) {
+                    pools[m].release(chunk);
+                }
+            }
+        }
+        for (int m = 0; m < specs.length; m++) {
+            batch.chunks[m] = null;
+        }
+        batch.count = 0;
+        batch.expected = 0;
+    }
+
+    private void runChunk(int m, PreparedBatch batch, int start, int n) throws Exception {
+        ModelSpec spec = specs[m];
+        InferenceBackend backend = backends[m];
+        long forwardStart = System.nanoTime();
+        backend.run(batch.chunks[m][start / batch.chunkSizes[m]]);
+        forwardNanos[m] = System.nanoTime() - forwardStart;
+        StageMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.record(forwardStages[m], forwardNanos[m]);
+        }
+
+        for (int j = 0; j < n; j++) {
+            int index = start + j;
+            CandidateBuffer survivors = batch.survivors[m][index];
+            survivors.clear();
+            if (!batch.valid[index]) {
+                continue;
+            }
+            backend.decode(j, batch.transforms[m][index], spec.confidenceThreshold, spec.type, candidates);
+            nms[m].run(candidates, survivors);
+        }
+    }
+
+    public void close() {
+        for (InferenceBackend backend : backends) {
+            backend.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.programminghut.realtime_object;
+
+import java.util.Arrays;
+
+/**
+ * Reusable struct-of-arrays store for decoded box candidates. Boxes are
+ * normalized frame coordinates. Arrays only grow, so a warmed-up buffer
+ * decodes without allocating.
+ */
+public class CandidateBuffer {
+    public float[] left;
+    public float[] top;
+    public float[] right;
+    public float[] bottom;
+    public float[] scores;
+    public int[] classIds;
+    public int[] sources;     // Which model produced each candidate (Detection.type)
+    public int count;
+
+    public CandidateBuffer(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        scores = new float[capacity];
+        classIds = new int[capacity];
+        sources = new int[capacity];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int capacity() {
+        return scores.length;
+    }
+
+    public void add(float l, float t, float r, float b, float score, int classId) {
+        add(l, t, r, b, score, classId, 0);
+    }
+
+    public void add(float l, float t, float r, float b, float score, int classId, int source) {
+        if (count == scores.length) {
+            grow(count * 2);
+        }
+        left[count] = l;
+        top[count] = t;
+        right[count] = r;
+        bottom[count] = b;
+        scores[count] = score;
+        classIds[count] = classId;
+        sources[count] = source;
+        count++;
+    }
+
+    // Appends candidate i of other
+    public void add(CandidateBuffer other, int i) {
+        add(other.left[i], other.top[i], other.right[i], other.bottom[i],
+                other.scores[i], other.classIds[i], other.sources[i]);
+    }
+
+    private void grow(int capacity) {
+        left = Arrays.copyOf(left, capacity);
+        top = Arrays.copyOf(top, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        classIds = Arrays.copyOf(classIds, capacity);
+        sources = Arrays.copyOf(sources, capacity);
+    }
+}
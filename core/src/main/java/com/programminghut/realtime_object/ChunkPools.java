@@ -0,0 +1,70 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Input buffers for batched chunks whose image count varies from one use to
+ * the next: tiles, ROI crops, server batches. A FrameBufferPool reallocates
+ * whenever its batch size changes, so each chunk size gets a pool of its
+ * own. Chunk sizes are rounded up to a power of two (see chunkSize), which
+ * keeps the pools few and the padding under half a chunk; once every size
+ * has been seen, a changing image count allocates nothing.
+ */
+public class ChunkPools {
+    // By bucket(chunkSize); created on first use
+    private final FrameBufferPool[] pools;
+    private final int maxPooledImages;
+
+    /**
+     * Chunks hold at most maxChunkSize images; each size keeps enough free
+     * chunks for maxPooledImages images.
+     */
+    public ChunkPools(int maxChunkSize, int maxPooledImages) {
+        pools = new FrameBufferPool[bucket(maxChunkSize) + 1];
+        this.maxPooledImages = maxPooledImages;
+    }
+
+    // Chunk size for count images on a backend taking up to maxBatchSize at once
+    public static int chunkSize(int count, int maxBatchSize) {
+        return Math.max(1, Math.min(maxBatchSize, 1 << bucket(count)));
+    }
+
+    public synchronized FrameBufferPool.InputBuffer acquire(InferenceBackend.InputFormat format,
+                                                            int width, int height, int chunkSize) {
+        return pool(chunkSize).acquireBatch(format, width, height, chunkSize);
+    }
+
+    public synchronized void release(FrameBufferPool.InputBuffer chunk) {
+        if (chunk != null) {
+            pool(chunk.batchSize).release(chunk);
+        }
+    }
+
+    public synchronized long getTotalBytesAllocated() {
+        long bytes = 0;
+        for (FrameBufferPool pool : pools) {
+            bytes += pool != null ? pool.getTotalBytesAllocated() : 0;
+        }
+        return bytes;
+    }
+
+    // Shape changes over every size, including each size's first allocation
+    public synchronized int getReallocationCount() {
+        int count = 0;
+        for (FrameBufferPool pool : pools) {
+            count += pool != null ? pool.getReallocationCount() : 0;
+        }
+        return count;
+    }
+
+    private FrameBufferPool pool(int chunkSize) {
+        int bucket = bucket(chunkSize);
+        if (pools[bucket] == null) {
+            pools[bucket] = new FrameBufferPool(Math.max(1, (maxPooledImages + chunkSize - 1) / chunkSize));
+        }
+        return pools[bucket];
+    }
+
+    // Index of the smallest power of two at least size: 1 -> 0, 2 -> 1, 3 and 4 -> 2
+    private static int bucket(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
@@ -0,0 +1,107 @@
+package com.programminghut.realtime_object;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * One connection to a DetectionServer. send and receive may run on
+ * different threads, and several requests may be sent before reading their
+ * responses.
+ */
+public class DetectionClient implements Closeable {
+    /** One response; arrays are reused and grow as needed. */
+    public static class Response {
+        public int id;
+        public byte status;
+        public int count;
+        public int[] types = new int[16];
+        public String[] labels = new String[16];
+        public float[] confidences = new float[16];
+        public float[] left = new float[16];
+        public float[] top = new float[16];
+        public float[] right = new float[16];
+        public float[] bottom = new float[16];
+
+        public boolean isOk() {
+            return status == DetectionServer.STATUS_OK;
+        }
+
+        public boolean isRejected() {
+            return status == DetectionServer.STATUS_REJECTED;
+        }
+
+        public boolean isExpired() {
+            return status == DetectionServer.STATUS_EXPIRED;
+        }
+
+        void ensureCapacity(int n) {
+            if (types.length >= n) {
+                return;
+            }
+            types = new int[n];
+            labels = new String[n];
+            confidences = new float[n];
+            left = new float[n];
+            top = new float[n];
+            right = new float[n];
+            bottom = new float[n];
+        }
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public DetectionClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Sends one frame as I420 bytes: the Y plane, then the U and V planes at
+     * half resolution (rounded up), all tightly packed.
+     */
+    public void send(int id, long timestampNs, int width, int height, int rotation, byte[] i420) throws IOException {
+        out.writeInt(id);
+        out.writeLong(timestampNs);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(rotation);
+        out.write(i420, 0, i420Size(width, height));
+        out.flush();
+    }
+
+    // Blocks for the next response, in whatever order the server answers
+    public Response receive(Response response) throws IOException {
+        response.id = in.readInt();
+        response.status = in.readByte();
+        response.count = in.readUnsignedShort();
+        response.ensureCapacity(response.count);
+        for (int i = 0; i < response.count; i++) {
+            response.types[i] = in.readByte();
+            response.labels[i] = in.readUTF();
+            response.confidences[i] = in.readFloat();
+            response.left[i] = in.readFloat();
+            response.top[i] = in.readFloat();
+            response.right[i] = in.readFloat();
+            response.bottom[i] = in.readFloat();
+        }
+        return response;
+    }
+
+    public static int i420Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
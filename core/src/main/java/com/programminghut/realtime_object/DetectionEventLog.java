@@ -0,0 +1,348 @@
+package com.programminghut.realtime_object;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only binary log of per-frame detections, for drive history.
+ * append encodes a frame into an in-memory ring and returns; it never
+ * touches storage, locks or allocates once every label has been seen. A
+ * writer thread copies records from the ring into preallocated
+ * memory-mapped segment files, rotating to a new segment when one fills up
+ * and deleting the oldest beyond maxSegments. When storage falls behind and
+ * the ring is full, whole frames are dropped and counted.
+ *
+ * Segment format, little-endian: a SEGMENT_HEADER_SIZE-byte header (MAGIC,
+ * VERSION, segment number, reserved), then records until a zero byte:
+ *   LABEL  kind, id, name length, UTF-8 name
+ *   FRAME  kind, detection count, timestamp (8 bytes), then per detection
+ *          type, label id, confidence * 255, reserved, and left, top,
+ *          right, bottom as unsigned 16-bit fractions of the frame
+ * Each segment starts with every label seen so far, so it reads on its own.
+ * DetectionLogReader reads segments back.
+ */
+public class DetectionEventLog implements Closeable {
+    static final int MAGIC = 0x474F4C44;  // "DLOG"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final byte END = 0;
+    static final byte FRAME = 1;
+    static final byte LABEL = 2;
+    static final int FRAME_HEADER_SIZE = 10;
+    static final int DETECTION_SIZE = 12;
+    static final int LABEL_HEADER_SIZE = 3;
+    // Label ids are one byte; labels past the first MAX_LABELS are logged as UNKNOWN_LABEL
+    static final int MAX_LABELS = 255;
+    static final int UNKNOWN_LABEL = 255;
+    static final String SEGMENT_PREFIX = "events-";
+    static final String SEGMENT_SUFFIX = ".dlog";
+
+    // Smallest segment: a full label table plus the largest frame
+    private static final int MIN_SEGMENT_BYTES = 128 * 1024;
+    // How often the writer looks for new records
+    private static final long POLL_NANOS = 5_000_000L;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    // Ring shared by append (producer) and the writer thread (consumer)
+    private final byte[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    // Producer only
+    private long writeIndex;
+    private final IdentityHashMap<String, Integer> labelIds = new IdentityHashMap<>();
+    // Labels first seen in the frame being appended
+    private final String[] newLabels = new String[MAX_LABELS];
+    private final byte[][] newLabelNames = new byte[MAX_LABELS][];
+
+    // Writer thread only
+    private final byte[][] labelNames = new byte[MAX_LABELS][];
+    private final ArrayDeque<File> segments = new ArrayDeque<>();
+    private int nextSegmentNumber;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+
+    private Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    private volatile long appended;
+    private volatile long dropped;
+    private volatile long bytesWritten;
+
+    /**
+     * Segments of segmentBytes each go into directory; at most maxSegments
+     * are kept. bufferBytes (rounded up to a power of two) is how much may
+     * wait for storage before frames are dropped.
+     */
+    public DetectionEventLog(File directory, int segmentBytes, int maxSegments, int bufferBytes) {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        int capacity = Integer.highestOneBit(Math.max(4096, bufferBytes - 1)) << 1;
+        ring = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    // Opens the first segment, numbered after any segments already in directory
+    public void start() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] existing = DetectionLogReader.segments(directory);
+        segments.addAll(Arrays.asList(existing));
+        nextSegmentNumber = existing.length == 0 ? 0 : segmentNumber(existing[existing.length - 1]) + 1;
+        openSegment();
+        writer = new Thread(this::writeLoop, "detection-log");
+        writer.start();
+    }
+
+    /**
+     * Queues one frame of detections. Returns false if it was dropped
+     * because the buffer is full. Call from one thread only.
+     */
+    public boolean append(DetectionFrame frame) {
+        int count = Math.min(frame.count, 255);
+        int need = FRAME_HEADER_SIZE + count * DETECTION_SIZE;
+        int newLabelCount = 0;
+        for (int i = 0; i < count; i++) {
+            String label = frame.labels[i];
+            if (label == null || labelIds.containsKey(label) || isNew(label, newLabelCount)
+                    || labelIds.size() + newLabelCount >= MAX_LABELS) {
+                continue;
+            }
+            byte[] name = label.getBytes(StandardCharsets.UTF_8);
+            newLabels[newLabelCount] = label;
+            newLabelNames[newLabelCount] = name.length > 255 ? Arrays.copyOf(name, 255) : name;
+            need += LABEL_HEADER_SIZE + newLabelNames[newLabelCount].length;
+            newLabelCount++;
+        }
+        if (ring.length - (writeIndex - consumed.get()) < need) {
+            dropped++;
+            return false;
+        }
+
+        // New labels go ahead of the frame that uses them
+        for (int i = 0; i < newLabelCount; i++) {
+            int id = labelIds.size();
+            labelIds.put(newLabels[i], id);
+            byte[] name = newLabelNames[i];
+            putByte(LABEL);
+            putByte(id);
+            putByte(name.length);
+            for (byte b : name) {
+                putByte(b);
+            }
+            newLabels[i] = null;
+            newLabelNames[i] = null;
+        }
+
+        putByte(FRAME);
+        putByte(count);
+        putLong(frame.timestampNs);
+        for (int i = 0; i < count; i++) {
+            Integer id = frame.labels[i] != null ? labelIds.get(frame.labels[i]) : null;
+            putByte(frame.types[i]);
+            putByte(id != null ? id : UNKNOWN_LABEL);
+            putByte(Math.round(clamp01(frame.confidences[i]) * 255f));
+            putByte(0);
+            putShort(quantize(frame.left[i]));
+            putShort(quantize(frame.top[i]));
+            putShort(quantize(frame.right[i]));
+            putShort(quantize(frame.bottom[i]));
+        }
+        published.lazySet(writeIndex);
+        appended++;
+        return true;
+    }
+
+    // Writes out everything queued, trims the last segment and closes it
+    @Override
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        IOException closeFailure = failure;
+        try {
+            finishSegment();
+        } catch (IOException e) {
+            closeFailure = closeFailure != null ? closeFailure : e;
+        }
+        if (closeFailure != null) {
+            throw closeFailure;
+        }
+    }
+
+    private void writeLoop() {
+        long readIndex = 0;
+        while (true) {
+            long available = published.get() - readIndex;
+            if (available == 0) {
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(this, POLL_NANOS);
+                continue;
+            }
+            try {
+                while (readIndex < published.get()) {
+                    readIndex = writeRecord(readIndex);
+                }
+            } catch (IOException e) {
+                // Keep draining so append doesn't fill up; close reports the failure
+                failure = e;
+                readIndex = published.get();
+            }
+            consumed.lazySet(readIndex);
+        }
+    }
+
+    // Copies the record at readIndex into the current segment; returns the index after it
+    private long writeRecord(long readIndex) throws IOException {
+        byte kind = ring[(int) (readIndex & mask)];
+        int size = kind == FRAME
+                ? FRAME_HEADER_SIZE + (ring[(int) ((readIndex + 1) & mask)] & 0xFF) * DETECTION_SIZE
+                : LABEL_HEADER_SIZE + (ring[(int) ((readIndex + 2) & mask)] & 0xFF);
+        if (failure != null) {
+            return readIndex + size;
+        }
+        if (segment.remaining() < size + 1) {
+            finishSegment();
+            openSegment();
+        }
+        for (int i = 0; i < size; i++) {
+            segment.put(ring[(int) ((readIndex + i) & mask)]);
+        }
+        bytesWritten += size;
+        if (kind == LABEL) {
+            byte[] name = new byte[size - LABEL_HEADER_SIZE];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = ring[(int) ((readIndex + LABEL_HEADER_SIZE + i) & mask)];
+            }
+            labelNames[ring[(int) ((readIndex + 1) & mask)] & 0xFF] = name;
+        }
+        return readIndex + size;
+    }
+
+    private void openSegment() throws IOException {
+        File file = new File(directory, segmentName(nextSegmentNumber));
+        segmentFile = new RandomAccessFile(file, "rw");
+        segmentFile.setLength(segmentBytes);
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC).putInt(VERSION).putInt(nextSegmentNumber).putInt(0);
+        nextSegmentNumber++;
+
+        // Every segment carries the labels seen so far
+        for (int id = 0; id < MAX_LABELS && labelNames[id] != null; id++) {
+            segment.put(LABEL).put((byte) id).put((byte) labelNames[id].length).put(labelNames[id]);
+        }
+
+        segments.addLast(file);
+        while (segments.size() > maxSegments) {
+            File oldest = segments.pollFirst();
+            if (!oldest.delete()) {
+                throw new IOException("Cannot delete " + oldest);
+            }
+        }
+    }
+
+    // Flushes the segment and trims the unused preallocated tail; the end marker is the first zero byte
+    private void finishSegment() throws IOException {
+        if (segmentFile == null) {
+            return;
+        }
+        int used = segment.position();
+        segment.force();
+        try {
+            segmentFile.getChannel().truncate(Math.min(segmentBytes, used + 1));
+        } finally {
+            segmentFile.close();
+            segmentFile = null;
+        }
+    }
+
+    // Labels are shared instances from the model specs, so identity is enough
+    private boolean isNew(String label, int newLabelCount) {
+        for (int i = 0; i < newLabelCount; i++) {
+            if (newLabels[i] == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void putByte(int value) {
+        ring[(int) (writeIndex++ & mask)] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        putByte(value);
+        putByte(value >> 8);
+    }
+
+    private void putLong(long value) {
+        for (int i = 0; i < 8; i++) {
+            putByte((int) (value >> (8 * i)));
+        }
+    }
+
+    private static int quantize(float value) {
+        return Math.round(clamp01(value) * 65535f);
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+
+    static String segmentName(int number) {
+        return String.format(java.util.Locale.US, "%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    static int segmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public long getAppendedCount() {
+        return appended;
+    }
+
+    // Frames dropped because storage fell behind
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,77 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Preallocated struct-of-arrays copy of one frame's detections, for handing
+ * results between threads without allocating. Boxes are normalized frame
+ * coordinates. Holds at most capacity detections; further ones are dropped
+ * and counted.
+ */
+public class DetectionFrame {
+    public final float[] left;
+    public final float[] top;
+    public final float[] right;
+    public final float[] bottom;
+    public final float[] confidences;
+    public final String[] labels;
+    public final int[] types;      // Detection.type
+    public final int[] trackIds;   // -1 when not tracked
+    public final float[] ageMs;
+    public int count;
+    public int droppedCount;
+
+    public long timestampNs;
+    public long sequence;
+
+    public DetectionFrame(int capacity) {
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        confidences = new float[capacity];
+        labels = new String[capacity];
+        types = new int[capacity];
+        trackIds = new int[capacity];
+        ageMs = new float[capacity];
+    }
+
+    public int capacity() {
+        return confidences.length;
+    }
+
+    public void clear() {
+        count = 0;
+        droppedCount = 0;
+    }
+
+    // Returns false when the frame is full
+    public boolean add(float l, float t, float r, float b, String label, float confidence,
+                       int type, int trackId, float age) {
+        if (count == confidences.length) {
+            droppedCount++;
+            return false;
+        }
+        left[count] = l;
+        top[count] = t;
+        right[count] = r;
+        bottom[count] = b;
+        labels[count] = label;
+        confidences[count] = confidence;
+        types[count] = type;
+        trackIds[count] = trackId;
+        ageMs[count] = age;
+        count++;
+        return true;
+    }
+
+    // Copies other, up to this frame's capacity
+    public void copyFrom(DetectionFrame other) {
+        clear();
+        for (int i = 0; i < other.count; i++) {
+            add(other.left[i], other.top[i], other.right[i], other.bottom[i], other.labels[i],
+                    other.confidences[i], other.types[i], other.trackIds[i], other.ageMs[i]);
+        }
+        droppedCount += other.droppedCount;
+        timestampNs = other.timestampNs;
+        sequence = other.sequence;
+    }
+}
@@ -0,0 +1,156 @@
+package com.programminghut.realtime_object;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local load generator for DetectionServer. Each client connection keeps up
+ * to inFlight requests outstanding with random frames, closed-loop, so the
+ * offered load grows with clients x inFlight. Reports throughput, latency
+ * percentiles and how many requests were shed:
+ *   DetectionLoadGenerator [--port 7070] [--clients 4] [--requests 500]
+ *       [--in-flight 2] [--width 640] [--height 480]
+ * or ./gradlew :core:loadDetectionServer -PloadArgs="--clients 8"
+ */
+public class DetectionLoadGenerator {
+    /** Totals over every client of one run. */
+    public static class Result {
+        public final LatencyHistogram.Snapshot latency;
+        public final long ok;
+        public final long rejected;
+        public final long expired;
+        public final long failed;
+        public final long elapsedNanos;
+
+        Result(LatencyHistogram.Snapshot latency, long ok, long rejected, long expired, long failed,
+               long elapsedNanos) {
+            this.latency = latency;
+            this.ok = ok;
+            this.rejected = rejected;
+            this.expired = expired;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Frames answered with detections per second
+        public float getThroughput() {
+            return elapsedNanos > 0 ? ok * 1e9f / elapsedNanos : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f frames/s, ok %d, rejected %d, expired %d, failed %d, "
+                            + "latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    getThroughput(), ok, rejected, expired, failed, latency.percentileMs(0.5f),
+                    latency.percentileMs(0.95f), latency.percentileMs(0.99f), latency.maxMs());
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public DetectionLoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Sends requestsPerClient frames of width x height from each of clients
+     * connections, at most inFlight outstanding per connection, and waits
+     * for every response.
+     */
+    public Result run(int clients, int requestsPerClient, int inFlight, int width, int height)
+            throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(requestsPerClient, inFlight, width, height, seed);
+                } catch (Exception e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }, "load-client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        return new Result(latency.snapshotAndReset(), ok.getAndSet(0), rejected.getAndSet(0),
+                expired.getAndSet(0), failed.getAndSet(0), elapsedNanos);
+    }
+
+    private void runClient(int requests, int inFlight, int width, int height, long seed) throws IOException {
+        byte[] frame = new byte[DetectionClient.i420Size(width, height)];
+        new Random(seed).nextBytes(frame);
+        // Send time by request id
+        long[] sentAt = new long[requests];
+        DetectionClient.Response response = new DetectionClient.Response();
+        try (DetectionClient client = new DetectionClient(host, port)) {
+            int sent = 0;
+            int received = 0;
+            while (received < requests) {
+                while (sent < requests && sent - received < inFlight) {
+                    sentAt[sent] = System.nanoTime();
+                    client.send(sent, sentAt[sent], width, height, 0, frame);
+                    sent++;
+                }
+                client.receive(response);
+                received++;
+                if (response.isOk()) {
+                    latency.recordNanos(System.nanoTime() - sentAt[response.id]);
+                    ok.incrementAndGet();
+                } else if (response.isRejected()) {
+                    rejected.incrementAndGet();
+                } else if (response.isExpired()) {
+                    expired.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 7070;
+        int clients = 4;
+        int requests = 500;
+        int inFlight = 2;
+        int width = 640;
+        int height = 480;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--port": port = value; break;
+                case "--clients": clients = value; break;
+                case "--requests": requests = value; break;
+                case "--in-flight": inFlight = value; break;
+                case "--width": width = value; break;
+                case "--height": height = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Result result = new DetectionLoadGenerator("127.0.0.1", port)
+                .run(clients, requests, inFlight, width, height);
+        System.out.println(clients + " clients x " + inFlight + " in flight, " + width + "x" + height + ": "
+                + result);
+    }
+}
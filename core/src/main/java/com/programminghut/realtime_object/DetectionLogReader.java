@@ -0,0 +1,131 @@
+package com.programminghut.realtime_object;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads DetectionEventLog segments back, e.g. on a host after pulling the
+ * events directory off a device. As a program it exports a directory of
+ * segments to CSV:
+ *   java -cp core.jar com.programminghut.realtime_object.DetectionLogReader events [out.csv]
+ * or ./gradlew :core:exportDetectionLog -PlogDir=events -PcsvFile=events.csv
+ */
+public class DetectionLogReader {
+    public interface Visitor {
+        void onFrame(long timestampNs, int detectionCount);
+
+        // Box is in normalized frame coordinates; label is null if it wasn't recorded
+        void onDetection(int type, String label, float left, float top, float right, float bottom,
+                         float confidence);
+    }
+
+    // Segment files of directory, oldest first
+    public static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(DetectionEventLog.SEGMENT_PREFIX)
+                && name.endsWith(DetectionEventLog.SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Integer.compare(
+                DetectionEventLog.segmentNumber(a), DetectionEventLog.segmentNumber(b)));
+        return files;
+    }
+
+    // Reads one segment; returns the number of frames in it
+    public static int read(File segment, Visitor visitor) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (data.limit() < DetectionEventLog.SEGMENT_HEADER_SIZE
+                    || data.getInt(0) != DetectionEventLog.MAGIC
+                    || data.getInt(4) != DetectionEventLog.VERSION) {
+                throw new IOException("Not a detection log segment: " + segment);
+            }
+
+            String[] labels = new String[DetectionEventLog.MAX_LABELS];
+            int frames = 0;
+            int position = DetectionEventLog.SEGMENT_HEADER_SIZE;
+            while (position < data.limit()) {
+                byte kind = data.get(position);
+                if (kind == DetectionEventLog.END) {
+                    break;
+                } else if (kind == DetectionEventLog.LABEL) {
+                    int length = data.get(position + 2) & 0xFF;
+                    byte[] name = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        name[i] = data.get(position + DetectionEventLog.LABEL_HEADER_SIZE + i);
+                    }
+                    labels[data.get(position + 1) & 0xFF] = new String(name, StandardCharsets.UTF_8);
+                    position += DetectionEventLog.LABEL_HEADER_SIZE + length;
+                } else if (kind == DetectionEventLog.FRAME) {
+                    int count = data.get(position + 1) & 0xFF;
+                    visitor.onFrame(data.getLong(position + 2), count);
+                    int detection = position + DetectionEventLog.FRAME_HEADER_SIZE;
+                    for (int i = 0; i < count; i++, detection += DetectionEventLog.DETECTION_SIZE) {
+                        int labelId = data.get(detection + 1) & 0xFF;
+                        visitor.onDetection(
+                                data.get(detection),
+                                labelId < labels.length ? labels[labelId] : null,
+                                dequantize(data.getShort(detection + 4)),
+                                dequantize(data.getShort(detection + 6)),
+                                dequantize(data.getShort(detection + 8)),
+                                dequantize(data.getShort(detection + 10)),
+                                (data.get(detection + 2) & 0xFF) / 255f);
+                    }
+                    position = detection;
+                    frames++;
+                } else {
+                    throw new IOException("Corrupt record at " + position + " in " + segment);
+                }
+            }
+            return frames;
+        }
+    }
+
+    private static float dequantize(short value) {
+        return (value & 0xFFFF) / 65535f;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: DetectionLogReader <events directory> [out.csv]");
+            System.exit(2);
+        }
+        File[] files = segments(new File(args[0]));
+        try (Writer output = args.length > 1
+                ? new FileWriter(args[1]) : new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+             PrintWriter csv = new PrintWriter(output)) {
+            csv.println("timestamp_ns,type,label,left,top,right,bottom,confidence");
+            long[] timestamp = new long[1];
+            int frames = 0;
+            for (File file : files) {
+                frames += read(file, new Visitor() {
+                    @Override
+                    public void onFrame(long timestampNs, int detectionCount) {
+                        timestamp[0] = timestampNs;
+                    }
+
+                    @Override
+                    public void onDetection(int type, String label, float left, float top, float right,
+                                            float bottom, float confidence) {
+                        csv.printf(Locale.US, "%d,%d,%s,%.5f,%.5f,%.5f,%.5f,%.3f%n", timestamp[0], type,
+                                label != null ? label : "", left, top, right, bottom, confidence);
+                    }
+                });
+            }
+            System.err.println("Exported " + frames + " frames from " + files.length + " segments");
+        }
+    }
+}
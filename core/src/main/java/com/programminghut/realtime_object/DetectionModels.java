@@ -0,0 +1,29 @@
+package com.programminghut.realtime_object;
+
+/**
+ * The vehicle and sign models and their input normalization, shared by the
+ * app's Detector and the headless DetectionServer so both decode the same
+ * way.
+ */
+public final class DetectionModels {
+    // Normalization parameters
+    public static final float[] MEAN = new float[]{0.485f, 0.456f, 0.406f};
+    public static final float[] STD = new float[]{0.229f, 0.224f, 0.225f};
+
+    // Suppression shared by every model: overlap that counts as a duplicate, and
+    // candidates kept for NMS per model, by score
+    public static final float IOU_THRESHOLD = 0.5f;
+    public static final int PRE_NMS_TOP_K = 300;
+
+    // Class names
+    public static final String[] VEHICLE_CLASSES = {"car", "motorcycle", "bus", "truck"};
+    public static final String[] SIGN_CLASSES = {"crossing", "near_crossing", "crossing_ahead"};
+
+    public static final ModelSpec VEHICLE_SPEC = new ModelSpec(
+            "Vehicle", "vehicle_model.ptl", 0, VEHICLE_CLASSES, "vehicle", 0.45f);
+    public static final ModelSpec SIGN_SPEC = new ModelSpec(
+            "Sign", "sign_model.ptl", 1, SIGN_CLASSES, "sign", 0.45f);
+
+    private DetectionModels() {
+    }
+}
@@ -0,0 +1,524 @@
+package com.programminghut.realtime_object;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless detection server for edge gateways: local clients send frames
+ * over a loopback TCP socket and get each frame's detections back. Requests
+ * that arrive together are coalesced into one batch per forward pass: the
+ * batch closes when it holds maxBatch frames or its oldest frame has waited
+ * maxQueueDelayMs. Admission control rejects a request at once when
+ * maxQueued frames are already waiting, and frames that waited longer than
+ * shedAfterMs by the time their batch forms are answered EXPIRED without
+ * running, so overload sheds work instead of growing latency. Each
+ * connection has a reader and a writer thread, and at most maxConnections
+ * are served; the batcher only queues encoded responses, and a client that
+ * lets MAX_PENDING_RESPONSES pile up unread is disconnected.
+ *
+ * Protocol, big-endian, any number of requests per connection, pipelining
+ * allowed. Responses may come back out of order; match them by id.
+ *   request   id (int), timestamp (long), width, height, rotation (ints),
+ *             then the frame as I420: width*height Y bytes, then U and V
+ *             planes of ((width+1)/2)*((height+1)/2) bytes each
+ *   response  id (int), status (byte), detection count (short), then per
+ *             detection type (byte), label (modified UTF-8), confidence,
+ *             left, top, right, bottom (floats, normalized frame coordinates)
+ *
+ * Run it with DetectionServer.main and measure it with DetectionLoadGenerator.
+ */
+public class DetectionServer implements Closeable {
+    static final byte STATUS_OK = 0;
+    // Too many frames already waiting
+    static final byte STATUS_REJECTED = 1;
+    // Waited past shedAfterMs before a batch could take it
+    static final byte STATUS_EXPIRED = 2;
+    static final byte STATUS_ERROR = 3;
+    // Largest frame accepted, to bound per-request memory
+    static final int MAX_FRAME_PIXELS = 4096 * 4096;
+    // Encoded responses a connection may have waiting for its writer
+    static final int MAX_PENDING_RESPONSES = 256;
+    static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+    // A frame read off a connection, with backing arrays reused across requests
+    private static class Request {
+        final YuvFrame frame = new YuvFrame();
+        byte[] y = new byte[0];
+        byte[] u = new byte[0];
+        byte[] v = new byte[0];
+        Connection connection;
+        int id;
+        long arrivalNanos;
+    }
+
+    private class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        // Skipped bytes of rejected requests land here
+        final byte[] discard = new byte[16 * 1024];
+        // Filled by the reader and the batcher, drained by the writer
+        final ArrayBlockingQueue<byte[]> responses = new ArrayBlockingQueue<>(MAX_PENDING_RESPONSES);
+        Thread reader;
+        Thread writer;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+    }
+
+    private final BatchedDetector detector;
+    private final int maxConnections;
+    private final long maxQueueDelayNanos;
+    private final long shedAfterNanos;
+    private final ArrayBlockingQueue<Request> freeRequests;
+    private final ArrayBlockingQueue<Request> pending;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private Thread batcher;
+    private volatile boolean running;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong refusedConnections = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedFrames = new AtomicLong();
+
+    /**
+     * detector sets the largest batch. Up to maxQueued frames may wait for
+     * a batch; a batch waits at most maxQueueDelayMs for more frames; frames
+     * older than shedAfterMs (0 for never) are answered EXPIRED.
+     */
+    public DetectionServer(BatchedDetector detector, int maxQueued, float maxQueueDelayMs, float shedAfterMs) {
+        this(detector, maxQueued, maxQueueDelayMs, shedAfterMs, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    // As above, closing connections beyond maxConnections as soon as they are accepted
+    public DetectionServer(BatchedDetector detector, int maxQueued, float maxQueueDelayMs, float shedAfterMs,
+                           int maxConnections) {
+        if (maxQueued < 1 || maxConnections < 1) {
+            throw new IllegalArgumentException("maxQueued and maxConnections must be at least 1");
+        }
+        this.detector = detector;
+        this.maxConnections = maxConnections;
+        this.maxQueueDelayNanos = (long) (maxQueueDelayMs * 1e6f);
+        this.shedAfterNanos = (long) (shedAfterMs * 1e6f);
+        pending = new ArrayBlockingQueue<>(maxQueued);
+        // Waiting frames, a batch in inference and frames still being read all borrow from here
+        freeRequests = new ArrayBlockingQueue<>(maxQueued + detector.getMaxBatch());
+        for (int i = 0; i < maxQueued + detector.getMaxBatch(); i++) {
+            freeRequests.add(new Request());
+        }
+    }
+
+    // Listens on the loopback interface; port 0 picks a free port. Returns the port.
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "detection-server-accept");
+        batcher = new Thread(this::batchLoop, "detection-server-batch");
+        acceptor.start();
+        batcher.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Stops accepting, drops open connections and waits for the batch in inference
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        batcher.interrupt();
+        try {
+            acceptor.join();
+            batcher.join();
+            for (Connection connection : connections) {
+                connection.close();
+                connection.reader.join();
+                connection.writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        detector.close();
+    }
+
+    private void acceptLoop() {
+        int clients = 0;
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+            // Two threads per connection, so the cap bounds the thread count
+            if (connections.size() >= maxConnections) {
+                refusedConnections.incrementAndGet();
+                closeQuietly(socket);
+                continue;
+            }
+            try {
+                Connection connection = new Connection(socket);
+                int client = clients++;
+                connection.reader = new Thread(() -> readLoop(connection), "detection-server-read-" + client);
+                connection.writer = new Thread(() -> writeLoop(connection), "detection-server-write-" + client);
+                connections.add(connection);
+                connection.writer.start();
+                connection.reader.start();
+            } catch (IOException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void readLoop(Connection connection) {
+        try {
+            while (running) {
+                int id = connection.in.readInt();
+                long timestampNs = connection.in.readLong();
+                int width = connection.in.readInt();
+                int height = connection.in.readInt();
+                int rotation = connection.in.readInt();
+                long arrivalNanos = System.nanoTime();
+                if (width <= 0 || height <= 0 || (long) width * height > MAX_FRAME_PIXELS) {
+                    // The stream can't be resynchronized past a bad header
+                    return;
+                }
+                int ySize = width * height;
+                int chromaSize = ((width + 1) / 2) * ((height + 1) / 2);
+
+                // Admission control: no free request means the queue is full
+                Request request = freeRequests.poll();
+                if (request == null) {
+                    skipFully(connection, ySize + 2 * chromaSize);
+                    rejected.incrementAndGet();
+                    respond(connection, id, STATUS_REJECTED, null);
+                    continue;
+                }
+                readFrame(connection, request, width, height, rotation, timestampNs, ySize, chromaSize);
+                request.connection = connection;
+                request.id = id;
+                request.arrivalNanos = arrivalNanos;
+                if (!pending.offer(request)) {
+                    release(request);
+                    rejected.incrementAndGet();
+                    respond(connection, id, STATUS_REJECTED, null);
+                }
+            }
+        } catch (IOException e) {
+            // Client hung up
+        } finally {
+            connections.remove(connection);
+            connection.close();
+        }
+    }
+
+    // Sends queued responses, flushing once the queue runs dry
+    private void writeLoop(Connection connection) {
+        try {
+            while (true) {
+                byte[] response = connection.responses.poll();
+                if (response == null) {
+                    connection.out.flush();
+                    response = connection.responses.take();
+                }
+                connection.out.write(response);
+            }
+        } catch (IOException | InterruptedException e) {
+            // Closed, or the client hung up
+            connection.close();
+        }
+    }
+
+    private void readFrame(Connection connection, Request request, int width, int height, int rotation,
+                           long timestampNs, int ySize, int chromaSize) throws IOException {
+        if (request.y.length != ySize || request.u.length != chromaSize) {
+            request.y = new byte[ySize];
+            request.u = new byte[chromaSize];
+            request.v = new byte[chromaSize];
+        }
+        connection.in.readFully(request.y);
+        connection.in.readFully(request.u);
+        connection.in.readFully(request.v);
+        int chromaWidth = (width + 1) / 2;
+        request.frame.set(width, height, rotation, timestampNs)
+                .setY(ByteBuffer.wrap(request.y), width, 1)
+                .setU(ByteBuffer.wrap(request.u), chromaWidth, 1)
+                .setV(ByteBuffer.wrap(request.v), chromaWidth, 1);
+    }
+
+    private void batchLoop() {
+        int maxBatch = detector.getMaxBatch();
+        Request[] batch = new Request[maxBatch];
+        YuvFrame[] frames = new YuvFrame[maxBatch];
+        CandidateBuffer[] results = new CandidateBuffer[maxBatch];
+        for (int i = 0; i < maxBatch; i++) {
+            results[i] = new CandidateBuffer(64);
+        }
+
+        while (running) {
+            int count;
+            try {
+                count = collectBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (count == 0) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                frames[i] = batch[i].frame;
+            }
+
+            byte status = STATUS_OK;
+            try {
+                detector.detect(frames, count, results);
+                batches.incrementAndGet();
+                batchedFrames.addAndGet(count);
+            } catch (Exception e) {
+                status = STATUS_ERROR;
+            }
+            for (int i = 0; i < count; i++) {
+                Request request = batch[i];
+                // Counted first: the writer may deliver the response before respond returns
+                latency.recordNanos(System.nanoTime() - request.arrivalNanos);
+                (status == STATUS_OK ? completed : failed).incrementAndGet();
+                respond(request.connection, request.id, status, status == STATUS_OK ? results[i] : null);
+                batch[i] = null;
+                frames[i] = null;
+                release(request);
+            }
+        }
+
+        // Answer whatever was still waiting
+        Request request;
+        while ((request = pending.poll()) != null) {
+            respond(request.connection, request.id, STATUS_REJECTED, null);
+            release(request);
+        }
+    }
+
+    /**
+     * Blocks for the first frame, then takes frames until the batch is full
+     * or the first frame has waited maxQueueDelayNanos. Expired frames are
+     * answered and left out. Returns the batch size.
+     */
+    private int collectBatch(Request[] batch) throws InterruptedException {
+        int count = 0;
+        Request first = pending.take();
+        long closeAt = first.arrivalNanos + maxQueueDelayNanos;
+        Request next = first;
+        while (next != null) {
+            if (shedAfterNanos > 0 && System.nanoTime() - next.arrivalNanos > shedAfterNanos) {
+                expired.incrementAndGet();
+                respond(next.connection, next.id, STATUS_EXPIRED, null);
+                release(next);
+            } else {
+                batch[count++] = next;
+                if (count == batch.length) {
+                    break;
+                }
+            }
+            long waitNanos = closeAt - System.nanoTime();
+            next = waitNanos > 0 ? pending.poll(waitNanos, TimeUnit.NANOSECONDS) : pending.poll();
+        }
+        return count;
+    }
+
+    /**
+     * Encodes one response and queues it for the connection's writer, so
+     * the batcher never blocks on a socket. A client too far behind on
+     * reading is disconnected; a connection that went away just loses it.
+     */
+    private void respond(Connection connection, int id, byte status, CandidateBuffer detections) {
+        int count = detections != null ? detections.count : 0;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(7 + count * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(id);
+            out.writeByte(status);
+            out.writeShort(count);
+            for (int i = 0; i < count; i++) {
+                int type = detections.sources[i];
+                ModelSpec spec = detector.specFor(type);
+                out.writeByte(type);
+                out.writeUTF(spec != null ? spec.labelFor(detections.classIds[i]) : "");
+                out.writeFloat(detections.scores[i]);
+                out.writeFloat(detections.left[i]);
+                out.writeFloat(detections.top[i]);
+                out.writeFloat(detections.right[i]);
+                out.writeFloat(detections.bottom[i]);
+            }
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        if (!connection.responses.offer(bytes.toByteArray())) {
+            connection.close();
+        }
+    }
+
+    private void release(Request request) {
+        request.connection = null;
+        freeRequests.offer(request);
+    }
+
+    private static void skipFully(Connection connection, int bytes) throws IOException {
+        while (bytes > 0) {
+            int n = Math.min(bytes, connection.discard.length);
+            connection.in.readFully(connection.discard, 0, n);
+            bytes -= n;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+
+    // Frames answered with detections
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    // Frames turned away because the queue was full
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Frames that waited past shedAfterMs
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    // Connections closed on accept because maxConnections were open
+    public long getRefusedConnectionCount() {
+        return refusedConnections.get();
+    }
+
+    public float getAverageBatchSize() {
+        long n = batches.get();
+        return n > 0 ? batchedFrames.get() / (float) n : 0f;
+    }
+
+    // Receive-to-response latencies of completed frames since the last call
+    public LatencyHistogram.Snapshot snapshotLatency() {
+        return latency.snapshotAndReset();
+    }
+
+    /**
+     * Serves the vehicle and sign models until killed:
+     *   DetectionServer [--port 7070] [--max-batch 8] [--max-delay-ms 5]
+     *       [--max-queued 64] [--shed-after-ms 250] [--input-size 640]
+     *       [--max-connections 32]
+     *       --vehicle backend-class:model-file --sign backend-class:model-file
+     * Backend classes implement InferenceBackend with a public no-argument
+     * constructor and must be on the classpath.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 7070;
+        int maxBatch = 8;
+        float maxDelayMs = 5f;
+        int maxQueued = 64;
+        float shedAfterMs = 250f;
+        int inputSize = 640;
+        int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        String vehicle = null;
+        String sign = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(value); break;
+                case "--max-batch": maxBatch = Integer.parseInt(value); break;
+                case "--max-delay-ms": maxDelayMs = Float.parseFloat(value); break;
+                case "--max-queued": maxQueued = Integer.parseInt(value); break;
+                case "--shed-after-ms": shedAfterMs = Float.parseFloat(value); break;
+                case "--input-size": inputSize = Integer.parseInt(value); break;
+                case "--max-connections": maxConnections = Integer.parseInt(value); break;
+                case "--vehicle": vehicle = value; break;
+                case "--sign": sign = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (vehicle == null || sign == null) {
+            System.err.println("usage: DetectionServer --vehicle backend-class:model-file"
+                    + " --sign backend-class:model-file [options]");
+            System.exit(2);
+        }
+
+        List<InferenceBackend> backends = new ArrayList<>();
+        backends.add(loadBackend(vehicle));
+        backends.add(loadBackend(sign));
+        BatchedDetector detector = new BatchedDetector(
+                new ModelSpec[]{DetectionModels.VEHICLE_SPEC, DetectionModels.SIGN_SPEC},
+                backends.toArray(new InferenceBackend[0]), inputSize, maxBatch,
+                DetectionModels.MEAN, DetectionModels.STD);
+        DetectionServer server = new DetectionServer(detector, maxQueued, maxDelayMs, shedAfterMs,
+                maxConnections);
+        System.err.println("Listening on 127.0.0.1:" + server.start(port));
+        while (true) {
+            Thread.sleep(10_000);
+            LatencyHistogram.Snapshot snapshot = server.snapshotLatency();
+            System.err.printf("completed %d, rejected %d, expired %d, batch %.1f, p50 %.1f ms, p95 %.1f ms%n",
+                    server.getCompletedCount(), server.getRejectedCount(), server.getExpiredCount(),
+                    server.getAverageBatchSize(), snapshot.percentileMs(0.5f), snapshot.percentileMs(0.95f));
+        }
+    }
+
+    private static InferenceBackend loadBackend(String classAndModel) throws Exception {
+        int split = classAndModel.lastIndexOf(':');
+        if (split <= 0) {
+            throw new IllegalArgumentException("Expected backend-class:model-file, got " + classAndModel);
+        }
+        InferenceBackend backend = (InferenceBackend) Class.forName(classAndModel.substring(0, split))
+                .getDeclaredConstructor().newInstance();
+        backend.load(classAndModel.substring(split + 1), 0);
+        return backend;
+    }
+}
@@ -0,0 +1,153 @@
+package com.programminghut.realtime_object;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Preallocated direct input buffers, reused across frames. Callers acquire a
+ * buffer per frame and release it when the frame is done, so several frames
+ * can be in flight at once. Buffers are reallocated only when the input
+ * resolution, input format or batch size changes; the camera resolution
+ * doesn't change the buffer's shape, so it is not part of the key.
+ */
+public class FrameBufferPool {
+    public static class InputBuffer {
+        public final InferenceBackend.InputFormat format;
+        public final ByteBuffer bytes;
+        // Float view of bytes for FLOAT_CHW, null otherwise
+        public final FloatBuffer floats;
+        public final int width;
+        public final int height;
+        // Images stacked along the leading dimension, 1 for live frames
+        public final int batchSize;
+        // Runtime-specific wrapper around bytes, created once by the backend
+        public Object backendTensor;
+        final int generation;
+        // Views of each image in the batch, starting at index 0
+        private final ByteBuffer[] itemBytes;
+        private final FloatBuffer[] itemFloats;
+
+        InputBuffer(InferenceBackend.InputFormat format, int width, int height, int batchSize, int generation) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.batchSize = batchSize;
+            this.generation = generation;
+            this.bytes = ByteBuffer.allocateDirect((int) sizeInBytes()).order(ByteOrder.nativeOrder());
+            boolean isFloat = format == InferenceBackend.InputFormat.FLOAT_CHW;
+            this.floats = isFloat ? bytes.asFloatBuffer() : null;
+
+            itemBytes = new ByteBuffer[batchSize];
+            itemFloats = new FloatBuffer[batchSize];
+            int itemSize = (int) (sizeInBytes() / batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                ByteBuffer view = bytes.duplicate();
+                view.position(i * itemSize).limit((i + 1) * itemSize);
+                itemBytes[i] = view.slice().order(ByteOrder.nativeOrder());
+                itemFloats[i] = isFloat ? itemBytes[i].asFloatBuffer() : null;
+            }
+        }
+
+        public ByteBuffer itemBytes(int index) {
+            return itemBytes[index];
+        }
+
+        // Null for byte formats
+        public FloatBuffer itemFloats(int index) {
+            return itemFloats[index];
+        }
+
+        long sizeInBytes() {
+            int bytesPerValue = format == InferenceBackend.InputFormat.FLOAT_CHW ? Float.BYTES : 1;
+            return 3L * width * height * bytesPerValue * batchSize;
+        }
+    }
+
+    private final int maxPooled;
+    private final ArrayDeque<InputBuffer> free = new ArrayDeque<>();
+
+    private int inputWidth = -1;
+    private int inputHeight = -1;
+    private InferenceBackend.InputFormat format;
+    private int batchSize = -1;
+    private int generation;
+
+    // Debug accounting of bytes this pool allocates
+    private long bytesThisFrame;
+    private long bytesLastFrame;
+    private long totalBytes;
+    private long frames;
+
+    public FrameBufferPool(int maxPooled) {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("maxPooled must be at least 1");
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Starts a new frame and returns a free input buffer for it. If the input
+     * resolution or the format differs from the last call, pooled buffers of
+     * the old shape are dropped and a new one is allocated.
+     */
+    public synchronized InputBuffer acquire(InferenceBackend.InputFormat format, int inputWidth, int inputHeight) {
+        return acquireBatch(format, inputWidth, inputHeight, 1);
+    }
+
+    // Batched variant: one buffer holding batchSize images
+    public synchronized InputBuffer acquireBatch(InferenceBackend.InputFormat format,
+                                                 int inputWidth, int inputHeight, int batchSize) {
+        bytesLastFrame = bytesThisFrame;
+        bytesThisFrame = 0;
+        frames++;
+
+        if (format != this.format || inputWidth != this.inputWidth || inputHeight != this.inputHeight
+                || batchSize != this.batchSize) {
+            this.format = format;
+            this.inputWidth = inputWidth;
+            this.inputHeight = inputHeight;
+            this.batchSize = batchSize;
+            generation++;
+            free.clear();
+        }
+
+        InputBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            buffer = new InputBuffer(format, inputWidth, inputHeight, batchSize, generation);
+            recordAllocation(buffer.sizeInBytes());
+        }
+        return buffer;
+    }
+
+    // Returns a buffer to the pool; buffers from an older resolution are dropped
+    public synchronized void release(InputBuffer buffer) {
+        if (buffer != null && buffer.generation == generation && free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+
+    public synchronized void recordAllocation(long bytes) {
+        bytesThisFrame += bytes;
+        totalBytes += bytes;
+    }
+
+    // Bytes allocated while preparing the previous complete frame
+    public synchronized long getBytesAllocatedLastFrame() {
+        return bytesLastFrame;
+    }
+
+    public synchronized long getTotalBytesAllocated() {
+        return totalBytes;
+    }
+
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    // Number of times the buffer shape changed, including the first allocation
+    public synchronized int getReallocationCount() {
+        return generation;
+    }
+}
@@ -0,0 +1,179 @@
+package com.programminghut.realtime_object;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Streams raw camera frames to a file, exactly as the detector sees them:
+ * the three YUV planes with their strides, rotation and timestamp. record
+ * only copies the planes into a free preallocated slot and returns; a writer
+ * thread does the disk I/O. When every slot is still waiting to be written
+ * the frame is dropped, so the caller never stalls. Read recordings back with
+ * FrameReplay.
+ *
+ * Format, little-endian: a 16-byte file header (MAGIC, VERSION, 8 reserved
+ * bytes), then per frame a RECORD_HEADER_SIZE-byte header followed by the Y,
+ * U and V plane bytes. The header holds the length of the rest of the record,
+ * timestamp, width, height, rotation, the six strides and the three plane
+ * lengths.
+ */
+public class FrameRecorder implements Closeable {
+    static final int MAGIC = 0x4D524652;  // "RFRM"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 60;
+
+    private static class Slot {
+        ByteBuffer data = ByteBuffer.allocateDirect(0);
+    }
+
+    // Marks the end of the stream for the writer thread
+    private static final Slot END = new Slot();
+
+    private final File file;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final ArrayBlockingQueue<Slot> filledSlots;
+    private Thread writer;
+    private FileChannel channel;
+    private volatile IOException failure;
+    private volatile boolean open;
+
+    private volatile long recorded;
+    private volatile long dropped;
+    private volatile long bytesWritten;
+
+    // slots is how many frames may wait for the disk at once
+    public FrameRecorder(File file, int slots) {
+        this.file = file;
+        freeSlots = new ArrayBlockingQueue<>(slots);
+        filledSlots = new ArrayBlockingQueue<>(slots + 1);
+        for (int i = 0; i < slots; i++) {
+            freeSlots.add(new Slot());
+        }
+    }
+
+    public void start() throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(0L);
+        header.flip();
+        writeFully(header);
+        open = true;
+        writer = new Thread(this::writeLoop, "frame-recorder");
+        writer.start();
+    }
+
+    /**
+     * Copies frame into a free slot and queues it for writing. Returns false
+     * if the frame was dropped because no slot was free or the recorder is
+     * not open. Call from one thread only.
+     */
+    public boolean record(YuvFrame frame) {
+        Slot slot = open && failure == null ? freeSlots.poll() : null;
+        if (slot == null) {
+            dropped++;
+            return false;
+        }
+        int yLength = frame.yBuffer.limit();
+        int uLength = frame.uBuffer.limit();
+        int vLength = frame.vBuffer.limit();
+        int size = RECORD_HEADER_SIZE + yLength + uLength + vLength;
+        if (slot.data.capacity() < size) {
+            // Only the first frames, or after a resolution change
+            slot.data = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer data = slot.data;
+        data.clear();
+        data.putInt(size - 4)
+                .putLong(frame.timestampNs)
+                .putInt(frame.width).putInt(frame.height).putInt(frame.rotationDegrees)
+                .putInt(frame.yRowStride).putInt(frame.yPixelStride)
+                .putInt(frame.uRowStride).putInt(frame.uPixelStride)
+                .putInt(frame.vRowStride).putInt(frame.vPixelStride)
+                .putInt(yLength).putInt(uLength).putInt(vLength);
+        putPlane(data, frame.yBuffer);
+        putPlane(data, frame.uBuffer);
+        putPlane(data, frame.vBuffer);
+        data.flip();
+
+        filledSlots.add(slot);
+        recorded++;
+        return true;
+    }
+
+    // Writes out every queued frame, then closes the file; throws if any write failed.
+    // Call from the recording thread, or once it no longer records.
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        filledSlots.add(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Slot slot;
+            try {
+                slot = filledSlots.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == END) {
+                return;
+            }
+            try {
+                if (failure == null) {
+                    writeFully(slot.data);
+                }
+            } catch (IOException e) {
+                // Stop recording; close reports the failure
+                failure = e;
+            }
+            freeSlots.add(slot);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+    }
+
+    // The whole plane, from index 0 to its limit, regardless of the buffer's position
+    private static void putPlane(ByteBuffer out, ByteBuffer plane) {
+        ByteBuffer source = plane.duplicate();
+        source.position(0);
+        out.put(source);
+    }
+
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    // Frames dropped because the disk fell behind
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
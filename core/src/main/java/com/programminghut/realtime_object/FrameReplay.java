@@ -0,0 +1,142 @@
+package com.programminghut.realtime_object;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a FrameRecorder recording by memory-mapping it. Frames wrap the
+ * mapped planes without copying, with the recorded strides, rotation and
+ * timestamps, so replayed frames reach the detector exactly as the camera
+ * delivered them. A record cut short (recording killed mid-write) ends the
+ * recording; a record whose planes don't fit inside it is corrupt and fails
+ * the open.
+ */
+public class FrameReplay implements Closeable {
+    public enum Pacing {
+        // Frames are delivered as far apart as they were recorded
+        RECORDED,
+        // Frames are delivered back to back
+        MAX
+    }
+
+    public interface Sink {
+        void onFrame(YuvFrame frame) throws Exception;
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    // Per frame: plane views and the header offset
+    private ByteBuffer[] planes = new ByteBuffer[3 * 64];
+    private int[] offsets = new int[64];
+    private int frameCount;
+
+    public FrameReplay(File recording) throws IOException {
+        file = new RandomAccessFile(recording, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Recordings over 2 GB are not supported: " + recording);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.limit() < FrameRecorder.FILE_HEADER_SIZE
+                    || mapped.getInt(0) != FrameRecorder.MAGIC
+                    || mapped.getInt(4) != FrameRecorder.VERSION) {
+                throw new IOException("Not a frame recording: " + recording);
+            }
+            index();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void index() throws IOException {
+        int position = FrameRecorder.FILE_HEADER_SIZE;
+        int end = mapped.limit();
+        while (end - position >= FrameRecorder.RECORD_HEADER_SIZE) {
+            int recordEnd = position + 4 + mapped.getInt(position);
+            int yLength = mapped.getInt(position + 48);
+            int uLength = mapped.getInt(position + 52);
+            int vLength = mapped.getInt(position + 56);
+            if (recordEnd > end || recordEnd < position + FrameRecorder.RECORD_HEADER_SIZE) {
+                break;
+            }
+            int plane = position + FrameRecorder.RECORD_HEADER_SIZE;
+            // In longs, so corrupt lengths can't overflow past the check
+            if (yLength < 0 || uLength < 0 || vLength < 0
+                    || (long) yLength + uLength + vLength > recordEnd - plane) {
+                throw new IOException("Frame " + frameCount + " has planes (" + yLength + " + " + uLength
+                        + " + " + vLength + " bytes) larger than its record (" + (recordEnd - plane) + " bytes)");
+            }
+            if (frameCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, frameCount * 2);
+                planes = Arrays.copyOf(planes, 3 * frameCount * 2);
+            }
+            offsets[frameCount] = position;
+            planes[3 * frameCount] = view(plane, yLength);
+            planes[3 * frameCount + 1] = view(plane + yLength, uLength);
+            planes[3 * frameCount + 2] = view(plane + yLength + uLength, vLength);
+            frameCount++;
+            position = recordEnd;
+        }
+    }
+
+    private ByteBuffer view(int position, int length) {
+        ByteBuffer view = mapped.duplicate();
+        view.position(position).limit(position + length);
+        return view.slice();
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getTimestampNs(int index) {
+        return mapped.getLong(offsets[index] + 4);
+    }
+
+    // Points out at frame index; valid while this replay is open
+    public YuvFrame frame(int index, YuvFrame out) {
+        int header = offsets[index];
+        out.set(mapped.getInt(header + 12), mapped.getInt(header + 16), mapped.getInt(header + 20),
+                mapped.getLong(header + 4));
+        out.setY(planes[3 * index], mapped.getInt(header + 24), mapped.getInt(header + 28));
+        out.setU(planes[3 * index + 1], mapped.getInt(header + 32), mapped.getInt(header + 36));
+        out.setV(planes[3 * index + 2], mapped.getInt(header + 40), mapped.getInt(header + 44));
+        return out;
+    }
+
+    /**
+     * Hands every frame to sink in order, on the calling thread, reusing one
+     * YuvFrame. Returns the wall time taken in nanoseconds.
+     */
+    public long replay(Sink sink, Pacing pacing) throws Exception {
+        YuvFrame frame = new YuvFrame();
+        long start = System.nanoTime();
+        long firstTimestamp = frameCount > 0 ? getTimestampNs(0) : 0;
+        for (int i = 0; i < frameCount; i++) {
+            if (pacing == Pacing.RECORDED) {
+                long dueNanos = start + getTimestampNs(i) - firstTimestamp;
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                }
+            }
+            sink.onFrame(frame(i, frame));
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,78 @@
+package com.programminghut.realtime_object;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded hand-off between two pipeline stages. When full, the drop policy
+ * decides which item is discarded; the discarded item is returned from
+ * offer so the producer can recycle its buffers.
+ */
+public class HandoffQueue<T> {
+    public enum DropPolicy {
+        // Discard the oldest queued item so the consumer always sees the newest
+        LATEST_WINS,
+        // Discard the item being offered and keep what is already queued
+        DROP_NEWEST
+    }
+
+    private final ArrayDeque<T> items;
+    private final int capacity;
+    private final DropPolicy dropPolicy;
+    private long dropped;
+    private boolean closed;
+
+    public HandoffQueue(int capacity, DropPolicy dropPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.dropPolicy = dropPolicy;
+        this.items = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Queues item without blocking. Returns the item that was dropped to make
+     * room (possibly item itself), or null if nothing was dropped.
+     */
+    public synchronized T offer(T item) {
+        if (closed) {
+            dropped++;
+            return item;
+        }
+        T discarded = null;
+        if (items.size() >= capacity) {
+            dropped++;
+            if (dropPolicy == DropPolicy.DROP_NEWEST) {
+                return item;
+            }
+            discarded = items.pollFirst();
+        }
+        items.addLast(item);
+        notifyAll();
+        return discarded;
+    }
+
+    // Blocks until an item is available; returns null once the queue is closed
+    public synchronized T take() throws InterruptedException {
+        while (items.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+        return items.pollFirst();
+    }
+
+    public synchronized T poll() {
+        return items.pollFirst();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+}
@@ -0,0 +1,104 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Sorts index arrays by a parallel score array without boxing.
+ */
+public final class IndexSort {
+    private IndexSort() {}
+
+    // Fills order[0..n) with 0..n-1 sorted by scores descending
+    public static void sortByScoreDescending(int[] order, float[] scores, int n) {
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        quickSort(order, scores, 0, n - 1);
+    }
+
+    /**
+     * Fills order[0..n) with 0..n-1 and moves the k highest-scoring indices to
+     * the front, sorted descending, in O(n + k log k). Returns min(k, n).
+     */
+    public static int selectTopK(int[] order, float[] scores, int n, int k) {
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (k >= n) {
+            quickSort(order, scores, 0, n - 1);
+            return n;
+        }
+        if (k <= 0) {
+            return 0;
+        }
+
+        // Quickselect until position k-1 holds the k-th highest score
+        int lo = 0;
+        int hi = n - 1;
+        int target = k - 1;
+        while (lo < hi) {
+            float pivot = scores[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (scores[order[i]] > pivot) i++;
+                while (scores[order[j]] < pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                hi = j;
+            } else if (target >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        quickSort(order, scores, 0, k - 1);
+        return k;
+    }
+
+    private static void quickSort(int[] order, float[] scores, int lo, int hi) {
+        while (hi - lo > 16) {
+            float pivot = scores[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (scores[order[i]] > pivot) i++;
+                while (scores[order[j]] < pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller side to bound stack depth
+            if (j - lo < hi - i) {
+                quickSort(order, scores, lo, j);
+                lo = i;
+            } else {
+                quickSort(order, scores, i, hi);
+                hi = j;
+            }
+        }
+        insertionSort(order, scores, lo, hi);
+    }
+
+    private static void insertionSort(int[] order, float[] scores, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            int value = order[i];
+            float score = scores[value];
+            int j = i - 1;
+            while (j >= lo && scores[order[j]] < score) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = value;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.programminghut.realtime_object;
+
+import java.io.IOException;
+
+/**
+ * A model runtime. The Detector prepares an input buffer in the format the
+ * backend asks for, calls run, then decode to collect candidates in
+ * normalized frame coordinates. Calls to one backend instance come from one
+ * thread at a time.
+ */
+public interface InferenceBackend {
+    enum Kind { PYTORCH, TFLITE }
+
+    enum InputFormat {
+        FLOAT_CHW,  // Normalized floats, planar RGB
+        UINT8_HWC   // Raw 0-255 bytes, interleaved RGB
+    }
+
+    String name();
+
+    // Loads the model file at path; numThreads 0 keeps the runtime default
+    void load(String path, int numThreads) throws IOException;
+
+    // Changes the intra-op thread count for the following runs
+    void setNumThreads(int numThreads);
+
+    InputFormat inputFormat();
+
+    // Square input size the model was exported with, or 0 if any size works
+    int fixedInputSize();
+
+    // Largest InputBuffer.batchSize run accepts
+    int maxBatchSize();
+
+    // Runs one forward over every image in input; the output stays in the backend until the next run
+    void run(FrameBufferPool.InputBuffer input) throws Exception;
+
+    /**
+     * Decodes the last run's output for one image of the batch into out
+     * (which is cleared first), mapping boxes back through transform.
+     * Returns the candidate count.
+     */
+    int decode(int batchIndex, PreprocessTransform transform, float threshold, int source, CandidateBuffer out);
+
+    void close();
+}
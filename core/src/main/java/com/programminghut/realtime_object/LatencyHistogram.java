@@ -0,0 +1,118 @@
+package com.programminghut.realtime_object;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: 16 linear sub-buckets
+ * per power of two of microseconds, so any recorded value is reported within
+ * about 6%. Recording is a couple of atomic increments and never allocates;
+ * any number of threads may record while one reader takes snapshots.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values up to 2^27 us (~2 minutes); longer ones land in the last bucket
+    private static final int MAX_EXPONENT = 27;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketFor(micros));
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value, in microseconds, that falls into bucket
+    static long upperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Moves everything recorded so far into a snapshot and starts a new
+     * interval. Each bucket is swapped atomically, so a value recorded
+     * concurrently lands in either this interval or the next, never neither.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy, maxMicros.getAndSet(0));
+    }
+
+    /** Counts for one interval. Snapshots can be merged to cover longer periods. */
+    public static class Snapshot {
+        private final long[] counts;
+        private long maxMicros;
+        private long total;
+
+        public Snapshot() {
+            this(new long[BUCKET_COUNT], 0);
+        }
+
+        Snapshot(long[] counts, long maxMicros) {
+            this.counts = counts;
+            this.maxMicros = maxMicros;
+            for (long count : counts) {
+                total += count;
+            }
+        }
+
+        public void add(Snapshot other) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            maxMicros = Math.max(maxMicros, other.maxMicros);
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        // Value at or below which the given fraction (0-1) of samples fall, in milliseconds
+        public float percentileMs(float fraction) {
+            if (total == 0) {
+                return 0f;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundMicros(i), maxMicros) / 1000f;
+                }
+            }
+            return maxMicros / 1000f;
+        }
+
+        public float maxMs() {
+            return maxMicros / 1000f;
+        }
+    }
+}
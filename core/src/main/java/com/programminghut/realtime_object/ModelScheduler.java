@@ -0,0 +1,120 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Decides per frame which models run. Each model has a cadence (run every
+ * Nth frame), a deadline measured from frame arrival and a limit on how
+ * many frames in a row it may be deferred. A due model whose expected cost
+ * would finish past its deadline is deferred to a later frame, so a late
+ * frame sheds low-priority work instead of running long. Models are asked in
+ * priority order, highest first. Callers reuse a skipped model's last
+ * results. Drive it from the inference thread; isDue may be asked from
+ * another thread, e.g. to prepare a model's extra inputs only for frames it
+ * will run on.
+ */
+public class ModelScheduler {
+    // Weight of the newest sample in the per-model cost average
+    private static final float COST_ALPHA = 0.2f;
+
+    private final int[] cadences;
+    private final long[] deadlineNanos;
+    private final int[] maxDeferFrames;
+
+    private final int[] framesSinceRun;
+    private final int[] deferredFrames;
+    private final float[] averageCostNanos;
+
+    private long runCount;
+    private long cadenceSkipCount;
+    private long deadlineDeferCount;
+
+    // Every model starts at cadence 1, no deadline
+    public ModelScheduler(int modelCount) {
+        cadences = new int[modelCount];
+        deadlineNanos = new long[modelCount];
+        maxDeferFrames = new int[modelCount];
+        framesSinceRun = new int[modelCount];
+        deferredFrames = new int[modelCount];
+        averageCostNanos = new float[modelCount];
+        for (int i = 0; i < modelCount; i++) {
+            configure(i, 1, 0f, 0);
+        }
+    }
+
+    /**
+     * cadence 1 runs the model every frame, 3 every third frame. deadlineMs
+     * 0 means no deadline. After maxDeferFrames deferrals in a row the model
+     * runs regardless of the deadline, so its results can't go stale forever.
+     */
+    public synchronized void configure(int model, int cadence, float deadlineMs, int maxDeferFrames) {
+        if (cadence < 1) {
+            throw new IllegalArgumentException("cadence must be at least 1");
+        }
+        cadences[model] = cadence;
+        deadlineNanos[model] = (long) (deadlineMs * 1e6f);
+        this.maxDeferFrames[model] = maxDeferFrames;
+        // Due on the next frame
+        framesSinceRun[model] = cadence;
+    }
+
+    // Call once per frame, before asking about any model
+    public synchronized void beginFrame() {
+        for (int i = 0; i < framesSinceRun.length; i++) {
+            framesSinceRun[i]++;
+        }
+    }
+
+    /**
+     * Whether model's cadence lets it run on the next frame to begin. A
+     * frame already prepared but not yet begun can make this one frame
+     * early, never late.
+     */
+    public synchronized boolean isDue(int model) {
+        return framesSinceRun[model] + 1 >= cadences[model];
+    }
+
+    /**
+     * Whether model should run now for a frame that arrived at arrivalNanos.
+     * A false return for a due model counts as a deferral.
+     */
+    public synchronized boolean shouldRun(int model, long arrivalNanos, long nowNanos) {
+        if (framesSinceRun[model] < cadences[model]) {
+            cadenceSkipCount++;
+            return false;
+        }
+        long deadline = deadlineNanos[model];
+        if (deadline > 0 && deferredFrames[model] < maxDeferFrames[model]
+                && nowNanos - arrivalNanos + (long) averageCostNanos[model] > deadline) {
+            deferredFrames[model]++;
+            deadlineDeferCount++;
+            return false;
+        }
+        return true;
+    }
+
+    // Reports a completed run and its cost (forward + postprocess)
+    public synchronized void onRun(int model, long costNanos) {
+        framesSinceRun[model] = 0;
+        deferredFrames[model] = 0;
+        float average = averageCostNanos[model];
+        averageCostNanos[model] = average == 0 ? costNanos : average + COST_ALPHA * (costNanos - average);
+        runCount++;
+    }
+
+    public synchronized float getAverageCostMs(int model) {
+        return averageCostNanos[model] / 1e6f;
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    // Model runs skipped because the model wasn't due yet
+    public synchronized long getCadenceSkipCount() {
+        return cadenceSkipCount;
+    }
+
+    // Due model runs pushed to a later frame to meet a deadline
+    public synchronized long getDeadlineDeferCount() {
+        return deadlineDeferCount;
+    }
+}
@@ -0,0 +1,41 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Static description of a detection model: its asset, the backend that runs
+ * it, its label set and decoding threshold. Output layout details are left
+ * to the backend.
+ */
+public class ModelSpec {
+    public final String name;
+    public final String assetName;
+    public final int type;                // Detection.type of its results
+    public final String[] classNames;
+    public final String fallbackLabel;   // Label for class ids past classNames
+    public final float confidenceThreshold;
+    public final InferenceBackend.Kind backend;
+    // Model class id -> index into classNames, -1 to drop; null when the ids already match
+    public final int[] classMap;
+
+    public ModelSpec(String name, String assetName, int type, String[] classNames,
+                     String fallbackLabel, float confidenceThreshold) {
+        this(name, assetName, type, classNames, fallbackLabel, confidenceThreshold,
+                InferenceBackend.Kind.PYTORCH, null);
+    }
+
+    public ModelSpec(String name, String assetName, int type, String[] classNames,
+                     String fallbackLabel, float confidenceThreshold,
+                     InferenceBackend.Kind backend, int[] classMap) {
+        this.name = name;
+        this.assetName = assetName;
+        this.type = type;
+        this.classNames = classNames;
+        this.fallbackLabel = fallbackLabel;
+        this.confidenceThreshold = confidenceThreshold;
+        this.backend = backend;
+        this.classMap = classMap;
+    }
+
+    public String labelFor(int classId) {
+        return classId >= 0 && classId < classNames.length ? classNames[classId] : fallbackLabel;
+    }
+}
@@ -0,0 +1,117 @@
+package com.programminghut.realtime_object;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides whether a frame is worth running the models on. Builds a small
+ * luma thumbnail straight from the Y plane (each cell averages a 2x2 sample)
+ * and compares it with the thumbnail of the last frame that ran. Below the
+ * threshold the previous detections can be reused, up to maxStaleFrames in
+ * a row. A 32x24 thumbnail reads about 3k bytes, so the check costs a few
+ * microseconds.
+ */
+public class MotionGate {
+    private final int thumbWidth;
+    private final int thumbHeight;
+    private final float threshold;
+    private final int maxStaleFrames;
+
+    private int[] reference;
+    private int[] current;
+    private boolean hasReference;
+    private int referenceWidth = -1;
+    private int referenceHeight = -1;
+    private int staleFrames;
+
+    private long runCount;
+    private long skipCount;
+    private float lastDifference;
+
+    /**
+     * threshold is the mean absolute luma difference (0-255) below which a
+     * frame counts as unchanged.
+     */
+    public MotionGate(int thumbWidth, int thumbHeight, float threshold, int maxStaleFrames) {
+        this.thumbWidth = thumbWidth;
+        this.thumbHeight = thumbHeight;
+        this.threshold = threshold;
+        this.maxStaleFrames = maxStaleFrames;
+        this.reference = new int[thumbWidth * thumbHeight];
+        this.current = new int[thumbWidth * thumbHeight];
+    }
+
+    // Returns true if the models should run on this frame
+    public synchronized boolean shouldRun(YuvFrame frame) {
+        sample(frame, current);
+
+        boolean sameGeometry = frame.width == referenceWidth && frame.height == referenceHeight;
+        boolean run;
+        if (!hasReference || !sameGeometry || staleFrames >= maxStaleFrames) {
+            lastDifference = Float.NaN;
+            run = true;
+        } else {
+            long total = 0;
+            for (int i = 0; i < current.length; i++) {
+                total += Math.abs(current[i] - reference[i]);
+            }
+            lastDifference = (float) total / current.length;
+            run = lastDifference >= threshold;
+        }
+
+        if (run) {
+            // This frame becomes the reference for the next comparisons
+            int[] swap = reference;
+            reference = current;
+            current = swap;
+            hasReference = true;
+            referenceWidth = frame.width;
+            referenceHeight = frame.height;
+            staleFrames = 0;
+            runCount++;
+        } else {
+            staleFrames++;
+            skipCount++;
+        }
+        return run;
+    }
+
+    // Forget the reference, e.g. after the camera was rebound
+    public synchronized void reset() {
+        hasReference = false;
+        staleFrames = 0;
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    public synchronized long getSkipCount() {
+        return skipCount;
+    }
+
+    // Mean absolute difference of the last check, NaN if it was forced
+    public synchronized float getLastDifference() {
+        return lastDifference;
+    }
+
+    private void sample(YuvFrame frame, int[] out) {
+        ByteBuffer y = frame.yBuffer;
+        int rowStride = frame.yRowStride;
+        int pixelStride = frame.yPixelStride;
+        int maxX = frame.width - 2;
+        int maxY = frame.height - 2;
+
+        for (int ty = 0; ty < thumbHeight; ty++) {
+            int sy = Math.min(maxY, (int) ((ty + 0.5f) * frame.height / thumbHeight));
+            int row0 = sy * rowStride;
+            int row1 = row0 + rowStride;
+            for (int tx = 0; tx < thumbWidth; tx++) {
+                int sx = Math.min(maxX, (int) ((tx + 0.5f) * frame.width / thumbWidth));
+                int col0 = sx * pixelStride;
+                int col1 = col0 + pixelStride;
+                out[ty * thumbWidth + tx] = ((y.get(row0 + col0) & 0xFF) + (y.get(row0 + col1) & 0xFF)
+                        + (y.get(row1 + col0) & 0xFF) + (y.get(row1 + col1) & 0xFF)) >> 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.programminghut.realtime_object;
+
+import java.util.Arrays;
+
+/**
+ * Non-maximum suppression over primitive candidate buffers.
+ *
+ * Candidates are capped to the top K by score with a partial selection, then
+ * suppressed class by class (or across classes when classAware is off). Kept
+ * boxes are registered in a coarse grid over the normalized frame so each
+ * candidate is only compared with boxes in the cells it overlaps.
+ *
+ * Modes:
+ * GREEDY - classic hard suppression above the IoU threshold.
+ * SOFT   - Gaussian Soft-NMS: overlapping scores decay instead of being dropped.
+ * MERGE  - overlapping boxes are fused into the best one, weighted by score.
+ *          With classAware off this deduplicates results of several models.
+ *
+ * Not thread-safe: every thread needs its own engine.
+ */
+public class NmsEngine {
+    public enum Mode { GREEDY, SOFT, MERGE }
+
+    // Cells per axis of the binning grid over [0, 1] x [0, 1]
+    private static final int GRID_SIZE = 16;
+
+    private final Mode mode;
+    private final float iouThreshold;
+    private final int topK;
+    private final boolean classAware;
+    private float softSigma = 0.5f;
+    private float softScoreThreshold = 0.05f;
+
+    // Scratch, grown on demand
+    private int[] order = new int[256];
+    private int[] kept = new int[256];
+    private float[] workScores = new float[256];
+    private boolean[] done = new boolean[256];
+    private int[] checkedStamp = new int[256];
+    private int stamp;
+
+    // Grid as per-cell linked lists of candidate indices
+    private final int[] cellHead = new int[GRID_SIZE * GRID_SIZE];
+    private int[] entryNext = new int[1024];
+    private int[] entryIndex = new int[1024];
+    private int entryCount;
+
+    // MERGE accumulators per kept candidate
+    private float[] sumWeight = new float[256];
+    private float[] sumLeft = new float[256];
+    private float[] sumTop = new float[256];
+    private float[] sumRight = new float[256];
+    private float[] sumBottom = new float[256];
+
+    public NmsEngine(Mode mode, float iouThreshold, int topK, boolean classAware) {
+        this.mode = mode;
+        this.iouThreshold = iouThreshold;
+        this.topK = topK;
+        this.classAware = classAware;
+    }
+
+    // Gaussian decay width and the score below which SOFT drops a candidate
+    public void setSoftParameters(float sigma, float scoreThreshold) {
+        this.softSigma = sigma;
+        this.softScoreThreshold = scoreThreshold;
+    }
+
+    /**
+     * Suppresses in and writes the survivors to out, highest score first.
+     * in is left untouched. Returns the number of survivors.
+     */
+    public int run(CandidateBuffer in, CandidateBuffer out) {
+        out.clear();
+        int n = in.count;
+        if (n == 0) {
+            return 0;
+        }
+        ensureCapacity(n);
+        int k = IndexSort.selectTopK(order, in.scores, n, topK > 0 ? topK : n);
+
+        Arrays.fill(cellHead, -1);
+        entryCount = 0;
+
+        if (mode == Mode.SOFT) {
+            runSoft(in, out, k);
+        } else {
+            runGreedy(in, out, k, mode == Mode.MERGE);
+        }
+        return out.count;
+    }
+
+    private void runGreedy(CandidateBuffer in, CandidateBuffer out, int k, boolean merge) {
+        int keptCount = 0;
+        for (int i = 0; i < k; i++) {
+            int candidate = order[i];
+            int keeper = findOverlap(in, candidate);
+            if (keeper >= 0) {
+                if (merge) {
+                    accumulate(in, keeper, candidate);
+                }
+                continue;
+            }
+            if (merge) {
+                sumWeight[candidate] = 0;
+                sumLeft[candidate] = 0;
+                sumTop[candidate] = 0;
+                sumRight[candidate] = 0;
+                sumBottom[candidate] = 0;
+                accumulate(in, candidate, candidate);
+            }
+            insert(in, candidate);
+            kept[keptCount++] = candidate;
+            out.add(in, candidate);
+        }
+
+        if (merge) {
+            // Replace each keeper's box with the score-weighted mean of its cluster
+            for (int o = 0; o < keptCount; o++) {
+                int candidate = kept[o];
+                float w = sumWeight[candidate];
+                out.left[o] = sumLeft[candidate] / w;
+                out.top[o] = sumTop[candidate] / w;
+                out.right[o] = sumRight[candidate] / w;
+                out.bottom[o] = sumBottom[candidate] / w;
+            }
+        }
+    }
+
+    private void accumulate(CandidateBuffer in, int keeper, int candidate) {
+        float w = in.scores[candidate];
+        sumWeight[keeper] += w;
+        sumLeft[keeper] += in.left[candidate] * w;
+        sumTop[keeper] += in.top[candidate] * w;
+        sumRight[keeper] += in.right[candidate] * w;
+        sumBottom[keeper] += in.bottom[candidate] * w;
+    }
+
+    private void runSoft(CandidateBuffer in, CandidateBuffer out, int k) {
+        // Register every capped candidate in the grid, then repeatedly take the best
+        // remaining one and decay its neighbours
+        for (int i = 0; i < k; i++) {
+            int candidate = order[i];
+            workScores[candidate] = in.scores[candidate];
+            done[candidate] = false;
+            insert(in, candidate);
+        }
+
+        float twoSigmaSq = 2f * softSigma * softSigma;
+        for (int picked = 0; picked < k; picked++) {
+            int best = -1;
+            float bestScore = softScoreThreshold;
+            for (int i = 0; i < k; i++) {
+                int candidate = order[i];
+                if (!done[candidate] && workScores[candidate] >= bestScore) {
+                    best = candidate;
+                    bestScore = workScores[candidate];
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            done[best] = true;
+            out.add(in.left[best], in.top[best], in.right[best], in.bottom[best],
+                    bestScore, in.classIds[best], in.sources[best]);
+
+            nextStamp();
+            int c0 = cell(in.left[best]);
+            int c1 = cell(in.right[best]);
+            int r0 = cell(in.top[best]);
+            int r1 = cell(in.bottom[best]);
+            for (int row = r0; row <= r1; row++) {
+                for (int col = c0; col <= c1; col++) {
+                    for (int e = cellHead[row * GRID_SIZE + col]; e >= 0; e = entryNext[e]) {
+                        int other = entryIndex[e];
+                        if (done[other] || checkedStamp[other] == stamp) continue;
+                        checkedStamp[other] = stamp;
+                        if (classAware && !sameClass(in, best, other)) continue;
+
+                        float iou = iou(in, best, other);
+                        if (iou > 0) {
+                            workScores[other] *= (float) Math.exp(-(iou * iou) / twoSigmaSq);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Returns a kept candidate that suppresses candidate, or -1
+    private int findOverlap(CandidateBuffer in, int candidate) {
+        nextStamp();
+        int c0 = cell(in.left[candidate]);
+        int c1 = cell(in.right[candidate]);
+        int r0 = cell(in.top[candidate]);
+        int r1 = cell(in.bottom[candidate]);
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                for (int e = cellHead[row * GRID_SIZE + col]; e >= 0; e = entryNext[e]) {
+                    int other = entryIndex[e];
+                    if (checkedStamp[other] == stamp) continue;
+                    checkedStamp[other] = stamp;
+                    if (classAware && !sameClass(in, other, candidate)) continue;
+                    if (iou(in, other, candidate) > iouThreshold) {
+                        return other;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Same class of the same model
+    private static boolean sameClass(CandidateBuffer in, int a, int b) {
+        return in.classIds[a] == in.classIds[b] && in.sources[a] == in.sources[b];
+    }
+
+    private void insert(CandidateBuffer in, int candidate) {
+        int c0 = cell(in.left[candidate]);
+        int c1 = cell(in.right[candidate]);
+        int r0 = cell(in.top[candidate]);
+        int r1 = cell(in.bottom[candidate]);
+        int needed = entryCount + (c1 - c0 + 1) * (r1 - r0 + 1);
+        if (needed > entryIndex.length) {
+            int capacity = Math.max(needed, entryIndex.length * 2);
+            entryIndex = Arrays.copyOf(entryIndex, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                int c = row * GRID_SIZE + col;
+                entryIndex[entryCount] = candidate;
+                entryNext[entryCount] = cellHead[c];
+                cellHead[c] = entryCount;
+                entryCount++;
+            }
+        }
+    }
+
+    private void nextStamp() {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(checkedStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    private static int cell(float coordinate) {
+        int c = (int) (coordinate * GRID_SIZE);
+        return c < 0 ? 0 : (c >= GRID_SIZE ? GRID_SIZE - 1 : c);
+    }
+
+    static float iou(CandidateBuffer c, int a, int b) {
+        float intersectionLeft = Math.max(c.left[a], c.left[b]);
+        float intersectionTop = Math.max(c.top[a], c.top[b]);
+        float intersectionRight = Math.min(c.right[a], c.right[b]);
+        float intersectionBottom = Math.min(c.bottom[a], c.bottom[b]);
+
+        if (intersectionRight < intersectionLeft || intersectionBottom < intersectionTop) {
+            return 0;
+        }
+
+        float intersectionArea = (intersectionRight - intersectionLeft) *
+                (intersectionBottom - intersectionTop);
+        float areaA = (c.right[a] - c.left[a]) * (c.bottom[a] - c.top[a]);
+        float areaB = (c.right[b] - c.left[b]) * (c.bottom[b] - c.top[b]);
+        float unionArea = areaA + areaB - intersectionArea;
+
+        return unionArea > 0 ? intersectionArea / unionArea : 0;
+    }
+
+    private void ensureCapacity(int n) {
+        if (order.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, order.length * 2);
+        order = new int[capacity];
+        kept = new int[capacity];
+        workScores = new float[capacity];
+        done = new boolean[capacity];
+        checkedStamp = new int[capacity];
+        stamp = 0;
+        sumWeight = new float[capacity];
+        sumLeft = new float[capacity];
+        sumTop = new float[capacity];
+        sumRight = new float[capacity];
+        sumBottom = new float[capacity];
+    }
+}
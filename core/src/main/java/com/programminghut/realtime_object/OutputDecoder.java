@@ -0,0 +1,65 @@
+package com.programminghut.realtime_object;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Decodes YOLO-style output rows [cx, cy, w, h, objectness, class scores...]
+ * in place from the output buffer into a CandidateBuffer, mapping boxes back
+ * to normalized frame coordinates. Allocates nothing.
+ */
+public class OutputDecoder {
+    // Box (4) + objectness (1) ahead of the class scores
+    public static final int HEADER_SIZE = 5;
+
+    /**
+     * Decodes every row whose objectness exceeds threshold. rowSize comes from
+     * the last dimension of the output tensor; the class count is rowSize - 5.
+     * source tags the candidates with the producing model. Returns the number
+     * of candidates written.
+     */
+    public static int decode(FloatBuffer output, int rowSize, float threshold,
+                             PreprocessTransform transform, int source, CandidateBuffer out) {
+        out.clear();
+        if (rowSize < HEADER_SIZE) {
+            return 0;
+        }
+
+        int base = output.position();
+        int rows = output.remaining() / rowSize;
+        for (int i = 0; i < rows; i++) {
+            int offset = base + i * rowSize;
+            float confidence = Math.min(output.get(offset + 4), 1.0f); // Cap confidence at 100%
+            if (confidence <= threshold) {
+                continue;
+            }
+
+            float x = output.get(offset);
+            float y = output.get(offset + 1);
+            float w = output.get(offset + 2);
+            float h = output.get(offset + 3);
+
+            // Best class score
+            int classId = 0;
+            float maxProb = 0;
+            for (int j = HEADER_SIZE; j < rowSize; j++) {
+                float prob = output.get(offset + j);
+                if (prob > maxProb) {
+                    maxProb = prob;
+                    classId = j - HEADER_SIZE;
+                }
+            }
+
+            // Map back through the letterbox to relative frame coordinates (0-1)
+            out.add(
+                    transform.toFrameX(x - w / 2),
+                    transform.toFrameY(y - h / 2),
+                    transform.toFrameX(x + w / 2),
+                    transform.toFrameY(y + h / 2),
+                    confidence,
+                    classId,
+                    source
+            );
+        }
+        return out.count;
+    }
+}
@@ -0,0 +1,43 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Several images preprocessed for one batched forward per model. A model's
+ * images are split into chunks of at most its backend's batch size; models
+ * with the same input format, size and chunking share chunks. Per-image
+ * survivors are kept so results can be merged across models afterwards.
+ */
+public class PreparedBatch {
+    public final int capacity;
+    public int count;
+    // Frames the chunks were sized for when the batch was begun
+    int expected;
+
+    // [model][chunk]
+    final FrameBufferPool.InputBuffer[][] chunks = new FrameBufferPool.InputBuffer[PreparedFrame.MAX_MODELS][];
+    final int[] chunkSizes = new int[PreparedFrame.MAX_MODELS];
+    // Index of an earlier model whose chunks this model reuses, or -1
+    final int[] sharedWith = new int[PreparedFrame.MAX_MODELS];
+
+    // [model][image]
+    final PreprocessTransform[][] transforms = new PreprocessTransform[PreparedFrame.MAX_MODELS][];
+    final CandidateBuffer[][] survivors = new CandidateBuffer[PreparedFrame.MAX_MODELS][];
+
+    // [image]
+    final long[] timestamps;
+    // False if the image could not be read; it gets an empty result
+    final boolean[] valid;
+
+    public PreparedBatch(int capacity) {
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        valid = new boolean[capacity];
+        for (int m = 0; m < PreparedFrame.MAX_MODELS; m++) {
+            transforms[m] = new PreprocessTransform[capacity];
+            survivors[m] = new CandidateBuffer[capacity];
+            for (int i = 0; i < capacity; i++) {
+                transforms[m][i] = new PreprocessTransform();
+                survivors[m][i] = new CandidateBuffer(64);
+            }
+        }
+    }
+}
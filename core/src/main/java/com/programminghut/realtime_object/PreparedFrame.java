@@ -0,0 +1,67 @@
+package com.programminghut.realtime_object;
+
+/**
+ * A camera frame after preprocessing: one filled input per model plus the
+ * geometry needed to map each model's output back to the frame. Models that
+ * take the same input format and size share one buffer. With tiling on, the
+ * sign model also gets batched tile inputs, and in ROI mode each model gets
+ * batched crops around its previous detections; a frame planned with crops
+ * only has no full-frame inputs. Holds no reference to the
+ * ImageProxy, which can be closed as soon as this is filled.
+ */
+public class PreparedFrame {
+    public static final int MAX_MODELS = 2;
+
+    public final FrameBufferPool.InputBuffer[] inputs = new FrameBufferPool.InputBuffer[MAX_MODELS];
+    public final PreprocessTransform[] transforms = new PreprocessTransform[MAX_MODELS];
+    public long timestampNs;
+    // System.nanoTime() when the camera frame reached the pipeline
+    public long arrivalNanos;
+
+    // Tile inputs for the sign model, tileChunkSize tiles per batched chunk; 0 tiles when off
+    public final FrameBufferPool.InputBuffer[] tileChunks = new FrameBufferPool.InputBuffer[TileLayout.MAX_TILES];
+    public final PreprocessTransform[] tileTransforms = new PreprocessTransform[TileLayout.MAX_TILES];
+    public int tileCount;
+    public int tileChunkSize;
+
+    // False when only the ROI crops run, and inputs are null
+    public boolean fullFrame = true;
+    // Per model: crop inputs, roiChunkSizes[m] crops per batched chunk; 0 crops when off
+    public final FrameBufferPool.InputBuffer[][] roiChunks =
+            new FrameBufferPool.InputBuffer[MAX_MODELS][RoiPlanner.MAX_ROIS];
+    public final PreprocessTransform[][] roiTransforms = new PreprocessTransform[MAX_MODELS][RoiPlanner.MAX_ROIS];
+    public final int[] roiCounts = new int[MAX_MODELS];
+    public final int[] roiChunkSizes = new int[MAX_MODELS];
+
+    public PreparedFrame() {
+        for (int i = 0; i < MAX_MODELS; i++) {
+            transforms[i] = new PreprocessTransform();
+        }
+        for (int i = 0; i < TileLayout.MAX_TILES; i++) {
+            tileTransforms[i] = new PreprocessTransform();
+        }
+        for (int m = 0; m < MAX_MODELS; m++) {
+            for (int i = 0; i < RoiPlanner.MAX_ROIS; i++) {
+                roiTransforms[m][i] = new PreprocessTransform();
+            }
+        }
+    }
+
+    public int tileChunkCount() {
+        return tileCount == 0 ? 0 : (tileCount + tileChunkSize - 1) / tileChunkSize;
+    }
+
+    public int roiChunkCount(int model) {
+        return roiCounts[model] == 0 ? 0 : (roiCounts[model] + roiChunkSizes[model] - 1) / roiChunkSizes[model];
+    }
+
+    // True if model i reuses the input of an earlier model
+    public boolean isShared(int i) {
+        for (int j = 0; j < i; j++) {
+            if (inputs[j] == inputs[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
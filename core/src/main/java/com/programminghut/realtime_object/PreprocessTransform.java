@@ -0,0 +1,128 @@
+package com.programminghut.realtime_object;
+
+/**
+ * The geometry used to turn a camera frame into model input: clockwise
+ * rotation, an optional crop, then a uniform scale and centered padding
+ * (letterbox). Maps model-space coordinates back to normalized coordinates
+ * of the rotated frame, which is what the preview shows.
+ */
+public class PreprocessTransform {
+    // Boxes this close (pixels) to a crop edge inside the frame count as cut by it
+    private static final float EDGE_MARGIN = 2f;
+
+    public int sourceWidth;
+    public int sourceHeight;
+    public int rotationDegrees;
+    public int rotatedWidth;
+    public int rotatedHeight;
+    // Region of the rotated frame that is converted; the whole frame unless cropped
+    public int cropLeft;
+    public int cropTop;
+    public int cropWidth;
+    public int cropHeight;
+
+    public int inputWidth;
+    public int inputHeight;
+    // Region of the input that holds image content; the rest is padding
+    public int contentLeft;
+    public int contentTop;
+    public int contentWidth;
+    public int contentHeight;
+
+    public void set(int sourceWidth, int sourceHeight, int rotationDegrees,
+                    int inputWidth, int inputHeight, boolean letterbox) {
+        boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        set(sourceWidth, sourceHeight, rotationDegrees,
+                0, 0, swapAxes ? sourceHeight : sourceWidth, swapAxes ? sourceWidth : sourceHeight,
+                inputWidth, inputHeight, letterbox);
+    }
+
+    // Crop coordinates are pixels of the rotated frame
+    public void set(int sourceWidth, int sourceHeight, int rotationDegrees,
+                    int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                    int inputWidth, int inputHeight, boolean letterbox) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.rotationDegrees = rotationDegrees;
+        boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        this.rotatedWidth = swapAxes ? sourceHeight : sourceWidth;
+        this.rotatedHeight = swapAxes ? sourceWidth : sourceHeight;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.cropWidth = cropWidth;
+        this.cropHeight = cropHeight;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+
+        if (letterbox) {
+            float scale = Math.min(inputWidth / (float) cropWidth, inputHeight / (float) cropHeight);
+            contentWidth = Math.min(inputWidth, Math.round(cropWidth * scale));
+            contentHeight = Math.min(inputHeight, Math.round(cropHeight * scale));
+        } else {
+            contentWidth = inputWidth;
+            contentHeight = inputHeight;
+        }
+        contentLeft = (inputWidth - contentWidth) / 2;
+        contentTop = (inputHeight - contentHeight) / 2;
+    }
+
+    public boolean equalsGeometry(PreprocessTransform other) {
+        return sourceWidth == other.sourceWidth && sourceHeight == other.sourceHeight
+                && rotationDegrees == other.rotationDegrees
+                && cropLeft == other.cropLeft && cropTop == other.cropTop
+                && cropWidth == other.cropWidth && cropHeight == other.cropHeight
+                && inputWidth == other.inputWidth && inputHeight == other.inputHeight
+                && contentWidth == other.contentWidth && contentHeight == other.contentHeight;
+    }
+
+    public void copyFrom(PreprocessTransform other) {
+        sourceWidth = other.sourceWidth;
+        sourceHeight = other.sourceHeight;
+        rotationDegrees = other.rotationDegrees;
+        rotatedWidth = other.rotatedWidth;
+        rotatedHeight = other.rotatedHeight;
+        cropLeft = other.cropLeft;
+        cropTop = other.cropTop;
+        cropWidth = other.cropWidth;
+        cropHeight = other.cropHeight;
+        inputWidth = other.inputWidth;
+        inputHeight = other.inputHeight;
+        contentLeft = other.contentLeft;
+        contentTop = other.contentTop;
+        contentWidth = other.contentWidth;
+        contentHeight = other.contentHeight;
+    }
+
+    // Input-space x (pixels) -> normalized x in the rotated frame, clamped to the crop
+    public float toFrameX(float inputX) {
+        return (cropLeft + clamp01((inputX - contentLeft) / contentWidth) * cropWidth) / rotatedWidth;
+    }
+
+    // Input-space y (pixels) -> normalized y in the rotated frame, clamped to the crop
+    public float toFrameY(float inputY) {
+        return (cropTop + clamp01((inputY - contentTop) / contentHeight) * cropHeight) / rotatedHeight;
+    }
+
+    public boolean isCropped() {
+        return cropLeft != 0 || cropTop != 0 || cropWidth != rotatedWidth || cropHeight != rotatedHeight;
+    }
+
+    /**
+     * True if a box (normalized frame coordinates) found in this crop, a
+     * tile or an ROI, touches one of its edges that lies inside the frame.
+     * Such a box is likely a fragment; a neighbouring tile or the
+     * whole-frame pass sees the object entire.
+     */
+    public boolean isCutByCropEdge(float left, float top, float right, float bottom) {
+        int cropRight = cropLeft + cropWidth;
+        int cropBottom = cropTop + cropHeight;
+        return (cropLeft > 0 && left * rotatedWidth <= cropLeft + EDGE_MARGIN)
+                || (cropTop > 0 && top * rotatedHeight <= cropTop + EDGE_MARGIN)
+                || (cropRight < rotatedWidth && right * rotatedWidth >= cropRight - EDGE_MARGIN)
+                || (cropBottom < rotatedHeight && bottom * rotatedHeight >= cropBottom - EDGE_MARGIN);
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
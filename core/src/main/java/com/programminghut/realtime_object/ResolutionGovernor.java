@@ -0,0 +1,104 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Picks the model input size that holds a target frame rate. Feeds on
+ * end-to-end frame latencies, smoothed with an exponential moving average.
+ * Steps down one size after the average stays over budget for a few frames,
+ * and steps up only when the next size is predicted (by pixel count) to stay
+ * well under budget for a longer run. A cooldown after each switch keeps it
+ * from oscillating.
+ */
+public class ResolutionGovernor {
+    public static final int[] DEFAULT_SIZES = {320, 416, 512, 640};
+
+    private static final float EMA_ALPHA = 0.2f;
+    // Hysteresis band around the frame budget
+    private static final float DOWN_MARGIN = 1.15f;
+    private static final float UP_MARGIN = 0.85f;
+    // Consecutive frames a condition must hold before switching
+    private static final int DOWN_FRAMES = 5;
+    private static final int UP_FRAMES = 30;
+    private static final int COOLDOWN_FRAMES = 15;
+
+    private final int[] sizes;
+    private final float budgetNanos;
+    private int index;
+    private float averageNanos = -1;
+    private int overBudgetFrames;
+    private int underBudgetFrames;
+    private int cooldown;
+    private int switchCount;
+
+    // sizes in ascending order; starts at the largest
+    public ResolutionGovernor(int[] sizes, float targetFps) {
+        if (sizes.length == 0 || targetFps <= 0) {
+            throw new IllegalArgumentException("need at least one size and a positive target FPS");
+        }
+        this.sizes = sizes.clone();
+        this.budgetNanos = 1e9f / targetFps;
+        this.index = sizes.length - 1;
+    }
+
+    public synchronized int getInputSize() {
+        return sizes[index];
+    }
+
+    /**
+     * Records one frame's latency. Returns true if the input size changed,
+     * in which case getInputSize() holds the new size.
+     */
+    public synchronized boolean onFrameLatency(long latencyNanos) {
+        averageNanos = averageNanos < 0
+                ? latencyNanos
+                : averageNanos + EMA_ALPHA * (latencyNanos - averageNanos);
+
+        if (cooldown > 0) {
+            cooldown--;
+            return false;
+        }
+
+        if (averageNanos > budgetNanos * DOWN_MARGIN && index > 0) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= DOWN_FRAMES) {
+                switchTo(index - 1);
+                return true;
+            }
+            return false;
+        }
+        overBudgetFrames = 0;
+
+        if (index < sizes.length - 1) {
+            float scale = (float) sizes[index + 1] / sizes[index];
+            float predicted = averageNanos * scale * scale;
+            if (predicted < budgetNanos * UP_MARGIN) {
+                if (++underBudgetFrames >= UP_FRAMES) {
+                    switchTo(index + 1);
+                    return true;
+                }
+                return false;
+            }
+        }
+        underBudgetFrames = 0;
+        return false;
+    }
+
+    public synchronized int getSwitchCount() {
+        return switchCount;
+    }
+
+    // Smoothed latency in milliseconds
+    public synchronized float getAverageLatencyMs() {
+        return Math.max(0f, averageNanos) / 1e6f;
+    }
+
+    private void switchTo(int newIndex) {
+        // Rescale the average so the new size starts from a sensible estimate
+        float scale = (float) sizes[newIndex] / sizes[index];
+        averageNanos *= scale * scale;
+        index = newIndex;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+        cooldown = COOLDOWN_FRAMES;
+        switchCount++;
+    }
+}
@@ -0,0 +1,178 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Plans region-of-interest passes around the previous frame's detections.
+ * Each box, grown by a margin, becomes a square crop of the full-resolution
+ * frame that its model runs on at roiInputSize, so a distant object keeps
+ * its pixels instead of being squeezed into the model input with the whole
+ * frame. Boxes inside an earlier crop share it. The full frame still runs
+ * every fullFrameInterval frames, and whenever there is nothing to follow,
+ * so new objects are found. When the crops would cost more than
+ * maxCostFraction of a full pass (a crowded scene) they are skipped and the
+ * full frame runs instead. A box too large for any crop, margin included,
+ * gets none: the crop would cut it into fragments, so the full frame runs
+ * to see it whole. update is called from the inference thread,
+ * beginFrame and roiRect from the preprocessing thread.
+ */
+public class RoiPlanner {
+    // Most crops per model and frame
+    public static final int MAX_ROIS = 8;
+    // Boxes remembered per model, best first
+    private static final int MAX_BOXES = 32;
+    // Crops are never upscaled more than this; past it the model gains no detail
+    private static final float MAX_UPSCALE = 2f;
+
+    private final int fullFrameInterval;
+    private final float margin;
+    private final int roiInputSize;
+    private final float maxCostFraction;
+
+    // Per model: left, top, right, bottom of each box in normalized frame coordinates
+    private final float[][] boxes;
+    private final int[] boxCounts;
+    // Per model: left, top, size of each square crop in rotated frame pixels
+    private final int[][] rois;
+    private final int[] roiCounts;
+    private int framesSinceFull;
+    // Set by planModel when a box could not fit in a crop
+    private boolean oversized;
+
+    private long fullFrames;
+    private long roiOnlyFrames;
+
+    /**
+     * margin is added on each side as a fraction of the box size, to allow
+     * for motion since the box was found. Crops run at roiInputSize.
+     */
+    public RoiPlanner(int modelCount, int fullFrameInterval, float margin, int roiInputSize, float maxCostFraction) {
+        if (fullFrameInterval < 1) {
+            throw new IllegalArgumentException("fullFrameInterval must be at least 1");
+        }
+        this.fullFrameInterval = fullFrameInterval;
+        this.margin = margin;
+        this.roiInputSize = roiInputSize;
+        this.maxCostFraction = maxCostFraction;
+        boxes = new float[modelCount][4 * MAX_BOXES];
+        boxCounts = new int[modelCount];
+        rois = new int[modelCount][3 * MAX_ROIS];
+        roiCounts = new int[modelCount];
+        // The first frame runs in full
+        framesSinceFull = fullFrameInterval;
+    }
+
+    public int getRoiInputSize() {
+        return roiInputSize;
+    }
+
+    // Remembers model's latest detections, normalized, in score order
+    public synchronized void update(int model, CandidateBuffer detections) {
+        int count = Math.min(detections.count, MAX_BOXES);
+        float[] out = boxes[model];
+        for (int i = 0; i < count; i++) {
+            out[4 * i] = detections.left[i];
+            out[4 * i + 1] = detections.top[i];
+            out[4 * i + 2] = detections.right[i];
+            out[4 * i + 3] = detections.bottom[i];
+        }
+        boxCounts[model] = count;
+    }
+
+    /**
+     * Plans the crops of the next frame, of frameWidth x frameHeight pixels
+     * after rotation, against a full pass at fullInputSize. Returns true if
+     * the full frame should run too.
+     */
+    public synchronized boolean beginFrame(int frameWidth, int frameHeight, int fullInputSize) {
+        int total = 0;
+        oversized = false;
+        for (int m = 0; m < rois.length; m++) {
+            roiCounts[m] = planModel(m, frameWidth, frameHeight);
+            total += roiCounts[m];
+        }
+        float roiCost = (float) total * roiInputSize * roiInputSize;
+        float fullCost = (float) rois.length * fullInputSize * fullInputSize;
+        if (roiCost > maxCostFraction * fullCost) {
+            total = 0;
+            for (int m = 0; m < rois.length; m++) {
+                roiCounts[m] = 0;
+            }
+        }
+
+        framesSinceFull++;
+        if (total == 0 || oversized || framesSinceFull >= fullFrameInterval) {
+            framesSinceFull = 0;
+            fullFrames++;
+            return true;
+        }
+        roiOnlyFrames++;
+        return false;
+    }
+
+    // Crops planned for model by the last beginFrame
+    public synchronized int roiCount(int model) {
+        return roiCounts[model];
+    }
+
+    // Writes crop i of model into rect as left, top, width, height in rotated frame pixels
+    public synchronized void roiRect(int model, int i, int[] rect) {
+        int[] planned = rois[model];
+        rect[0] = planned[3 * i];
+        rect[1] = planned[3 * i + 1];
+        rect[2] = planned[3 * i + 2];
+        rect[3] = planned[3 * i + 2];
+    }
+
+    private int planModel(int model, int frameWidth, int frameHeight) {
+        float[] modelBoxes = boxes[model];
+        int[] planned = rois[model];
+        int maxSide = Math.min(frameWidth, frameHeight);
+        int minSide = Math.min(maxSide, (int) Math.ceil(roiInputSize / MAX_UPSCALE));
+        int count = 0;
+        for (int b = 0; b < boxCounts[model] && count < MAX_ROIS; b++) {
+            float left = modelBoxes[4 * b] * frameWidth;
+            float top = modelBoxes[4 * b + 1] * frameHeight;
+            float right = modelBoxes[4 * b + 2] * frameWidth;
+            float bottom = modelBoxes[4 * b + 3] * frameHeight;
+            if (isCovered(planned, count, left, top, right, bottom)) {
+                continue;
+            }
+
+            float grown = Math.max(right - left, bottom - top) * (1f + 2f * margin);
+            if (grown > maxSide) {
+                oversized = true;
+                continue;
+            }
+            int side = Math.max(minSide, Math.min(maxSide, Math.round(grown)));
+            int cropLeft = Math.round((left + right - side) / 2f);
+            int cropTop = Math.round((top + bottom - side) / 2f);
+            planned[3 * count] = Math.max(0, Math.min(frameWidth - side, cropLeft));
+            planned[3 * count + 1] = Math.max(0, Math.min(frameHeight - side, cropTop));
+            planned[3 * count + 2] = side;
+            count++;
+        }
+        return count;
+    }
+
+    // True if the box lies inside one of the first count crops
+    private static boolean isCovered(int[] planned, int count, float left, float top, float right, float bottom) {
+        for (int i = 0; i < count; i++) {
+            int cropLeft = planned[3 * i];
+            int cropTop = planned[3 * i + 1];
+            int side = planned[3 * i + 2];
+            if (left >= cropLeft && top >= cropTop && right <= cropLeft + side && bottom <= cropTop + side) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Frames planned with a full pass
+    public synchronized long getFullFrameCount() {
+        return fullFrames;
+    }
+
+    // Frames planned with crops only
+    public synchronized long getRoiOnlyFrameCount() {
+        return roiOnlyFrames;
+    }
+}
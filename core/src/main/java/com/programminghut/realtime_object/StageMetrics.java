@@ -0,0 +1,61 @@
+package com.programminghut.realtime_object;
+
+import java.util.Locale;
+
+/**
+ * One LatencyHistogram per pipeline stage. Stages record from whatever
+ * thread they run on; a reporter periodically snapshots all of them.
+ */
+public class StageMetrics {
+    public enum Stage {
+        PREPROCESS,          // YUV planes -> model inputs
+        VEHICLE_FORWARD,
+        VEHICLE_POSTPROCESS, // Decode + NMS
+        SIGN_FORWARD,
+        SIGN_POSTPROCESS,
+        TRACK,               // Tracker update after the models
+        RENDER,              // Listener call: hand-off to the overlay
+        DRAW,                // Overlay canvas lock, draw and post, on the overlay thread
+        END_TO_END           // Camera frame arrival -> rendered
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    public StageMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].recordNanos(nanos);
+    }
+
+    // One snapshot per stage, indexed by Stage.ordinal()
+    public LatencyHistogram.Snapshot[] snapshotAndReset() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++) {
+            snapshots[i] = histograms[i].snapshotAndReset();
+        }
+        return snapshots;
+    }
+
+    // Fixed-width table of count and p50/p95/p99/max in milliseconds, one stage per line
+    public static String format(LatencyHistogram.Snapshot[] snapshots) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-20s %6s %7s %7s %7s %7s%n",
+                "stage", "n", "p50", "p95", "p99", "max"));
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot s = snapshots[stage.ordinal()];
+            if (s.getCount() == 0) {
+                continue;
+            }
+            text.append(String.format(Locale.US, "%-20s %6d %7.1f %7.1f %7.1f %7.1f%n",
+                    stage.name().toLowerCase(Locale.US), s.getCount(),
+                    s.percentileMs(0.5f), s.percentileMs(0.95f), s.percentileMs(0.99f), s.maxMs()));
+        }
+        return text.toString();
+    }
+}
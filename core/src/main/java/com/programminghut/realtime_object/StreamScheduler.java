@@ -0,0 +1,184 @@
+package com.programminghut.realtime_object;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares a pool of workers between several named frame streams. Each stream
+ * has a bounded queue with its own drop policy, and a priority. Workers take
+ * frames by stride scheduling: every backlogged stream gets a share of the
+ * workers proportional to its priority, so a busy stream can't starve the
+ * others. A stream that goes idle doesn't bank credit for later. Each stream
+ * has at most one frame in flight, so its results come back in order.
+ */
+public class StreamScheduler<T> {
+    // Pass a stream advances by per frame is STRIDE / priority
+    private static final long STRIDE = 1 << 20;
+
+    public static class Stream<T> {
+        public final String name;
+        public final int priority;
+        private final int capacity;
+        private final HandoffQueue.DropPolicy dropPolicy;
+        private final ArrayDeque<T> queue;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long pass;
+        private T current;
+        private boolean removed;
+
+        private volatile long submitted;
+        private volatile long dropped;
+        private volatile long completed;
+
+        Stream(String name, int priority, int capacity, HandoffQueue.DropPolicy dropPolicy) {
+            this.name = name;
+            this.priority = priority;
+            this.capacity = capacity;
+            this.dropPolicy = dropPolicy;
+            this.queue = new ArrayDeque<>(capacity);
+        }
+
+        // Frame handed to the worker that took this stream; read it on that worker
+        public T current() {
+            return current;
+        }
+
+        public long getSubmittedCount() {
+            return submitted;
+        }
+
+        // Frames dropped by the queue's drop policy
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        public long getCompletedCount() {
+            return completed;
+        }
+
+        // Latencies passed to complete since the last call
+        public LatencyHistogram.Snapshot snapshotLatency() {
+            return latency.snapshotAndReset();
+        }
+    }
+
+    private final List<Stream<T>> streams = new ArrayList<>();
+    // Pass of the stream dispatched last; streams that were idle start from here
+    private long virtualTime;
+    private boolean closed;
+
+    /**
+     * Adds a stream whose queue holds up to capacity frames. priority (1 or
+     * more) is its weight: a stream of priority 2 gets twice the frames of a
+     * stream of priority 1 when both are backlogged.
+     */
+    public synchronized Stream<T> addStream(String name, int priority, int capacity,
+                                            HandoffQueue.DropPolicy dropPolicy) {
+        if (priority < 1) {
+            throw new IllegalArgumentException("priority must be at least 1");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        for (Stream<T> stream : streams) {
+            if (stream.name.equals(name)) {
+                throw new IllegalArgumentException("Stream " + name + " already exists");
+            }
+        }
+        Stream<T> stream = new Stream<>(name, priority, capacity, dropPolicy);
+        stream.pass = virtualTime;
+        streams.add(stream);
+        return stream;
+    }
+
+    // Drops the stream's queued frames; a frame in flight still completes
+    public synchronized void removeStream(Stream<T> stream) {
+        stream.queue.clear();
+        stream.removed = true;
+        streams.remove(stream);
+    }
+
+    /**
+     * Queues item on stream without blocking. Returns the item dropped to
+     * make room (possibly item itself), or null if nothing was dropped.
+     */
+    public synchronized T offer(Stream<T> stream, T item) {
+        stream.submitted++;
+        if (closed || stream.removed) {
+            stream.dropped++;
+            return item;
+        }
+        T discarded = null;
+        if (stream.queue.size() >= stream.capacity) {
+            stream.dropped++;
+            if (stream.dropPolicy == HandoffQueue.DropPolicy.DROP_NEWEST) {
+                return item;
+            }
+            discarded = stream.queue.pollFirst();
+        } else if (stream.queue.isEmpty() && stream.current == null) {
+            // Idle until now: compete from the current virtual time rather than from where it left off
+            stream.pass = Math.max(stream.pass, virtualTime);
+        }
+        stream.queue.addLast(item);
+        notifyAll();
+        return discarded;
+    }
+
+    /**
+     * Blocks until a stream has a frame and none in flight, then hands its
+     * oldest frame to the caller: the returned stream's current(). Returns
+     * null once closed. Call complete when done with the frame.
+     */
+    public synchronized Stream<T> take() throws InterruptedException {
+        while (true) {
+            if (closed) {
+                return null;
+            }
+            Stream<T> next = dispatch();
+            if (next != null) {
+                return next;
+            }
+            wait();
+        }
+    }
+
+    // Same as take without blocking; null if no stream is ready
+    public synchronized Stream<T> poll() {
+        return closed ? null : dispatch();
+    }
+
+    // Ends the stream's frame in flight; latencyNanos goes into the stream's histogram
+    public synchronized void complete(Stream<T> stream, long latencyNanos) {
+        stream.current = null;
+        stream.completed++;
+        stream.latency.recordNanos(latencyNanos);
+        notifyAll();
+    }
+
+    // take returns null from now on; frames still queued are dropped
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private Stream<T> dispatch() {
+        Stream<T> next = null;
+        for (Stream<T> stream : streams) {
+            if (stream.current != null || stream.queue.isEmpty()) {
+                continue;
+            }
+            if (next == null || stream.pass < next.pass
+                    || (stream.pass == next.pass && stream.priority > next.priority)) {
+                next = stream;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        virtualTime = next.pass;
+        next.pass += STRIDE / next.priority;
+        next.current = next.queue.pollFirst();
+        return next;
+    }
+}
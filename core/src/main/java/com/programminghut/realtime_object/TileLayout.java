@@ -0,0 +1,75 @@
+package com.programminghut.realtime_object;
+
+/**
+ * Splits a horizontal band of the rotated frame into a grid of overlapping
+ * tiles, each converted at about native resolution. Small objects that
+ * would shrink below what a model can see in a whole-frame pass keep their
+ * pixels in a tile. Cost is fixed by the tile count.
+ */
+public class TileLayout {
+    // Most tiles one frame may be split into
+    public static final int MAX_TILES = 16;
+    // Tile input sizes are rounded up to this, as YOLO models expect
+    private static final int INPUT_ALIGNMENT = 32;
+
+    public final int columns;
+    public final int rows;
+    // Fraction of a tile shared with its neighbour
+    public final float overlap;
+    // Band of the frame that is tiled, as fractions of its height
+    public final float regionTop;
+    public final float regionBottom;
+
+    public TileLayout(int columns, int rows, float overlap, float regionTop, float regionBottom) {
+        if (columns < 1 || rows < 1 || columns * rows > MAX_TILES) {
+            throw new IllegalArgumentException("between 1 and " + MAX_TILES + " tiles are supported");
+        }
+        if (overlap < 0f || overlap >= 1f) {
+            throw new IllegalArgumentException("overlap must be in [0, 1)");
+        }
+        if (regionTop < 0f || regionBottom > 1f || regionTop >= regionBottom) {
+            throw new IllegalArgumentException("region must be a non-empty band of [0, 1]");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.overlap = overlap;
+        this.regionTop = regionTop;
+        this.regionBottom = regionBottom;
+    }
+
+    public int tileCount() {
+        return columns * rows;
+    }
+
+    /**
+     * Writes tile index (row-major) of a frameWidth x frameHeight rotated
+     * frame into rect as left, top, width, height in pixels. Tiles of one
+     * layout all have the same size.
+     */
+    public void tileRect(int index, int frameWidth, int frameHeight, int[] rect) {
+        int bandTop = Math.round(regionTop * frameHeight);
+        int bandHeight = Math.max(1, Math.round(regionBottom * frameHeight) - bandTop);
+        int tileWidth = tileSize(frameWidth, columns);
+        int tileHeight = tileSize(bandHeight, rows);
+        rect[0] = offset(index % columns, columns, frameWidth, tileWidth);
+        rect[1] = bandTop + offset(index / columns, rows, bandHeight, tileHeight);
+        rect[2] = tileWidth;
+        rect[3] = tileHeight;
+    }
+
+    // Square model input that holds a tile at native resolution
+    public int inputSize(int frameWidth, int frameHeight) {
+        int bandHeight = Math.max(1, Math.round(regionBottom * frameHeight) - Math.round(regionTop * frameHeight));
+        int size = Math.max(tileSize(frameWidth, columns), tileSize(bandHeight, rows));
+        return (size + INPUT_ALIGNMENT - 1) / INPUT_ALIGNMENT * INPUT_ALIGNMENT;
+    }
+
+    // Smallest tile that covers length with count tiles overlapping by the overlap fraction
+    private int tileSize(int length, int count) {
+        return Math.min(length, (int) Math.ceil(length / (count - (count - 1) * overlap)));
+    }
+
+    private static int offset(int i, int count, int length, int tileSize) {
+        return count == 1 ? 0 : Math.round(i * (length - tileSize) / (float) (count - 1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.programminghut.realtime_object;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of the newest value between one producer and one
+ * consumer, over three preallocated buffers. The producer fills its back
+ * buffer and publishes it; the consumer swaps in whatever was published
+ * last. Neither side blocks, waits for the other or allocates, and a buffer
+ * is only ever touched by one side at a time, so reads are never torn.
+ * Values the consumer never picked up are simply overwritten.
+ */
+public class TripleBuffer<T> {
+    // The shared state packs the middle buffer's index with a "published, not yet read" bit
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;      // Producer only
+    private int front = 2;     // Consumer only
+    private boolean hasFront;  // Consumer only
+
+    private volatile long publishCount;   // Written by the producer only
+    private volatile long overwriteCount; // Written by the producer only
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[]{first, second, third};
+    }
+
+    // Producer: the buffer to fill next; stays the same until publish
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[back];
+    }
+
+    // Producer: makes the write buffer the newest value and takes a free one to write next
+    public void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        if ((previous & FRESH) != 0) {
+            overwriteCount++;
+        }
+        publishCount++;
+    }
+
+    // Consumer: whether something was published since the last acquire
+    public boolean hasNew() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Consumer: the newest published value, which stays valid and unchanged
+     * until the next call. Returns the previous value again when nothing new
+     * was published, or null before the first publish.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+            hasFront = true;
+        }
+        return hasFront ? (T) buffers[front] : null;
+    }
+
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    // Published values replaced before the consumer saw them
+    public long getOverwriteCount() {
+        return overwriteCount;
+    }
+}
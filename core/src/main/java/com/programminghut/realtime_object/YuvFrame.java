@@ -0,0 +1,89 @@
+package com.programminghut.realtime_object;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain view of a YUV_420_888 frame: the three planes plus their strides.
+ * Wraps the plane buffers without copying them, so a frame built from an
+ * ImageProxy is only valid until that ImageProxy is closed.
+ */
+public class YuvFrame {
+    public int width;
+    public int height;
+    public int rotationDegrees;
+    public long timestampNs;
+
+    public ByteBuffer yBuffer;
+    public ByteBuffer uBuffer;
+    public ByteBuffer vBuffer;
+    public int yRowStride;
+    public int yPixelStride;
+    public int uRowStride;
+    public int uPixelStride;
+    public int vRowStride;
+    public int vPixelStride;
+
+    public YuvFrame set(int width, int height, int rotationDegrees, long timestampNs) {
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.timestampNs = timestampNs;
+        return this;
+    }
+
+    public YuvFrame setY(ByteBuffer buffer, int rowStride, int pixelStride) {
+        yBuffer = buffer;
+        yRowStride = rowStride;
+        yPixelStride = pixelStride;
+        return this;
+    }
+
+    public YuvFrame setU(ByteBuffer buffer, int rowStride, int pixelStride) {
+        uBuffer = buffer;
+        uRowStride = rowStride;
+        uPixelStride = pixelStride;
+        return this;
+    }
+
+    public YuvFrame setV(ByteBuffer buffer, int rowStride, int pixelStride) {
+        vBuffer = buffer;
+        vRowStride = rowStride;
+        vPixelStride = pixelStride;
+        return this;
+    }
+
+    /**
+     * Copies source, plane bytes included, into buffers owned by this frame,
+     * so the copy stays valid after source's image is closed. The buffers are
+     * reused while they are big enough.
+     */
+    public YuvFrame copyFrom(YuvFrame source) {
+        set(source.width, source.height, source.rotationDegrees, source.timestampNs);
+        setY(copyPlane(source.yBuffer, yBuffer), source.yRowStride, source.yPixelStride);
+        setU(copyPlane(source.uBuffer, uBuffer), source.uRowStride, source.uPixelStride);
+        setV(copyPlane(source.vBuffer, vBuffer), source.vRowStride, source.vPixelStride);
+        return this;
+    }
+
+    // The whole plane, from index 0 to its limit, regardless of the buffer's position
+    private static ByteBuffer copyPlane(ByteBuffer plane, ByteBuffer into) {
+        ByteBuffer source = plane.duplicate();
+        source.position(0);
+        if (into == null || into.capacity() < source.limit()) {
+            into = ByteBuffer.allocateDirect(source.limit());
+        }
+        into.clear();
+        into.put(source);
+        into.flip();
+        return into;
+    }
+
+    // Size of the frame once rotation is applied
+    public int rotatedWidth() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+    }
+
+    public int rotatedHeight() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    }
+}
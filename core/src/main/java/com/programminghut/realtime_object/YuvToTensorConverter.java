@@ -0,0 +1,283 @@
+package com.programminghut.realtime_object;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts a YUV_420_888 frame straight into a normalized CHW float tensor.
+ * Reads the planes in place (respecting row and pixel strides), applies the
+ * frame rotation, letterboxes and resizes with nearest-neighbour sampling, all
+ * in one pass. No JPEG, Bitmap or NV21 copy is involved. Decoded ARGB images
+ * (e.g. from files) go through the same geometry.
+ */
+public class YuvToTensorConverter {
+    // Gray used for letterbox padding, as in YOLO training
+    private static final int PAD_VALUE = 114;
+
+    private final float[][] normTables = new float[3][256];
+    private boolean letterbox = true;
+
+    // Source coordinate lookups (-1 marks padding), rebuilt only when the geometry changes
+    private int[] mapX = new int[0];
+    private int[] mapY = new int[0];
+    private final PreprocessTransform cachedTransform = new PreprocessTransform();
+    private final PreprocessTransform scratchTransform = new PreprocessTransform();
+    private boolean hasCachedTransform;
+
+    public YuvToTensorConverter(float[] mean, float[] std) {
+        // (value / 255 - mean) / std for every possible 8-bit channel value
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++) {
+                normTables[c][v] = (v / 255.0f - mean[c]) / std[c];
+            }
+        }
+    }
+
+    // With letterbox off the frame is stretched to the output size, like the old path
+    public void setLetterbox(boolean letterbox) {
+        this.letterbox = letterbox;
+    }
+
+    public void convert(YuvFrame frame, int outWidth, int outHeight, FloatBuffer out) {
+        convert(frame, outWidth, outHeight, out, null);
+    }
+
+    /**
+     * Writes outWidth x outHeight normalized pixels in CHW order into out,
+     * starting at absolute index 0. out must hold at least 3 * outWidth * outHeight floats.
+     * If transform is not null it receives the geometry that was used.
+     */
+    public void convert(YuvFrame frame, int outWidth, int outHeight, FloatBuffer out,
+                        PreprocessTransform transform) {
+        convertRegion(frame, 0, 0, frame.rotatedWidth(), frame.rotatedHeight(), outWidth, outHeight, out,
+                transform);
+    }
+
+    /**
+     * Same as convert for a region of the frame, given in pixels of the
+     * rotated frame, e.g. one tile. The transform maps results back to
+     * coordinates of the whole frame.
+     */
+    public void convertRegion(YuvFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                              int outWidth, int outHeight, FloatBuffer out, PreprocessTransform transform) {
+        PreprocessTransform geometry = updateMaps(frame.width, frame.height, frame.rotationDegrees,
+                cropLeft, cropTop, cropWidth, cropHeight, outWidth, outHeight);
+        if (transform != null) {
+            transform.copyFrom(geometry);
+        }
+        fillFloats(frame, null, 0, frame.rotationDegrees, outWidth, outHeight, out);
+    }
+
+    // Same as convert for an upright ARGB image of width x height pixels
+    public void convert(int[] argb, int width, int height, int outWidth, int outHeight, FloatBuffer out,
+                        PreprocessTransform transform) {
+        PreprocessTransform geometry = updateMaps(width, height, 0, outWidth, outHeight);
+        if (transform != null) {
+            transform.copyFrom(geometry);
+        }
+        fillFloats(null, argb, width, 0, outWidth, outHeight, out);
+    }
+
+    // Reads from frame, or from argb when frame is null
+    private void fillFloats(YuvFrame frame, int[] argb, int argbStride, int rotationDegrees,
+                            int outWidth, int outHeight, FloatBuffer out) {
+        boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+
+        float[] rTable = normTables[0];
+        float[] gTable = normTables[1];
+        float[] bTable = normTables[2];
+        float rPad = rTable[PAD_VALUE];
+        float gPad = gTable[PAD_VALUE];
+        float bPad = bTable[PAD_VALUE];
+        int planeSize = outWidth * outHeight;
+
+        for (int oy = 0; oy < outHeight; oy++) {
+            int rowOffset = oy * outWidth;
+            int rowSource = mapY[oy];
+            for (int ox = 0; ox < outWidth; ox++) {
+                int index = rowOffset + ox;
+                int columnSource = mapX[ox];
+                if (rowSource < 0 || columnSource < 0) {
+                    out.put(index, rPad);
+                    out.put(planeSize + index, gPad);
+                    out.put(2 * planeSize + index, bPad);
+                    continue;
+                }
+
+                int rgb = swapAxes
+                        ? sample(frame, argb, argbStride, rowSource, columnSource)
+                        : sample(frame, argb, argbStride, columnSource, rowSource);
+                out.put(index, rTable[(rgb >> 16) & 0xFF]);
+                out.put(planeSize + index, gTable[(rgb >> 8) & 0xFF]);
+                out.put(2 * planeSize + index, bTable[rgb & 0xFF]);
+            }
+        }
+    }
+
+    /**
+     * Same geometry as convert, but writes raw 8-bit RGB in HWC order (as
+     * quantized TFLite models expect) into out, starting at absolute index 0.
+     */
+    public void convertToRgb(YuvFrame frame, int outWidth, int outHeight, ByteBuffer out,
+                             PreprocessTransform transform) {
+        convertRegionToRgb(frame, 0, 0, frame.rotatedWidth(), frame.rotatedHeight(), outWidth, outHeight, out,
+                transform);
+    }
+
+    // Same as convertRegion, writing raw 8-bit RGB in HWC order
+    public void convertRegionToRgb(YuvFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                                   int outWidth, int outHeight, ByteBuffer out, PreprocessTransform transform) {
+        PreprocessTransform geometry = updateMaps(frame.width, frame.height, frame.rotationDegrees,
+                cropLeft, cropTop, cropWidth, cropHeight, outWidth, outHeight);
+        if (transform != null) {
+            transform.copyFrom(geometry);
+        }
+        fillBytes(frame, null, 0, frame.rotationDegrees, outWidth, outHeight, out);
+    }
+
+    // Same as convertToRgb for an upright ARGB image of width x height pixels
+    public void convertToRgb(int[] argb, int width, int height, int outWidth, int outHeight, ByteBuffer out,
+                             PreprocessTransform transform) {
+        PreprocessTransform geometry = updateMaps(width, height, 0, outWidth, outHeight);
+        if (transform != null) {
+            transform.copyFrom(geometry);
+        }
+        fillBytes(null, argb, width, 0, outWidth, outHeight, out);
+    }
+
+    private void fillBytes(YuvFrame frame, int[] argb, int argbStride, int rotationDegrees,
+                           int outWidth, int outHeight, ByteBuffer out) {
+        boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        byte pad = (byte) PAD_VALUE;
+
+        for (int oy = 0; oy < outHeight; oy++) {
+            int rowOffset = oy * outWidth * 3;
+            int rowSource = mapY[oy];
+            for (int ox = 0; ox < outWidth; ox++) {
+                int index = rowOffset + ox * 3;
+                int columnSource = mapX[ox];
+                if (rowSource < 0 || columnSource < 0) {
+                    out.put(index, pad);
+                    out.put(index + 1, pad);
+                    out.put(index + 2, pad);
+                    continue;
+                }
+
+                int rgb = swapAxes
+                        ? sample(frame, argb, argbStride, rowSource, columnSource)
+                        : sample(frame, argb, argbStride, columnSource, rowSource);
+                out.put(index, (byte) (rgb >> 16));
+                out.put(index + 1, (byte) (rgb >> 8));
+                out.put(index + 2, (byte) rgb);
+            }
+        }
+    }
+
+    private static int sample(YuvFrame frame, int[] argb, int argbStride, int sx, int sy) {
+        return frame != null ? sampleRgb(frame, sx, sy) : argb[sy * argbStride + sx] & 0xFFFFFF;
+    }
+
+    // Packed 0xRRGGBB of source pixel (sx, sy)
+    private static int sampleRgb(YuvFrame frame, int sx, int sy) {
+        int y = frame.yBuffer.get(sy * frame.yRowStride + sx * frame.yPixelStride) & 0xFF;
+        int cx = sx >> 1;
+        int cy = sy >> 1;
+        int u = (frame.uBuffer.get(cy * frame.uRowStride + cx * frame.uPixelStride) & 0xFF) - 128;
+        int v = (frame.vBuffer.get(cy * frame.vRowStride + cx * frame.vPixelStride) & 0xFF) - 128;
+
+        // Full-range BT.601 (JFIF), same as the old JPEG encode/decode round-trip
+        int r = clamp(y + ((91881 * v + 32768) >> 16));
+        int g = clamp(y + ((-22554 * u - 46802 * v + 32768) >> 16));
+        int b = clamp(y + ((116130 * u + 32768) >> 16));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private PreprocessTransform updateMaps(int srcWidth, int srcHeight, int rotation,
+                                          int outWidth, int outHeight) {
+        PreprocessTransform transform = scratchTransform;
+        transform.set(srcWidth, srcHeight, rotation, outWidth, outHeight, letterbox);
+        return updateMaps(transform);
+    }
+
+    private PreprocessTransform updateMaps(int srcWidth, int srcHeight, int rotation,
+                                          int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                                          int outWidth, int outHeight) {
+        PreprocessTransform transform = scratchTransform;
+        transform.set(srcWidth, srcHeight, rotation, cropLeft, cropTop, cropWidth, cropHeight,
+                outWidth, outHeight, letterbox);
+        return updateMaps(transform);
+    }
+
+    private PreprocessTransform updateMaps(PreprocessTransform transform) {
+        if (hasCachedTransform && transform.equalsGeometry(cachedTransform)) {
+            return cachedTransform;
+        }
+        int srcWidth = transform.sourceWidth;
+        int srcHeight = transform.sourceHeight;
+        int rotation = transform.rotationDegrees;
+        int outWidth = transform.inputWidth;
+        int outHeight = transform.inputHeight;
+
+        // mapX is indexed by output column, mapY by output row. For 90/270 the
+        // column drives the source row and the row drives the source column.
+        // Tiles change the crop every call, so the arrays are kept when the size allows
+        if (mapX.length != outWidth) {
+            mapX = new int[outWidth];
+        }
+        if (mapY.length != outHeight) {
+            mapY = new int[outHeight];
+        }
+        for (int ox = 0; ox < outWidth; ox++) {
+            int cx = ox - transform.contentLeft;
+            if (cx < 0 || cx >= transform.contentWidth) {
+                mapX[ox] = -1;
+                continue;
+            }
+            int rx = transform.cropLeft + sampleIndex(cx, transform.contentWidth, transform.cropWidth);
+            switch (rotation) {
+                case 90:
+                    mapX[ox] = srcHeight - 1 - rx;
+                    break;
+                case 180:
+                    mapX[ox] = srcWidth - 1 - rx;
+                    break;
+                default:
+                    mapX[ox] = rx;
+                    break;
+            }
+        }
+        for (int oy = 0; oy < outHeight; oy++) {
+            int cy = oy - transform.contentTop;
+            if (cy < 0 || cy >= transform.contentHeight) {
+                mapY[oy] = -1;
+                continue;
+            }
+            int ry = transform.cropTop + sampleIndex(cy, transform.contentHeight, transform.cropHeight);
+            switch (rotation) {
+                case 180:
+                    mapY[oy] = srcHeight - 1 - ry;
+                    break;
+                case 270:
+                    mapY[oy] = srcWidth - 1 - ry;
+                    break;
+                default:
+                    mapY[oy] = ry;
+                    break;
+            }
+        }
+
+        cachedTransform.copyFrom(transform);
+        hasCachedTransform = true;
+        return cachedTransform;
+    }
+
+    // Nearest source index for the centre of output pixel i
+    static int sampleIndex(int i, int outSize, int srcSize) {
+        int s = (int) ((i + 0.5f) * srcSize / outSize);
+        return Math.min(s, srcSize - 1);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,41 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class BatchedDetectorTest {
+    @Test
+    public void detect_sizesForwardsToTheFramesInTheBatch() throws Exception {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 8,
+                new float[][]{{20, 20, 30, 30, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0, 4,
+                new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        BatchedDetector detector = new BatchedDetector(
+                new ModelSpec[]{DetectionModels.VEHICLE_SPEC, DetectionModels.SIGN_SPEC},
+                new InferenceBackend[]{vehicle, sign}, 64, 8, DetectionModels.MEAN, DetectionModels.STD);
+        YuvFrame[] frames = new YuvFrame[8];
+        CandidateBuffer[] out = new CandidateBuffer[8];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = SyntheticData.yuvFrame(64, 48, 0, 1, 0, i);
+            out[i] = new CandidateBuffer(16);
+        }
+
+        // A lone frame takes a batch-of-one forward
+        detector.detect(frames, 1, out);
+        assertEquals(Arrays.asList(1), vehicle.batchSizes);
+        assertEquals(Arrays.asList(1), sign.batchSizes);
+        assertEquals(2, out[0].count);
+
+        // Three frames round up to four; the sign backend splits eight into two chunks of four
+        detector.detect(frames, 3, out);
+        detector.detect(frames, 8, out);
+        assertEquals(Arrays.asList(1, 4, 8), vehicle.batchSizes);
+        assertEquals(Arrays.asList(1, 4, 4, 4), sign.batchSizes);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(2, out[i].count);
+        }
+        detector.close();
+    }
+}
@@ -0,0 +1,40 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ChunkPoolsTest {
+    private static final InferenceBackend.InputFormat FORMAT = InferenceBackend.InputFormat.FLOAT_CHW;
+
+    @Test
+    public void chunkSize_roundsUpToAPowerOfTwoWithinTheBackendBatch() {
+        assertEquals(1, ChunkPools.chunkSize(1, 8));
+        assertEquals(4, ChunkPools.chunkSize(3, 8));
+        assertEquals(8, ChunkPools.chunkSize(8, 8));
+        assertEquals(6, ChunkPools.chunkSize(7, 6));
+        assertEquals(1, ChunkPools.chunkSize(5, 1));
+    }
+
+    @Test
+    public void alternatingSizes_reuseTheirOwnChunks() {
+        ChunkPools pools = new ChunkPools(8, 16);
+        FrameBufferPool.InputBuffer one = pools.acquire(FORMAT, 32, 32, 1);
+        FrameBufferPool.InputBuffer four = pools.acquire(FORMAT, 32, 32, 4);
+        pools.release(one);
+        pools.release(four);
+        long allocated = pools.getTotalBytesAllocated();
+
+        for (int i = 0; i < 3; i++) {
+            FrameBufferPool.InputBuffer a = pools.acquire(FORMAT, 32, 32, 1);
+            FrameBufferPool.InputBuffer b = pools.acquire(FORMAT, 32, 32, 4);
+            assertSame(one, a);
+            assertSame(four, b);
+            pools.release(a);
+            pools.release(b);
+        }
+        assertEquals(allocated, pools.getTotalBytesAllocated());
+        assertEquals(2, pools.getReallocationCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DetectionEventLogTest {
+    private static final String[] LABELS = {"car", "bus", "crossing"};
+    private static final int DETECTIONS = 20;
+    // 1/65535 quantization, plus float slack
+    private static final float BOX_TOLERANCE = 1e-4f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void segments_rotateKeepLabelsAndRespectCap() throws Exception {
+        File directory = folder.newFolder("events");
+        DetectionEventLog log = new DetectionEventLog(directory, 128 * 1024, 3, 1024 * 1024);
+        log.start();
+        DetectionFrame frame = new DetectionFrame(DETECTIONS);
+        for (int i = 0; i < 2000; i++) {
+            fill(frame, i);
+            assertTrue(log.append(frame));
+        }
+        log.close();
+        assertEquals(2000, log.getAppendedCount());
+        assertEquals(0, log.getDroppedCount());
+
+        // About 250 bytes a frame is 4 segments' worth; the oldest went over the cap
+        File[] segments = DetectionLogReader.segments(directory);
+        assertEquals(3, segments.length);
+        assertFalse(new File(directory, DetectionEventLog.segmentName(0)).exists());
+
+        List<Long> timestamps = new ArrayList<>();
+        for (File segment : segments) {
+            DetectionLogReader.read(segment, new DetectionLogReader.Visitor() {
+                int index;
+
+                @Override
+                public void onFrame(long timestampNs, int detectionCount) {
+                    timestamps.add(timestampNs);
+                    assertEquals(DETECTIONS, detectionCount);
+                    index = 0;
+                }
+
+                @Override
+                public void onDetection(int type, String label, float left, float top, float right, float bottom,
+                                        float confidence) {
+                    long frameIndex = timestamps.get(timestamps.size() - 1) / 1000;
+                    int i = index++;
+                    // Every segment resolves labels on its own
+                    assertEquals(LABELS[i % LABELS.length], label);
+                    assertEquals(i % 2, type);
+                    assertEquals(left(frameIndex, i), left, BOX_TOLERANCE);
+                    assertEquals(left(frameIndex, i) + 0.1f, right, BOX_TOLERANCE);
+                    assertEquals(0.25f, top, BOX_TOLERANCE);
+                    assertEquals(0.5f, bottom, BOX_TOLERANCE);
+                    assertEquals(0.8f, confidence, 1f / 255);
+                }
+            });
+        }
+        // The newest frames survive, in order and without gaps
+        assertEquals(1999 * 1000L, (long) timestamps.get(timestamps.size() - 1));
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertEquals(timestamps.get(i - 1) + 1000, (long) timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void append_dropsInsteadOfBlockingWhenStorageFallsBehind() {
+        // Never started, so nothing drains the buffer
+        DetectionEventLog log = new DetectionEventLog(folder.getRoot(), 128 * 1024, 1, 4096);
+        DetectionFrame frame = new DetectionFrame(DETECTIONS);
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            fill(frame, i);
+            if (log.append(frame)) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted > 0 && accepted < 100);
+        assertEquals(100 - accepted, log.getDroppedCount());
+        assertSame(LABELS[0], frame.labels[0]);
+    }
+
+    private static void fill(DetectionFrame frame, int index) {
+        frame.clear();
+        for (int i = 0; i < DETECTIONS; i++) {
+            float left = left(index, i);
+            frame.add(left, 0.25f, left + 0.1f, 0.5f, LABELS[i % LABELS.length], 0.8f, i % 2, -1, 0f);
+        }
+        frame.timestampNs = index * 1000L;
+    }
+
+    private static float left(long frameIndex, int detection) {
+        return ((frameIndex * 7 + detection) % 90) / 100f;
+    }
+}
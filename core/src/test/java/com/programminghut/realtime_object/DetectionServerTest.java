@@ -0,0 +1,96 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class DetectionServerTest {
+    @Test
+    public void concurrentRequests_areBatchedAndAnsweredIndividually() throws Exception {
+        DetectionServer server = new DetectionServer(detector(8, 5), 64, 20f, 0f);
+        int port = server.start(0);
+        try {
+            DetectionLoadGenerator.Result result =
+                    new DetectionLoadGenerator("127.0.0.1", port).run(8, 20, 1, 64, 48);
+            assertEquals(160, result.ok);
+            assertEquals(160, server.getCompletedCount());
+            // Eight clients waiting on each other's forward passes share them
+            assertTrue(server.getAverageBatchSize() > 2f);
+
+            try (DetectionClient client = new DetectionClient("127.0.0.1", port)) {
+                client.send(7, 0L, 64, 48, 0, new byte[DetectionClient.i420Size(64, 48)]);
+                DetectionClient.Response response = client.receive(new DetectionClient.Response());
+                assertEquals(7, response.id);
+                assertTrue(response.isOk());
+                assertEquals(2, response.count);
+                assertEquals("truck", response.labels[0]);
+                assertEquals(0.9f, response.confidences[0], 1e-6f);
+                assertEquals("near_crossing", response.labels[1]);
+                assertEquals(DetectionModels.SIGN_SPEC.type, response.types[1]);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void overload_isRejectedOrShedInsteadOfQueued() throws Exception {
+        // One frame per 20 ms pass, at most four waiting, none older than 50 ms
+        DetectionServer server = new DetectionServer(detector(1, 20), 4, 0f, 50f);
+        int port = server.start(0);
+        try {
+            DetectionLoadGenerator.Result result =
+                    new DetectionLoadGenerator("127.0.0.1", port).run(2, 40, 16, 64, 48);
+            // Every request got exactly one answer
+            assertEquals(80, result.ok + result.rejected + result.expired + result.failed);
+            assertEquals(0, result.failed);
+            assertTrue(result.rejected > 0);
+            assertTrue(result.ok > 0);
+            assertEquals(result.rejected, server.getRejectedCount());
+            assertEquals(result.expired, server.getExpiredCount());
+            // Shedding keeps answered frames near the deadline plus one pass
+            assertTrue(result.latency.percentileMs(0.5f) < 200f);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void connectionsBeyondTheCap_areClosed() throws Exception {
+        DetectionServer server = new DetectionServer(detector(1, 0), 4, 0f, 0f, 1);
+        int port = server.start(0);
+        try (DetectionClient first = new DetectionClient("127.0.0.1", port)) {
+            // Answered, so the first connection is registered before the second arrives
+            first.send(1, 0L, 64, 48, 0, new byte[DetectionClient.i420Size(64, 48)]);
+            assertTrue(first.receive(new DetectionClient.Response()).isOk());
+
+            try (DetectionClient second = new DetectionClient("127.0.0.1", port)) {
+                second.send(2, 0L, 64, 48, 0, new byte[DetectionClient.i420Size(64, 48)]);
+                second.receive(new DetectionClient.Response());
+                fail("expected the second connection to be closed");
+            } catch (IOException expected) {
+                // Closed on accept
+            }
+            assertEquals(1, server.getRefusedConnectionCount());
+
+            // The first connection is still served
+            first.send(3, 0L, 64, 48, 0, new byte[DetectionClient.i420Size(64, 48)]);
+            assertEquals(3, first.receive(new DetectionClient.Response()).id);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static BatchedDetector detector(int maxBatch, int runMillis) {
+        FakeInferenceBackend vehicle = new FakeInferenceBackend(InferenceBackend.InputFormat.UINT8_HWC, 300,
+                maxBatch, new float[][]{{30, 30, 90, 90, 0.9f, 3}});
+        FakeInferenceBackend sign = new FakeInferenceBackend(InferenceBackend.InputFormat.FLOAT_CHW, 0,
+                maxBatch, new float[][]{{10, 10, 20, 20, 0.8f, 1}});
+        vehicle.runMillis = runMillis;
+        return new BatchedDetector(new ModelSpec[]{DetectionModels.VEHICLE_SPEC, DetectionModels.SIGN_SPEC},
+                new InferenceBackend[]{vehicle, sign}, 64, maxBatch, DetectionModels.MEAN, DetectionModels.STD);
+    }
+}
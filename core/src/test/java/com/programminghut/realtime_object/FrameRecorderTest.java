@@ -0,0 +1,87 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_returnsFramesExactlyAsRecorded() throws Exception {
+        File file = folder.newFile("capture.rfr");
+        SyntheticData.recording(file, 5, 64, 48, 90, 3);
+
+        try (FrameReplay replay = new FrameReplay(file)) {
+            assertEquals(5, replay.getFrameCount());
+            YuvFrame actual = new YuvFrame();
+            for (int i = 0; i < 5; i++) {
+                YuvFrame expected = SyntheticData.yuvFrame(64, 48, 90, 2, 16, 3 + i);
+                replay.frame(i, actual);
+                assertEquals(i * 33_000_000L, actual.timestampNs);
+                assertEquals(64, actual.width);
+                assertEquals(48, actual.height);
+                assertEquals(90, actual.rotationDegrees);
+                assertEquals(expected.yRowStride, actual.yRowStride);
+                assertEquals(expected.uRowStride, actual.uRowStride);
+                assertEquals(expected.uPixelStride, actual.uPixelStride);
+                assertEquals(expected.vPixelStride, actual.vPixelStride);
+                assertPlaneEquals(expected.yBuffer, actual.yBuffer);
+                assertPlaneEquals(expected.uBuffer, actual.uBuffer);
+                assertPlaneEquals(expected.vBuffer, actual.vBuffer);
+            }
+        }
+    }
+
+    @Test
+    public void replay_stopsAtTruncatedRecord() throws Exception {
+        File file = folder.newFile("capture.rfr");
+        SyntheticData.recording(file, 3, 32, 24, 0, 1);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 10);
+        }
+
+        try (FrameReplay replay = new FrameReplay(file)) {
+            assertEquals(2, replay.getFrameCount());
+            int[] delivered = new int[1];
+            replay.replay(frame -> delivered[0]++, FrameReplay.Pacing.MAX);
+            assertEquals(2, delivered[0]);
+        }
+    }
+
+    @Test
+    public void open_rejectsPlanesLargerThanTheirRecord() throws Exception {
+        File file = folder.newFile("capture.rfr");
+        SyntheticData.recording(file, 3, 32, 24, 0, 1);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            // Second record's U length, little-endian
+            raw.seek(FrameRecorder.FILE_HEADER_SIZE);
+            int recordLength = Integer.reverseBytes(raw.readInt());
+            raw.seek(FrameRecorder.FILE_HEADER_SIZE + 4 + recordLength + 52);
+            raw.writeInt(Integer.reverseBytes(1 << 20));
+        }
+
+        try {
+            new FrameReplay(file).close();
+            fail("Corrupt plane length accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Frame 1 "));
+        }
+    }
+
+    private static void assertPlaneEquals(ByteBuffer expected, ByteBuffer actual) {
+        assertEquals(expected.limit(), actual.limit());
+        for (int i = 0; i < expected.limit(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_coverEveryValueWithinRelativeError() {
+        for (long micros = 0; micros < 1_000_000; micros += 1 + micros / 50) {
+            int bucket = LatencyHistogram.bucketFor(micros);
+            long upper = LatencyHistogram.upperBoundMicros(bucket);
+            assertTrue("value " + micros, micros <= upper);
+            assertTrue("value " + micros, upper - micros <= Math.max(0, micros / 16));
+            if (bucket > 0) {
+                assertTrue(micros > LatencyHistogram.upperBoundMicros(bucket - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketFor(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentiles_matchUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..1000 ms
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.recordNanos(ms * 1_000_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500f, snapshot.percentileMs(0.5f), 500f / 16);
+        assertEquals(950f, snapshot.percentileMs(0.95f), 950f / 16);
+        assertEquals(990f, snapshot.percentileMs(0.99f), 990f / 16);
+        assertEquals(1000f, snapshot.maxMs(), 0f);
+
+        // The next interval starts empty
+        assertEquals(0, histogram.snapshotAndReset().getCount());
+    }
+
+    @Test
+    public void concurrentRecording_losesNoSamples() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot total = new LatencyHistogram.Snapshot();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int seed = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.recordNanos((seed * 7919L + i) % 50_000_000L);
+                }
+            });
+            writers[t].start();
+        }
+        // Snapshot while writers run, as the reporter does
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                total.add(histogram.snapshotAndReset());
+            }
+            writer.join();
+        }
+        total.add(histogram.snapshotAndReset());
+
+        assertEquals(400_000, total.getCount());
+        assertTrue(total.maxMs() < 50f);
+    }
+}
@@ -0,0 +1,55 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ModelSchedulerTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void cadence_runsEveryNthFrame() {
+        ModelScheduler scheduler = new ModelScheduler(2);
+        scheduler.configure(1, 3, 0f, 0);
+
+        StringBuilder runs = new StringBuilder();
+        for (int frame = 0; frame < 7; frame++) {
+            scheduler.beginFrame();
+            for (int model = 0; model < 2; model++) {
+                if (scheduler.shouldRun(model, 0, 0)) {
+                    scheduler.onRun(model, MS);
+                    runs.append(model);
+                }
+            }
+            runs.append('|');
+        }
+        assertEquals("01|0|0|01|0|0|01|", runs.toString());
+        assertEquals(4, scheduler.getCadenceSkipCount());
+    }
+
+    @Test
+    public void deadline_defersLateRunsUpToTheLimit() {
+        ModelScheduler scheduler = new ModelScheduler(1);
+        scheduler.configure(0, 1, 50f, 2);
+        scheduler.beginFrame();
+        assertTrue(scheduler.shouldRun(0, 0, 0));
+        scheduler.onRun(0, 20 * MS);
+
+        // 40 ms into the frame a 20 ms model would miss the 50 ms deadline
+        scheduler.beginFrame();
+        assertFalse(scheduler.shouldRun(0, 0, 40 * MS));
+        scheduler.beginFrame();
+        assertFalse(scheduler.shouldRun(0, 0, 40 * MS));
+        // Deferred twice in a row: runs anyway
+        scheduler.beginFrame();
+        assertTrue(scheduler.shouldRun(0, 0, 40 * MS));
+        scheduler.onRun(0, 20 * MS);
+
+        // On time again
+        scheduler.beginFrame();
+        assertTrue(scheduler.shouldRun(0, 0, 10 * MS));
+        assertEquals(2, scheduler.getDeadlineDeferCount());
+    }
+}
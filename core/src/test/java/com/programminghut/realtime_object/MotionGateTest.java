@@ -0,0 +1,58 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class MotionGateTest {
+    // Adds delta to every luma byte, clamped, to change the scene by a known amount
+    private static void brighten(YuvFrame frame, int delta) {
+        ByteBuffer y = frame.yBuffer;
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) Math.max(0, Math.min(255, (y.get(i) & 0xFF) + delta)));
+        }
+    }
+
+    @Test
+    public void staticScene_skipsUntilStaleLimitForcesRun() {
+        MotionGate gate = new MotionGate(32, 24, 3f, 4);
+        YuvFrame frame = SyntheticData.yuvFrame(640, 480, 0, 2, 64, 1);
+
+        assertTrue(gate.shouldRun(frame));
+        for (int i = 0; i < 4; i++) {
+            assertFalse(gate.shouldRun(frame));
+            assertEquals(0f, gate.getLastDifference(), 0f);
+        }
+        // Fifth unchanged frame in a row exceeds maxStaleFrames
+        assertTrue(gate.shouldRun(frame));
+        assertTrue(Float.isNaN(gate.getLastDifference()));
+        assertFalse(gate.shouldRun(frame));
+        assertEquals(2, gate.getRunCount());
+        assertEquals(5, gate.getSkipCount());
+    }
+
+    @Test
+    public void changedScene_runsAtOrAboveThreshold() {
+        MotionGate gate = new MotionGate(32, 24, 3f, 100);
+        YuvFrame frame = SyntheticData.yuvFrame(640, 480, 0, 2, 64, 1);
+        assertTrue(gate.shouldRun(frame));
+
+        // Sensor noise sized change stays under the threshold
+        brighten(frame, 1);
+        assertFalse(gate.shouldRun(frame));
+        assertTrue(gate.getLastDifference() < 3f);
+
+        // Measured against the last frame that ran, so small changes add up
+        brighten(frame, 4);
+        assertTrue(gate.shouldRun(frame));
+        assertTrue(gate.getLastDifference() >= 3f);
+
+        // A different scene, and a new resolution, always run
+        assertTrue(gate.shouldRun(SyntheticData.yuvFrame(640, 480, 0, 2, 64, 2)));
+        assertTrue(gate.shouldRun(SyntheticData.yuvFrame(320, 240, 0, 2, 64, 2)));
+        assertTrue(Float.isNaN(gate.getLastDifference()));
+    }
+}
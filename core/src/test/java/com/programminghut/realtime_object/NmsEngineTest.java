@@ -0,0 +1,107 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NmsEngineTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void greedy_isClassAware() {
+        CandidateBuffer in = new CandidateBuffer(4);
+        in.add(0.1f, 0.1f, 0.3f, 0.3f, 0.9f, 0);   // car
+        in.add(0.1f, 0.1f, 0.3f, 0.3f, 0.8f, 3);   // truck on the same spot
+        in.add(0.11f, 0.1f, 0.31f, 0.3f, 0.7f, 0); // duplicate car
+        CandidateBuffer out = new CandidateBuffer(4);
+
+        new NmsEngine(NmsEngine.Mode.GREEDY, 0.5f, 0, true).run(in, out);
+
+        assertEquals(2, out.count);
+        assertEquals(0.9f, out.scores[0], EPSILON);
+        assertEquals(3, out.classIds[1]);
+    }
+
+    @Test
+    public void greedy_topKCapsCandidates() {
+        CandidateBuffer in = new CandidateBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            // Disjoint boxes, scores 0.1 .. 1.0 in scrambled order
+            float x = i * 0.1f;
+            in.add(x, 0f, x + 0.05f, 0.05f, ((i * 7) % 10 + 1) / 10f, 0);
+        }
+        CandidateBuffer out = new CandidateBuffer(4);
+
+        new NmsEngine(NmsEngine.Mode.GREEDY, 0.5f, 3, true).run(in, out);
+
+        assertEquals(3, out.count);
+        assertEquals(1.0f, out.scores[0], EPSILON);
+        assertEquals(0.9f, out.scores[1], EPSILON);
+        assertEquals(0.8f, out.scores[2], EPSILON);
+    }
+
+    @Test
+    public void greedy_matchesBruteForceOnCrowdedScene() {
+        CandidateBuffer in = SyntheticData.crowdedScene(3000, 4, 1);
+        CandidateBuffer out = new CandidateBuffer(16);
+        new NmsEngine(NmsEngine.Mode.GREEDY, 0.45f, 0, true).run(in, out);
+
+        // Reference: sort everything, compare against every kept box of the same class
+        int[] order = new int[in.count];
+        IndexSort.sortByScoreDescending(order, in.scores, in.count);
+        CandidateBuffer expected = new CandidateBuffer(16);
+        for (int i = 0; i < in.count; i++) {
+            int a = order[i];
+            boolean suppressed = false;
+            for (int j = 0; j < expected.count && !suppressed; j++) {
+                CandidateBuffer pair = new CandidateBuffer(2);
+                pair.add(expected, j);
+                pair.add(in, a);
+                suppressed = expected.classIds[j] == in.classIds[a] && NmsEngine.iou(pair, 0, 1) > 0.45f;
+            }
+            if (!suppressed) {
+                expected.add(in, a);
+            }
+        }
+
+        assertEquals(expected.count, out.count);
+        for (int i = 0; i < out.count; i++) {
+            assertEquals(expected.scores[i], out.scores[i], 0f);
+            assertEquals(expected.left[i], out.left[i], 0f);
+        }
+    }
+
+    @Test
+    public void soft_decaysOverlapsInsteadOfDropping() {
+        CandidateBuffer in = new CandidateBuffer(4);
+        in.add(0.1f, 0.1f, 0.3f, 0.3f, 0.9f, 0);
+        in.add(0.12f, 0.1f, 0.32f, 0.3f, 0.8f, 0);
+        in.add(0.6f, 0.6f, 0.7f, 0.7f, 0.5f, 0);
+        CandidateBuffer out = new CandidateBuffer(4);
+
+        new NmsEngine(NmsEngine.Mode.SOFT, 0.5f, 0, true).run(in, out);
+
+        assertEquals(3, out.count);
+        assertEquals(0.9f, out.scores[0], EPSILON);
+        // Disjoint box keeps its score and now outranks the decayed duplicate
+        assertEquals(0.5f, out.scores[1], EPSILON);
+        assertTrue(out.scores[2] < 0.8f * 0.5f);
+    }
+
+    @Test
+    public void merge_fusesAcrossModels() {
+        CandidateBuffer in = new CandidateBuffer(4);
+        in.add(0.1f, 0.1f, 0.3f, 0.3f, 0.75f, 0, 0);
+        in.add(0.2f, 0.1f, 0.4f, 0.3f, 0.25f, 2, 1);
+        CandidateBuffer out = new CandidateBuffer(4);
+
+        new NmsEngine(NmsEngine.Mode.MERGE, 0.3f, 0, false).run(in, out);
+
+        assertEquals(1, out.count);
+        assertEquals(0, out.sources[0]);
+        assertEquals(0.75f, out.scores[0], EPSILON);
+        assertEquals(0.125f, out.left[0], EPSILON);
+        assertEquals(0.325f, out.right[0], EPSILON);
+    }
+}
@@ -0,0 +1,51 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+public class OutputDecoderTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void decode_keepsRowsAboveThresholdAndPicksBestClass() {
+        // rowSize 8 = box + objectness + 3 classes
+        float[] rows = {
+                320, 320, 64, 64, 0.9f, 0.1f, 0.7f, 0.2f,
+                100, 100, 10, 10, 0.3f, 0.9f, 0.0f, 0.0f,
+                0, 0, 0, 0, 0.0f, 0.0f, 0.0f, 0.0f,
+                160, 480, 32, 32, 1.5f, 0.0f, 0.1f, 0.8f,
+        };
+        PreprocessTransform transform = new PreprocessTransform();
+        transform.set(640, 640, 0, 640, 640, true);
+        CandidateBuffer out = new CandidateBuffer(1);
+
+        int count = OutputDecoder.decode(FloatBuffer.wrap(rows), 8, 0.45f, transform, 0, out);
+
+        assertEquals(2, count);
+        assertEquals(1, out.classIds[0]);
+        assertEquals(0.9f, out.scores[0], EPSILON);
+        assertEquals(288f / 640f, out.left[0], EPSILON);
+        assertEquals(352f / 640f, out.bottom[0], EPSILON);
+        assertEquals(2, out.classIds[1]);
+        // Confidence is capped at 1
+        assertEquals(1f, out.scores[1], EPSILON);
+    }
+
+    @Test
+    public void decode_mapsThroughLetterbox() {
+        float[] rows = {320, 320, 640, 480, 0.8f, 1f};
+        PreprocessTransform transform = new PreprocessTransform();
+        transform.set(640, 480, 0, 640, 640, true);
+        CandidateBuffer out = new CandidateBuffer(4);
+
+        OutputDecoder.decode(FloatBuffer.wrap(rows), 6, 0.45f, transform, 0, out);
+
+        assertEquals(1, out.count);
+        assertEquals(0f, out.left[0], EPSILON);
+        assertEquals(0f, out.top[0], EPSILON);
+        assertEquals(1f, out.right[0], EPSILON);
+        assertEquals(1f, out.bottom[0], EPSILON);
+    }
+}
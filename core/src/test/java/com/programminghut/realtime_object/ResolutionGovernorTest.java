@@ -0,0 +1,55 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResolutionGovernorTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void stepsDownWhenOverBudget() {
+        ResolutionGovernor governor = new ResolutionGovernor(ResolutionGovernor.DEFAULT_SIZES, 20f);
+        assertEquals(640, governor.getInputSize());
+
+        boolean switched = false;
+        for (int i = 0; i < 10 && !switched; i++) {
+            switched = governor.onFrameLatency(150 * MS);
+        }
+        assertTrue(switched);
+        assertEquals(512, governor.getInputSize());
+    }
+
+    @Test
+    public void doesNotOscillateAroundBudget() {
+        ResolutionGovernor governor = new ResolutionGovernor(ResolutionGovernor.DEFAULT_SIZES, 20f);
+        // Alternating just over and just under the 50 ms budget stays inside the band
+        for (int i = 0; i < 200; i++) {
+            assertFalse(governor.onFrameLatency((i % 2 == 0 ? 54 : 46) * MS));
+        }
+        assertEquals(0, governor.getSwitchCount());
+    }
+
+    @Test
+    public void stepsBackUpOnlyWithHeadroom() {
+        ResolutionGovernor governor = new ResolutionGovernor(new int[]{320, 640}, 20f);
+        for (int i = 0; i < 10; i++) {
+            governor.onFrameLatency(150 * MS);
+        }
+        assertEquals(320, governor.getInputSize());
+
+        // 640 would cost 4x: 15 ms -> ~60 ms, over budget, so stay at 320
+        for (int i = 0; i < 100; i++) {
+            governor.onFrameLatency(15 * MS);
+        }
+        assertEquals(320, governor.getInputSize());
+
+        // 8 ms -> ~32 ms at 640 fits, so step up after the sustain window
+        for (int i = 0; i < 100; i++) {
+            governor.onFrameLatency(8 * MS);
+        }
+        assertEquals(640, governor.getInputSize());
+    }
+}
@@ -0,0 +1,82 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RoiPlannerTest {
+    @Test
+    public void crops_growAroundBoxesStayInFrameAndAreShared() {
+        RoiPlanner planner = new RoiPlanner(1, 4, 0.5f, 256, 1f);
+        CandidateBuffer boxes = new CandidateBuffer(4);
+        // 64x32 px in a 640x480 frame
+        boxes.add(0.5f, 0.5f, 0.6f, 0.5667f, 0.9f, 0);
+        // Inside the first crop: shares it
+        boxes.add(0.52f, 0.52f, 0.55f, 0.55f, 0.8f, 0);
+        // Tiny, at the corner: at least 128 px, pushed inside the frame
+        boxes.add(0.99f, 0f, 1f, 0.01f, 0.7f, 0);
+        planner.update(0, boxes);
+
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertEquals(2, planner.roiCount(0));
+        int[] rect = new int[4];
+        planner.roiRect(0, 0, rect);
+        assertArrayEquals(new int[]{288, 192, 128, 128}, rect);
+        planner.roiRect(0, 1, rect);
+        assertArrayEquals(new int[]{512, 0, 128, 128}, rect);
+    }
+
+    @Test
+    public void fullFrame_runsOnIntervalWhenIdleOrWhenCropsCostTooMuch() {
+        RoiPlanner planner = new RoiPlanner(2, 3, 0.5f, 256, 0.3f);
+        CandidateBuffer one = new CandidateBuffer(4);
+        one.add(0.1f, 0.1f, 0.2f, 0.2f, 0.9f, 0);
+
+        // Nothing to follow yet
+        assertTrue(planner.beginFrame(640, 480, 640));
+        planner.update(0, one);
+        assertFalse(planner.beginFrame(640, 480, 640));
+        assertFalse(planner.beginFrame(640, 480, 640));
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertEquals(1, planner.roiCount(0));
+
+        // Four crops of 256 against two 640 passes is over 30%: whole frame, no crops
+        CandidateBuffer crowd = new CandidateBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            crowd.add(0.2f * i, 0.5f, 0.2f * i + 0.05f, 0.55f, 0.9f, 0);
+        }
+        planner.update(1, crowd);
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertEquals(0, planner.roiCount(0));
+        assertEquals(0, planner.roiCount(1));
+
+        // Nothing left in view
+        planner.update(0, new CandidateBuffer(1));
+        planner.update(1, new CandidateBuffer(1));
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertEquals(4, planner.getFullFrameCount());
+        assertEquals(2, planner.getRoiOnlyFrameCount());
+    }
+
+    @Test
+    public void boxTooLargeForACrop_getsNoneAndRunsTheFullFrame() {
+        RoiPlanner planner = new RoiPlanner(1, 4, 0.5f, 256, 1f);
+        CandidateBuffer boxes = new CandidateBuffer(4);
+        boxes.add(0.1f, 0.1f, 0.2f, 0.2f, 0.9f, 0);
+        planner.update(0, boxes);
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertFalse(planner.beginFrame(640, 480, 640));
+
+        // 384x288 px grows past the 480 px short side: a crop would cut it
+        boxes.add(0.2f, 0.2f, 0.8f, 0.8f, 0.8f, 0);
+        planner.update(0, boxes);
+        assertTrue(planner.beginFrame(640, 480, 640));
+        assertEquals(1, planner.roiCount(0));
+        int[] rect = new int[4];
+        planner.roiRect(0, 0, rect);
+        assertEquals(128, rect[2]);
+    }
+}
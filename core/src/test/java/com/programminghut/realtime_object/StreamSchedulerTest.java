@@ -0,0 +1,88 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class StreamSchedulerTest {
+    @Test
+    public void take_sharesWorkByPriorityWithoutBankingIdleCredit() {
+        StreamScheduler<Integer> scheduler = new StreamScheduler<>();
+        StreamScheduler.Stream<Integer> front =
+                scheduler.addStream("front", 3, 4, HandoffQueue.DropPolicy.LATEST_WINS);
+        StreamScheduler.Stream<Integer> rear =
+                scheduler.addStream("rear", 1, 4, HandoffQueue.DropPolicy.LATEST_WINS);
+        StreamScheduler.Stream<Integer> replay =
+                scheduler.addStream("replay", 1, 4, HandoffQueue.DropPolicy.LATEST_WINS);
+
+        // Both backlogged: 3 to 1
+        int[] served = new int[3];
+        for (int i = 0; i < 400; i++) {
+            refill(scheduler, front, rear);
+            StreamScheduler.Stream<Integer> next = scheduler.poll();
+            served[next == front ? 0 : 1]++;
+            scheduler.complete(next, 1000);
+        }
+        assertEquals(300, served[0]);
+        assertEquals(100, served[1]);
+
+        // A stream idle all along joins at its fair share instead of catching up
+        served = new int[3];
+        for (int i = 0; i < 50; i++) {
+            refill(scheduler, front, rear);
+            scheduler.offer(replay, i);
+            StreamScheduler.Stream<Integer> next = scheduler.poll();
+            served[next == front ? 0 : next == rear ? 1 : 2]++;
+            scheduler.complete(next, 1000);
+        }
+        assertEquals(30, served[0]);
+        assertEquals(10, served[1]);
+        assertEquals(10, served[2]);
+        assertEquals(450, front.getCompletedCount() + rear.getCompletedCount() + replay.getCompletedCount());
+    }
+
+    @Test
+    public void offer_appliesEachStreamsDropPolicyAndKeepsOneFrameInFlight() {
+        StreamScheduler<Integer> scheduler = new StreamScheduler<>();
+        StreamScheduler.Stream<Integer> live =
+                scheduler.addStream("live", 1, 2, HandoffQueue.DropPolicy.LATEST_WINS);
+        StreamScheduler.Stream<Integer> file =
+                scheduler.addStream("file", 1, 2, HandoffQueue.DropPolicy.DROP_NEWEST);
+
+        assertNull(scheduler.offer(live, 1));
+        assertNull(scheduler.offer(live, 2));
+        assertEquals(1, (int) scheduler.offer(live, 3));
+        assertNull(scheduler.offer(file, 1));
+        assertNull(scheduler.offer(file, 2));
+        assertEquals(3, (int) scheduler.offer(file, 3));
+        assertEquals(1, live.getDroppedCount());
+        assertEquals(1, file.getDroppedCount());
+
+        // One frame per stream at a time, oldest first, so results stay in order
+        StreamScheduler.Stream<Integer> first = scheduler.poll();
+        StreamScheduler.Stream<Integer> second = scheduler.poll();
+        assertSame(live, first);
+        assertSame(file, second);
+        assertEquals(2, (int) live.current());
+        assertEquals(1, (int) file.current());
+        assertNull(scheduler.poll());
+
+        scheduler.complete(live, 2_000_000);
+        assertSame(live, scheduler.poll());
+        assertEquals(3, (int) live.current());
+        assertEquals(1, live.snapshotLatency().getCount());
+
+        scheduler.close();
+        assertNull(scheduler.poll());
+        assertEquals(4, (int) scheduler.offer(file, 4));
+    }
+
+    // Keeps both streams backlogged
+    private static void refill(StreamScheduler<Integer> scheduler, StreamScheduler.Stream<Integer> a,
+                               StreamScheduler.Stream<Integer> b) {
+        scheduler.offer(a, 0);
+        scheduler.offer(b, 0);
+    }
+}
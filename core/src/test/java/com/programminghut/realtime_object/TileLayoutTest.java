@@ -0,0 +1,55 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TileLayoutTest {
+    @Test
+    public void tiles_coverBandWithRequestedOverlap() {
+        // Portrait 480x640 frame, top half in 3 columns x 2 rows
+        TileLayout layout = new TileLayout(3, 2, 0.25f, 0f, 0.5f);
+        int[] rect = new int[4];
+        int[] previous = new int[4];
+        for (int row = 0; row < 2; row++) {
+            for (int column = 0; column < 3; column++) {
+                layout.tileRect(row * 3 + column, 480, 640, rect);
+                assertTrue(rect[0] >= 0 && rect[0] + rect[2] <= 480);
+                assertTrue(rect[1] >= 0 && rect[1] + rect[3] <= 320);
+                if (column == 0) {
+                    assertEquals(0, rect[0]);
+                } else {
+                    // Neighbours share at least the overlap fraction of a tile
+                    assertTrue(previous[0] + previous[2] - rect[0] >= 0.25f * rect[2] - 1);
+                }
+                if (column == 2) {
+                    assertEquals(480, rect[0] + rect[2]);
+                }
+                System.arraycopy(rect, 0, previous, 0, 4);
+            }
+            assertEquals(row == 0 ? 0 : 320, row == 0 ? rect[1] : rect[1] + rect[3]);
+        }
+        // Tiles are 192x183 pixels, so a 192 input holds them at native resolution
+        assertEquals(192, layout.inputSize(480, 640));
+    }
+
+    @Test
+    public void isCutByCropEdge_ignoresFrameEdges() {
+        TileLayout layout = new TileLayout(2, 1, 0.2f, 0f, 0.5f);
+        int[] rect = new int[4];
+        layout.tileRect(0, 480, 640, rect);
+        PreprocessTransform tile = new PreprocessTransform();
+        tile.set(480, 640, 0, rect[0], rect[1], rect[2], rect[3], 288, 288, true);
+
+        float tileRight = (rect[0] + rect[2]) / 480f;
+        float bandBottom = 320 / 640f;
+        // Touching the frame's top-left corner is fine
+        assertFalse(tile.isCutByCropEdge(0f, 0f, 0.1f, 0.1f));
+        // Touching the edge shared with the right tile or the band bottom is a fragment
+        assertTrue(tile.isCutByCropEdge(tileRight - 0.1f, 0.1f, tileRight, 0.2f));
+        assertTrue(tile.isCutByCropEdge(0.1f, bandBottom - 0.1f, 0.2f, bandBottom));
+        assertFalse(tile.isCutByCropEdge(0.2f, 0.2f, 0.3f, 0.3f));
+    }
+}
@@ -0,0 +1,119 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class TripleBufferTest {
+    private static final int CAPACITY = 32;
+    private static final String[] LABELS = {"car", "bus", "stop"};
+
+    @Test
+    public void acquire_returnsNewestAndKeepsItUntilNextPublish() {
+        TripleBuffer<DetectionFrame> buffer = newBuffer();
+        assertNull(buffer.acquire());
+        assertFalse(buffer.hasNew());
+
+        for (long sequence = 1; sequence <= 3; sequence++) {
+            buffer.getWriteBuffer().sequence = sequence;
+            buffer.publish();
+        }
+        assertTrue(buffer.hasNew());
+        DetectionFrame latest = buffer.acquire();
+        assertEquals(3, latest.sequence);
+        assertEquals(2, buffer.getOverwriteCount());
+
+        // Nothing new: the same frame again, and the producer writes elsewhere
+        assertFalse(buffer.hasNew());
+        assertSame(latest, buffer.acquire());
+        assertNotSame(latest, buffer.getWriteBuffer());
+        buffer.getWriteBuffer().sequence = 4;
+        buffer.publish();
+        assertEquals(3, latest.sequence);
+        assertEquals(4, buffer.acquire().sequence);
+    }
+
+    @Test
+    public void stress_readerNeverSeesTornFrames() throws Exception {
+        TripleBuffer<DetectionFrame> buffer = newBuffer();
+        final long publishes = 300_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            for (long sequence = 1; sequence <= publishes; sequence++) {
+                fill(buffer.getWriteBuffer(), sequence);
+                buffer.publish();
+            }
+        }, "triple-buffer-producer");
+
+        Thread consumer = new Thread(() -> {
+            try {
+                long lastSequence = 0;
+                while (lastSequence < publishes) {
+                    DetectionFrame frame = buffer.acquire();
+                    if (frame == null) {
+                        continue;
+                    }
+                    // Every field of a frame comes from the same publish, and frames never go back in time
+                    assertTrue(frame.sequence >= lastSequence);
+                    assertConsistent(frame);
+                    lastSequence = frame.sequence;
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "triple-buffer-consumer");
+
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join(30_000);
+        assertFalse("consumer did not see the last frame", consumer.isAlive());
+        if (failure.get() != null) {
+            throw new AssertionError("torn read", failure.get());
+        }
+        assertEquals(publishes, buffer.getPublishCount());
+    }
+
+    private static TripleBuffer<DetectionFrame> newBuffer() {
+        return new TripleBuffer<>(new DetectionFrame(CAPACITY), new DetectionFrame(CAPACITY),
+                new DetectionFrame(CAPACITY));
+    }
+
+    // Derives every field from the sequence number, so a mix of two publishes shows up
+    private static void fill(DetectionFrame frame, long sequence) {
+        frame.clear();
+        int count = (int) (sequence % CAPACITY) + 1;
+        float value = sequence % 1_000_000;
+        for (int i = 0; i < count; i++) {
+            frame.add(value, value + i, value + 2 * i, value + 3 * i, LABELS[(int) (sequence % LABELS.length)],
+                    value, (int) (sequence % 2), (int) sequence, value);
+        }
+        frame.timestampNs = sequence * 7;
+        frame.sequence = sequence;
+    }
+
+    private static void assertConsistent(DetectionFrame frame) {
+        long sequence = frame.sequence;
+        float value = sequence % 1_000_000;
+        assertEquals((int) (sequence % CAPACITY) + 1, frame.count);
+        assertEquals(sequence * 7, frame.timestampNs);
+        for (int i = 0; i < frame.count; i++) {
+            assertEquals(value, frame.left[i], 0f);
+            assertEquals(value + i, frame.top[i], 0f);
+            assertEquals(value + 2 * i, frame.right[i], 0f);
+            assertEquals(value + 3 * i, frame.bottom[i], 0f);
+            assertSame(LABELS[(int) (sequence % LABELS.length)], frame.labels[i]);
+            assertEquals(value, frame.confidences[i], 0f);
+            assertEquals((int) (sequence % 2), frame.types[i]);
+            assertEquals((int) sequence, frame.trackIds[i]);
+            assertEquals(value, frame.ageMs[i], 0f);
+        }
+    }
+}
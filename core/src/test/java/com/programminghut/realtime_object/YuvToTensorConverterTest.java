@@ -0,0 +1,212 @@
+package com.programminghut.realtime_object;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+/**
+ * Compares the direct converter against a pure-Java model of the old path:
+ * planes -> NV21 -> RGB (JFIF YCbCr, as the JPEG round-trip did) -> rotate ->
+ * resize -> normalize. The old path stretched, so those tests turn letterbox off.
+ */
+public class YuvToTensorConverterTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    // One 8-bit step after normalization, plus rounding slack
+    private static final float TOLERANCE = 1.5f / 255f / 0.224f;
+    // ImageNet normalization, as the detector uses
+    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = {0.229f, 0.224f, 0.225f};
+
+    @Test
+    public void matchesReference_semiPlanarWithRowPadding() {
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            YuvFrame frame = SyntheticData.yuvFrame(WIDTH, HEIGHT, rotation, 2, 16, 42);
+            assertMatchesReference(frame, 40, 40);
+        }
+    }
+
+    @Test
+    public void matchesReference_planar() {
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            YuvFrame frame = SyntheticData.yuvFrame(WIDTH, HEIGHT, rotation, 1, 0, 7);
+            assertMatchesReference(frame, 32, 24);
+        }
+    }
+
+    @Test
+    public void matchesReference_upscale() {
+        YuvFrame frame = SyntheticData.yuvFrame(WIDTH, HEIGHT, 90, 2, 8, 3);
+        assertMatchesReference(frame, 100, 80);
+    }
+
+    @Test
+    public void letterbox_padsAndKeepsAspectRatio() {
+        // 64x48 rotated by 90 is 48x64; into 40x40 that is 30x40 content, 5 px pad each side
+        YuvFrame frame = SyntheticData.yuvFrame(WIDTH, HEIGHT, 90, 2, 16, 11);
+        YuvToTensorConverter converter = new YuvToTensorConverter(MEAN, STD);
+        FloatBuffer out = FloatBuffer.allocate(3 * 40 * 40);
+        PreprocessTransform transform = new PreprocessTransform();
+        converter.convert(frame, 40, 40, out, transform);
+
+        assertEquals(48, transform.rotatedWidth);
+        assertEquals(64, transform.rotatedHeight);
+        assertEquals(5, transform.contentLeft);
+        assertEquals(0, transform.contentTop);
+        assertEquals(30, transform.contentWidth);
+        assertEquals(40, transform.contentHeight);
+
+        float[] content = reference(frame, 30, 40);
+        for (int c = 0; c < 3; c++) {
+            float pad = (114 / 255f - MEAN[c]) / STD[c];
+            for (int oy = 0; oy < 40; oy++) {
+                for (int ox = 0; ox < 40; ox++) {
+                    float actual = out.get(c * 1600 + oy * 40 + ox);
+                    float expected = ox < 5 || ox >= 35
+                            ? pad
+                            : content[c * 1200 + oy * 30 + (ox - 5)];
+                    assertEquals(expected, actual, TOLERANCE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transform_mapsInputBoxesBackToFrame() {
+        PreprocessTransform transform = new PreprocessTransform();
+        transform.set(640, 480, 0, 640, 640, true);
+        assertEquals(80, transform.contentTop);
+        assertEquals(480, transform.contentHeight);
+
+        // A box covering the content region maps to the whole frame
+        assertEquals(0f, transform.toFrameX(0f), 1e-6f);
+        assertEquals(1f, transform.toFrameX(640f), 1e-6f);
+        assertEquals(0f, transform.toFrameY(80f), 1e-6f);
+        assertEquals(1f, transform.toFrameY(560f), 1e-6f);
+        assertEquals(0.5f, transform.toFrameY(320f), 1e-6f);
+        // Padding clamps to the frame edge
+        assertEquals(0f, transform.toFrameY(10f), 1e-6f);
+    }
+
+    @Test
+    public void region_matchesReferenceCropAndMapsBackToFrame() {
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            YuvFrame frame = SyntheticData.yuvFrame(WIDTH, HEIGHT, rotation, 2, 16, 21);
+            YuvToTensorConverter converter = new YuvToTensorConverter(MEAN, STD);
+            converter.setLetterbox(false);
+            FloatBuffer out = FloatBuffer.allocate(3 * 24 * 20);
+            PreprocessTransform transform = new PreprocessTransform();
+            converter.convertRegion(frame, 10, 6, 24, 20, 24, 20, out, transform);
+
+            float[] expected = reference(frame, 10, 6, 24, 20, 24, 20);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("rotation " + rotation + " index " + i, expected[i], out.get(i), TOLERANCE);
+            }
+            // Input corners map to the crop corners in whole-frame coordinates
+            assertEquals(10f / frame.rotatedWidth(), transform.toFrameX(0f), 1e-6f);
+            assertEquals(34f / frame.rotatedWidth(), transform.toFrameX(24f), 1e-6f);
+            assertEquals(6f / frame.rotatedHeight(), transform.toFrameY(0f), 1e-6f);
+            assertEquals(26f / frame.rotatedHeight(), transform.toFrameY(20f), 1e-6f);
+        }
+    }
+
+    private static void assertMatchesReference(YuvFrame frame, int outWidth, int outHeight) {
+        YuvToTensorConverter converter = new YuvToTensorConverter(MEAN, STD);
+        converter.setLetterbox(false);
+        FloatBuffer out = FloatBuffer.allocate(3 * outWidth * outHeight);
+        converter.convert(frame, outWidth, outHeight, out);
+
+        float[] expected = reference(frame, outWidth, outHeight);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("rotation " + frame.rotationDegrees + " index " + i,
+                    expected[i], out.get(i), TOLERANCE);
+        }
+    }
+
+    private static float[] reference(YuvFrame frame, int outWidth, int outHeight) {
+        return reference(frame, 0, 0, frame.rotatedWidth(), frame.rotatedHeight(), outWidth, outHeight);
+    }
+
+    private static float[] reference(YuvFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                                     int outWidth, int outHeight) {
+        int width = frame.width;
+        int height = frame.height;
+
+        // Step 1: planes -> NV21
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                nv21[row * width + col] = frame.yBuffer.get(row * frame.yRowStride + col * frame.yPixelStride);
+            }
+        }
+        int pos = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                nv21[pos++] = frame.vBuffer.get(row * frame.vRowStride + col * frame.vPixelStride);
+                nv21[pos++] = frame.uBuffer.get(row * frame.uRowStride + col * frame.uPixelStride);
+            }
+        }
+
+        // Step 2: NV21 -> RGB
+        int[] rgb = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int yv = nv21[row * width + col] & 0xFF;
+                int uvIndex = width * height + (row / 2) * width + (col / 2) * 2;
+                float v = (nv21[uvIndex] & 0xFF) - 128;
+                float u = (nv21[uvIndex + 1] & 0xFF) - 128;
+                int r = clamp(Math.round(yv + 1.402f * v));
+                int g = clamp(Math.round(yv - 0.344136f * u - 0.714136f * v));
+                int b = clamp(Math.round(yv + 1.772f * u));
+                rgb[row * width + col] = (r << 16) | (g << 8) | b;
+            }
+        }
+
+        // Step 3: rotate clockwise
+        int rotation = frame.rotationDegrees;
+        int rotatedWidth = frame.rotatedWidth();
+        int rotatedHeight = frame.rotatedHeight();
+        int[] rotated = new int[rgb.length];
+        for (int ry = 0; ry < rotatedHeight; ry++) {
+            for (int rx = 0; rx < rotatedWidth; rx++) {
+                int sx;
+                int sy;
+                if (rotation == 90) {
+                    sx = ry;
+                    sy = height - 1 - rx;
+                } else if (rotation == 180) {
+                    sx = width - 1 - rx;
+                    sy = height - 1 - ry;
+                } else if (rotation == 270) {
+                    sx = width - 1 - ry;
+                    sy = rx;
+                } else {
+                    sx = rx;
+                    sy = ry;
+                }
+                rotated[ry * rotatedWidth + rx] = rgb[sy * width + sx];
+            }
+        }
+
+        // Step 4: crop, resize and normalize into CHW
+        float[] out = new float[3 * outWidth * outHeight];
+        int planeSize = outWidth * outHeight;
+        for (int oy = 0; oy < outHeight; oy++) {
+            int ry = cropTop + YuvToTensorConverter.sampleIndex(oy, outHeight, cropHeight);
+            for (int ox = 0; ox < outWidth; ox++) {
+                int rx = cropLeft + YuvToTensorConverter.sampleIndex(ox, outWidth, cropWidth);
+                int pixel = rotated[ry * rotatedWidth + rx];
+                int index = oy * outWidth + ox;
+                out[index] = ((pixel >> 16 & 0xFF) / 255f - MEAN[0]) / STD[0];
+                out[planeSize + index] = ((pixel >> 8 & 0xFF) / 255f - MEAN[1]) / STD[1];
+                out[2 * planeSize + index] = ((pixel & 0xFF) / 255f - MEAN[2]) / STD[2];
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,100 @@
+package com.programminghut.realtime_object;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Host-side backend that skips inference: records the input it was given and
+ * decodes a fixed list of boxes, given in input pixels, through the transform
+ * for every image of the batch.
+ */
+public class FakeInferenceBackend implements InferenceBackend {
+    private final InputFormat format;
+    private final int fixedSize;
+    private final int maxBatchSize;
+    // Rows of {left, top, right, bottom, score, classId} in input pixels
+    private final float[][] boxes;
+
+    // Reported runtime; "pytorch" makes callers treat its threads as process-wide
+    String name = "fake";
+    FrameBufferPool.InputBuffer lastInput;
+    int runCount;
+    int imagesRun;
+    // InputBuffer.batchSize of every run, in order
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    int numThreads;
+    boolean closed;
+    // Simulated forward time per run
+    volatile int runMillis;
+
+    public FakeInferenceBackend(InputFormat format, int fixedSize, float[][] boxes) {
+        this(format, fixedSize, 1, boxes);
+    }
+
+    public FakeInferenceBackend(InputFormat format, int fixedSize, int maxBatchSize, float[][] boxes) {
+        this.format = format;
+        this.fixedSize = fixedSize;
+        this.maxBatchSize = maxBatchSize;
+        this.boxes = boxes;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public void load(String path, int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    @Override
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    @Override
+    public InputFormat inputFormat() {
+        return format;
+    }
+
+    @Override
+    public int fixedInputSize() {
+        return fixedSize;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public void run(FrameBufferPool.InputBuffer input) throws InterruptedException {
+        if (runMillis > 0) {
+            Thread.sleep(runMillis);
+        }
+        lastInput = input;
+        runCount++;
+        imagesRun += input.batchSize;
+        batchSizes.add(input.batchSize);
+    }
+
+    @Override
+    public int decode(int batchIndex, PreprocessTransform transform, float threshold, int source, CandidateBuffer out) {
+        out.clear();
+        for (float[] box : boxes) {
+            if (box[4] > threshold) {
+                out.add(transform.toFrameX(box[0]), transform.toFrameY(box[1]),
+                        transform.toFrameX(box[2]), transform.toFrameY(box[3]),
+                        box[4], (int) box[5], source);
+            }
+        }
+        return out.count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
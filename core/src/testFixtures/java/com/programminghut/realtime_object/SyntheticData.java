@@ -0,0 +1,98 @@
+package com.programminghut.realtime_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Reproducible camera frames, model outputs and candidate sets for tests
+ * and benchmarks.
+ */
+public class SyntheticData {
+    // Random planes laid out like a camera buffer: padded rows and, for
+    // pixelStride 2, interleaved U/V sharing one backing buffer.
+    public static YuvFrame yuvFrame(int width, int height, int rotation, int uvPixelStride,
+                                    int rowPadding, long seed) {
+        Random random = new Random(seed);
+        int yRowStride = width + rowPadding;
+        byte[] y = new byte[yRowStride * height];
+        random.nextBytes(y);
+
+        int uvWidth = width / 2;
+        int uvHeight = height / 2;
+        int uvRowStride = uvWidth * uvPixelStride + rowPadding;
+        YuvFrame frame = new YuvFrame()
+                .set(width, height, rotation, 0L)
+                .setY(ByteBuffer.wrap(y), yRowStride, 1);
+
+        if (uvPixelStride == 2) {
+            byte[] vu = new byte[uvRowStride * uvHeight];
+            random.nextBytes(vu);
+            ByteBuffer v = ByteBuffer.wrap(vu);
+            ByteBuffer u = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+            frame.setU(u, uvRowStride, 2).setV(v, uvRowStride, 2);
+        } else {
+            byte[] u = new byte[uvRowStride * uvHeight];
+            byte[] v = new byte[uvRowStride * uvHeight];
+            random.nextBytes(u);
+            random.nextBytes(v);
+            frame.setU(ByteBuffer.wrap(u), uvRowStride, 1).setV(ByteBuffer.wrap(v), uvRowStride, 1);
+        }
+        return frame;
+    }
+
+    // Writes a recording of count synthetic frames, 33 ms apart, for replay tests
+    public static void recording(File file, int count, int width, int height, int rotation, long seed)
+            throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, count);
+        recorder.start();
+        for (int i = 0; i < count; i++) {
+            YuvFrame frame = yuvFrame(width, height, rotation, 2, 16, seed + i);
+            frame.timestampNs = i * 33_000_000L;
+            recorder.record(frame);
+        }
+        recorder.close();
+    }
+
+    /**
+     * A YOLO-style output [rows, 5 + classes] in input pixels of inputSize,
+     * in a direct buffer like a runtime's. Roughly passFraction of the rows
+     * have objectness above 0.5; the rest score below 0.1.
+     */
+    public static FloatBuffer yoloOutput(int rows, int classes, int inputSize, float passFraction, long seed) {
+        Random random = new Random(seed);
+        int rowSize = OutputDecoder.HEADER_SIZE + classes;
+        FloatBuffer out = ByteBuffer.allocateDirect(rows * rowSize * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int i = 0; i < rows; i++) {
+            int offset = i * rowSize;
+            out.put(offset, random.nextFloat() * inputSize);
+            out.put(offset + 1, random.nextFloat() * inputSize);
+            out.put(offset + 2, 8 + random.nextFloat() * inputSize / 4);
+            out.put(offset + 3, 8 + random.nextFloat() * inputSize / 4);
+            boolean pass = random.nextFloat() < passFraction;
+            out.put(offset + 4, pass ? 0.5f + random.nextFloat() * 0.5f : random.nextFloat() * 0.1f);
+            for (int c = 0; c < classes; c++) {
+                out.put(offset + OutputDecoder.HEADER_SIZE + c, random.nextFloat());
+            }
+        }
+        return out;
+    }
+
+    // count small random boxes in normalized coordinates, dense enough to overlap heavily
+    public static CandidateBuffer crowdedScene(int count, int classes, long seed) {
+        Random random = new Random(seed);
+        CandidateBuffer in = new CandidateBuffer(count);
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 0.9f;
+            float y = random.nextFloat() * 0.9f;
+            float w = 0.01f + random.nextFloat() * 0.1f;
+            float h = 0.01f + random.nextFloat() * 0.1f;
+            in.add(x, y, x + w, y + h, random.nextFloat(), random.nextInt(classes));
+        }
+        return in;
+    }
+}